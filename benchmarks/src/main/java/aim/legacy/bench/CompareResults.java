@@ -0,0 +1,100 @@
+/**
+ * CompareResults.java
+ * 
+ * Compares two JMH JSON result files (-rf json), e.g. the last release's
+ * against the current build's, benchmark by benchmark and parameter set.
+ * A change counts as a regression when the score got worse by more than the
+ * threshold (default 10%) and by more than both runs' error margins together.
+ * 
+ * Usage: CompareResults BASELINE.json CURRENT.json [THRESHOLD_PERCENT]
+ * Exits with 1 when anything regressed, so a build can fail on it.
+ */
+package aim.legacy.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class CompareResults {
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults BASELINE.json CURRENT.json [THRESHOLD_PERCENT]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+        
+        int regressions = 0;
+        System.out.printf(Locale.ROOT, "%-70s %14s %14s %9s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode now = entry.getValue();
+            JsonNode before = baseline.get(entry.getKey());
+            String unit = now.path("primaryMetric").path("scoreUnit").asText();
+            double score = now.path("primaryMetric").path("score").asDouble();
+            if (before == null) {
+                System.out.printf(Locale.ROOT, "%-70s %14s %14s %9s%n", entry.getKey(), "-", format(score, unit), "new");
+                continue;
+            }
+            double old = before.path("primaryMetric").path("score").asDouble();
+            double change = old == 0 ? 0 : (score - old) / old * 100;
+            // Throughput modes are better when higher, time modes when lower
+            boolean higherIsBetter = "thrpt".equals(now.path("mode").asText());
+            double worse = higherIsBetter ? -change : change;
+            double margin = error(before) + error(now);
+            boolean regressed = worse > threshold && Math.abs(score - old) > margin;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-70s %14s %14s %+8.1f%%%s%n", entry.getKey(), format(old, unit),
+                format(score, unit), change, regressed ? "  REGRESSION" : "");
+        }
+        for (Map.Entry<String, JsonNode> entry : baseline.entrySet()) {
+            if (!current.containsKey(entry.getKey())) {
+                JsonNode metric = entry.getValue().path("primaryMetric");
+                System.out.printf(Locale.ROOT, "%-70s %14s %14s %9s%n", entry.getKey(),
+                    format(metric.path("score").asDouble(), metric.path("scoreUnit").asText()), "-", "missing");
+            }
+        }
+        System.out.println(regressions == 0 ? "No regressions over " + threshold + "%"
+            : regressions + " regression(s) over " + threshold + "%");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+    
+    // Results keyed by benchmark method and parameters, e.g. "OrderLoadBenchmark.fromDatabase lines=10000 profile=wal"
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            String benchmark = result.path("benchmark").asText();
+            StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+            Map<String, String> params = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue());
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+    
+    private static double error(JsonNode result) {
+        double error = result.path("primaryMetric").path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+    
+    private static String format(double score, String unit) {
+        return String.format(Locale.ROOT, "%.2f %s", score, unit);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * CustomerSearchBenchmark.java
+ * 
+ * Searching on the customers screen (CustomersScreen.searchCustomers) for a
+ * surname; the terms rotate through the surnames the fixtures are built from.
+ * 
+ *   nameLike         LOWER(cust_name) LIKE '%term%', which the screen runs
+ *                    until the customer index has been built
+ *   customerIndex    CustomerIndex.search, the screen's normal path
+ *   fullText         FullTextSearch.searchCustomers, the "full text" option
+ *                    (contact fields and ordered products, first page of 100)
+ */
+package aim.legacy.bench;
+
+import aim.legacy.db.DB;
+import aim.legacy.domain.Customer;
+import aim.legacy.search.CustomerHit;
+import aim.legacy.search.CustomerIndex;
+import aim.legacy.search.FullTextSearch;
+import aim.legacy.search.SearchPage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Daim.metrics.log=false", "-Daim.sql.slowMillis=3600000"})
+public class CustomerSearchBenchmark {
+    
+    // CustomersScreen.SEARCH_LIMIT and FULL_TEXT_PAGE_SIZE
+    static final int SEARCH_LIMIT = 1000;
+    static final int FULL_TEXT_PAGE_SIZE = 100;
+    
+    @State(Scope.Thread)
+    public static class Terms {
+        private int next;
+        
+        @Setup(Level.Trial)
+        public void prepare(Dataset data) throws SQLException {
+            CustomerIndex.getInstance().rebuild();
+        }
+        
+        String next() {
+            next = (next + 1) % FixtureBuilder.LAST_NAMES.length;
+            return FixtureBuilder.LAST_NAMES[next].toLowerCase();
+        }
+    }
+    
+    // CustomersScreen.searchByName
+    @Benchmark
+    public List<Customer> nameLike(Dataset data, Terms terms) throws SQLException {
+        List<Customer> customers = new ArrayList<>();
+        try (PreparedStatement ps = DB.getConn().prepareStatement(
+                "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer " +
+                "WHERE LOWER(cust_name) LIKE ? ORDER BY cust_id LIMIT " + SEARCH_LIMIT)) {
+            ps.setString(1, "%" + terms.next() + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    customers.add(new Customer(
+                        rs.getLong("cust_id"),
+                        rs.getString("cust_name"),
+                        rs.getString("email"),
+                        rs.getString("phone"),
+                        rs.getString("address"),
+                        rs.getString("customer_type")));
+                }
+            }
+        }
+        return customers;
+    }
+    
+    @Benchmark
+    public List<Customer> customerIndex(Dataset data, Terms terms) {
+        return CustomerIndex.getInstance().search(terms.next(), SEARCH_LIMIT);
+    }
+    
+    @Benchmark
+    public SearchPage<CustomerHit> fullText(Dataset data, Terms terms) throws SQLException {
+        return FullTextSearch.searchCustomers(DB.getConn(), terms.next(), 0, FULL_TEXT_PAGE_SIZE);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Dataset.java
+ * 
+ * The database a benchmark trial runs against: a synthetic fixture of
+ * `lines` order lines under one storage profile. Every benchmark takes it as
+ * a parameter, so results are reported per size and profile.
+ * 
+ * Fixtures are built once per size and kept as templates under
+ * -Daim.bench.dir (default <java.io.tmpdir>/aim-bench). Each trial copies the
+ * template into a temp directory of its own, so writes in one trial never
+ * show up in the next. Delete the directory to rebuild the templates, e.g.
+ * after a schema change.
+ * 
+ * DB reads aim.db.file once, so the copy is made and the property set before
+ * anything in the fork touches DB. JMH forks a new JVM for every trial.
+ */
+package aim.legacy.bench;
+
+import aim.legacy.db.DB;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+@State(Scope.Benchmark)
+public class Dataset {
+    
+    // Order lines in the fixture; -p lines=10000,1000000,10000000 for the large sizes
+    @Param({"10000", "100000"})
+    public long lines;
+    
+    // See StorageProfile
+    @Param({"wal", "wal-normal", "delete"})
+    public String profile;
+    
+    int orders;
+    int customers;
+    
+    private File workDir;
+    
+    @Setup(Level.Trial)
+    public void open() throws IOException, SQLException {
+        File templates = new File(System.getProperty("aim.bench.dir",
+            new File(System.getProperty("java.io.tmpdir"), "aim-bench").getPath()));
+        templates.mkdirs();
+        File template = new File(templates, "fixture-" + lines + ".db");
+        
+        workDir = Files.createTempDirectory("aim-bench-").toFile();
+        File db = new File(workDir, "orderentry.db");
+        // Must be set before DB is first used
+        System.setProperty("aim.db.file", db.getPath());
+        
+        if (template.exists()) {
+            Files.copy(template.toPath(), db.toPath());
+            DB.getConn();
+        } else {
+            long started = System.nanoTime();
+            FixtureBuilder.build(db, lines);
+            // Opening it through DB adds the indexes, full-text and summary tables
+            Connection conn = DB.getConn();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            }
+            File partial = new File(templates, template.getName() + ".part");
+            Files.copy(db.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial.toPath(), template.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.out.printf("[bench] built %s in %d s%n", template, (System.nanoTime() - started) / 1000000000L);
+        }
+        StorageProfile.named(profile).apply(DB.getConn());
+        
+        orders = FixtureBuilder.ordersFor(lines);
+        customers = FixtureBuilder.customersFor(lines);
+    }
+    
+    @TearDown(Level.Trial)
+    public void close() {
+        DB.closeConn();
+        File[] files = workDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        workDir.delete();
+    }
+}
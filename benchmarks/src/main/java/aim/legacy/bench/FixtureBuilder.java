@@ -0,0 +1,188 @@
+/**
+ * FixtureBuilder.java
+ * 
+ * Writes a synthetic order database with a given number of order lines.
+ * Orders carry 1 to 7 lines (4 on average) and are spread over three years;
+ * there is one customer per 25 orders and a catalog of 500 products.
+ * Names, types and prices come from a fixed seed, so a fixture of a given
+ * size is the same on every machine and every run.
+ * 
+ * Only the base tables are written, in one transaction with journaling off.
+ * Opening the file through DB then adds what the application adds to an
+ * existing database: version columns, indexes, full-text and summary tables.
+ */
+package aim.legacy.bench;
+
+import aim.legacy.db.OrderDao;
+import aim.legacy.pricing.OrderPricing;
+import aim.legacy.pricing.PriceBreakdown;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+public class FixtureBuilder {
+    
+    static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael", "Linda", "David", "Elizabeth",
+        "William", "Barbara", "Richard", "Susan", "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen",
+        "Daniel", "Nancy", "Matthew", "Lisa", "Anthony", "Betty", "Mark", "Sandra", "Paul", "Ashley"};
+    static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Rodriguez", "Martinez",
+        "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+        "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson"};
+    private static final String[] STREETS = {"Main", "Oak", "Pine", "Maple", "Cedar", "Elm", "Lake", "Hill", "Park", "Church"};
+    private static final String[] CITIES = {"Springfield", "Riverside", "Fairview", "Franklin", "Greenville", "Bristol", "Clinton", "Salem"};
+    private static final String[] MATERIALS = {"Steel", "Brass", "Oak", "Carbon", "Nylon", "Copper", "Ceramic", "Rubber"};
+    private static final String[] ITEMS = {"Bracket", "Hinge", "Valve", "Bearing", "Gasket", "Fitting", "Spring", "Clamp",
+        "Bolt", "Washer", "Pulley", "Flange", "Coupling", "Sprocket", "Bushing", "Rivet"};
+    
+    static final int PRODUCTS = 500;
+    static final int ORDERS_PER_CUSTOMER = 25;
+    private static final int MAX_LINES_PER_ORDER = 7;
+    private static final long SEED = 20240101L;
+    
+    // Orders a fixture of this many lines holds; every order has at least one line
+    static int ordersFor(long lines) {
+        return (int) Math.max(1, lines / ((MAX_LINES_PER_ORDER + 1) / 2));
+    }
+    
+    static int customersFor(long lines) {
+        return Math.max(50, ordersFor(lines) / ORDERS_PER_CUSTOMER);
+    }
+    
+    // Write the base tables of a fixture with exactly `lines` order lines to file
+    public static void build(File file, long lines) throws SQLException {
+        Random random = new Random(SEED);
+        int orders = ordersFor(lines);
+        int customers = customersFor(lines);
+        
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=OFF");
+            stmt.execute("PRAGMA synchronous=OFF");
+            createTables(stmt);
+            conn.setAutoCommit(false);
+            
+            String[] customerTypes = new String[customers + 1];
+            String[] customerNames = new String[customers + 1];
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO customer (cust_id, cust_name, email, phone, address, customer_type) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int id = 1; id <= customers; id++) {
+                    String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+                    String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+                    int roll = random.nextInt(10);
+                    customerNames[id] = first + " " + last;
+                    customerTypes[id] = roll < 7 ? "STANDARD" : roll < 9 ? "PREMIUM" : "VIP";
+                    ps.setLong(1, id);
+                    ps.setString(2, customerNames[id]);
+                    ps.setString(3, first.toLowerCase() + "." + last.toLowerCase() + id + "@example.com");
+                    ps.setString(4, String.format("555-%03d-%04d", random.nextInt(1000), random.nextInt(10000)));
+                    ps.setString(5, (1 + random.nextInt(9999)) + " " + STREETS[random.nextInt(STREETS.length)] + " St, "
+                        + CITIES[random.nextInt(CITIES.length)]);
+                    ps.setString(6, customerTypes[id]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            
+            String[] productNames = new String[PRODUCTS + 1];
+            BigDecimal[] productPrices = new BigDecimal[PRODUCTS + 1];
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO product (prod_id, prod_name, unit_price) VALUES (?, ?, ?)")) {
+                for (int id = 1; id <= PRODUCTS; id++) {
+                    productNames[id] = MATERIALS[random.nextInt(MATERIALS.length)] + " " + ITEMS[random.nextInt(ITEMS.length)]
+                        + " " + String.format("%03d", id);
+                    productPrices[id] = BigDecimal.valueOf(100 + random.nextInt(50000), 2);
+                    ps.setLong(1, id);
+                    ps.setString(2, productNames[id]);
+                    ps.setDouble(3, productPrices[id].doubleValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            
+            LocalDateTime start = LocalDateTime.of(2022, 1, 1, 8, 0);
+            long spanSeconds = 3L * 365 * 24 * 3600;
+            long lineId = 0;
+            try (PreparedStatement orderPs = conn.prepareStatement(
+                    "INSERT INTO orders (order_id, cust_id, cust_name, order_date, subtotal, discount, tax, total) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+                 PreparedStatement linePs = conn.prepareStatement(
+                    "INSERT INTO order_line (line_id, order_id, prod_id, prod_name, quantity, unit_price) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int orderId = 1; orderId <= orders; orderId++) {
+                    // Kept within what the orders still to come can take, so the total comes out exact
+                    long remaining = lines - lineId;
+                    long left = orders - orderId;
+                    long fewest = Math.max(1, remaining - left * MAX_LINES_PER_ORDER);
+                    long most = Math.min(MAX_LINES_PER_ORDER, remaining - left);
+                    int count = (int) Math.max(fewest, Math.min(most, 1 + random.nextInt(MAX_LINES_PER_ORDER)));
+                    int custId = 1 + random.nextInt(customers);
+                    BigDecimal lineSum = BigDecimal.ZERO;
+                    for (int i = 0; i < count; i++) {
+                        int prodId = 1 + random.nextInt(PRODUCTS);
+                        int quantity = 1 + random.nextInt(10);
+                        linePs.setLong(1, ++lineId);
+                        linePs.setLong(2, orderId);
+                        linePs.setLong(3, prodId);
+                        linePs.setString(4, productNames[prodId]);
+                        linePs.setInt(5, quantity);
+                        linePs.setDouble(6, productPrices[prodId].doubleValue());
+                        linePs.addBatch();
+                        lineSum = lineSum.add(productPrices[prodId].multiply(BigDecimal.valueOf(quantity)));
+                    }
+                    PriceBreakdown price = OrderPricing.price(customerTypes[custId], lineSum, count);
+                    orderPs.setLong(1, orderId);
+                    orderPs.setLong(2, custId);
+                    orderPs.setString(3, customerNames[custId]);
+                    orderPs.setString(4, OrderDao.DATE_FORMAT.format(start.plusSeconds((long) (random.nextDouble() * spanSeconds))));
+                    orderPs.setDouble(5, price.getSubtotal().doubleValue());
+                    orderPs.setDouble(6, price.getDiscount().doubleValue());
+                    orderPs.setDouble(7, price.getTax().doubleValue());
+                    orderPs.setDouble(8, price.getTotal().doubleValue());
+                    orderPs.addBatch();
+                    
+                    if (orderId % 10000 == 0) {
+                        orderPs.executeBatch();
+                        linePs.executeBatch();
+                    }
+                }
+                orderPs.executeBatch();
+                linePs.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+    
+    // Same columns as DB creates; DB adds the rest when it opens the file
+    private static void createTables(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE customer (" +
+            "cust_id INTEGER PRIMARY KEY, " +
+            "cust_name TEXT NOT NULL, " +
+            "email TEXT, " +
+            "phone TEXT, " +
+            "address TEXT, " +
+            "customer_type TEXT DEFAULT 'STANDARD')");
+        stmt.execute("CREATE TABLE product (" +
+            "prod_id INTEGER PRIMARY KEY, " +
+            "prod_name TEXT NOT NULL, " +
+            "unit_price REAL NOT NULL)");
+        stmt.execute("CREATE TABLE orders (" +
+            "order_id INTEGER PRIMARY KEY, " +
+            "cust_id INTEGER NOT NULL, " +
+            "cust_name TEXT, " +
+            "order_date TEXT, " +
+            "subtotal REAL, " +
+            "discount REAL, " +
+            "tax REAL, " +
+            "total REAL)");
+        stmt.execute("CREATE TABLE order_line (" +
+            "line_id INTEGER PRIMARY KEY, " +
+            "order_id INTEGER NOT NULL, " +
+            "prod_id INTEGER, " +
+            "prod_name TEXT, " +
+            "quantity INTEGER, " +
+            "unit_price REAL)");
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * OrderDeleteBenchmark.java
+ * 
+ * Deleting an order from the orders screen (OrdersScreen.deleteOrder).
+ * A fresh order is inserted before every call, outside the measured time,
+ * so each call deletes one order of the usual size.
+ * 
+ *   autoCommit          two auto-commit statements built by concatenation,
+ *                       lines then header: two commits, as the screen used to
+ *   inOneTransaction    OrderDao.delete in one write transaction, as the
+ *                       screen does: a version-checked header delete and the
+ *                       lines, one commit, and no orphaned lines on failure
+ */
+package aim.legacy.bench;
+
+import aim.legacy.cache.OrderCache;
+import aim.legacy.db.DB;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Daim.metrics.log=false", "-Daim.sql.slowMillis=3600000"})
+public class OrderDeleteBenchmark {
+    
+    @State(Scope.Thread)
+    public static class Victim {
+        long orderId;
+        long version;
+        
+        // Per call rather than per iteration: a delete commits to disk, so it is
+        // slow enough for JMH's per-invocation setup not to distort it
+        @Setup(Level.Invocation)
+        public void insert(Dataset data) throws SQLException {
+            Order order = new Order(null, 1L, "Bench Customer");
+            order.setOrderDate(LocalDateTime.of(2024, 6, 1, 12, 0));
+            order.setSubtotal(new BigDecimal("40.00"));
+            order.setDiscount(BigDecimal.ZERO);
+            order.setTax(new BigDecimal("5.99"));
+            order.setTotal(new BigDecimal("45.99"));
+            for (int i = 1; i <= 4; i++) {
+                order.addLine(new OrderLine(null, (long) i, "Bench Product " + i, 1, new BigDecimal("10.00")));
+            }
+            Connection conn = DB.getConn();
+            DB.beginWrite(conn);
+            try {
+                OrderDao.insertAll(conn, Collections.singletonList(order));
+                DB.commitWrite(conn);
+            } catch (SQLException e) {
+                DB.rollbackWrite(conn);
+                throw e;
+            }
+            orderId = order.getId();
+            version = order.getVersion();
+        }
+    }
+    
+    @Benchmark
+    public void autoCommit(Dataset data, Victim victim) throws SQLException {
+        Statement stmt = DB.getConn().createStatement();
+        stmt.execute("DELETE FROM order_line WHERE order_id = " + victim.orderId);
+        stmt.execute("DELETE FROM orders WHERE order_id = " + victim.orderId);
+        stmt.close();
+        OrderCache.getInstance().invalidate(victim.orderId);
+    }
+    
+    @Benchmark
+    public void inOneTransaction(Dataset data, Victim victim) throws SQLException {
+        Connection conn = DB.getConn();
+        DB.beginWrite(conn);
+        try {
+            OrderDao.delete(conn, victim.orderId, victim.version);
+            DB.commitWrite(conn);
+        } catch (SQLException e) {
+            DB.rollbackWrite(conn);
+            throw e;
+        }
+        OrderCache.getInstance().invalidate(victim.orderId);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * OrderListBenchmark.java
+ * 
+ * The orders screen (OrdersScreen.loadOrders): opening it counts the matching
+ * orders and reads the first page; scrolling reads further pages of 100.
+ * 
+ *   openScreen             count + first page, newest-id order
+ *   openScreenByTotal      the same, sorted by total descending
+ *   jumpToMiddleByOffset   a page in the middle read by row offset, as when
+ *                          the scrollbar is dragged far from any loaded page
+ *   nextPageByKey          the same page read after the previous page's last
+ *                          key, as when scrolling on from a loaded page
+ */
+package aim.legacy.bench;
+
+import aim.legacy.db.DB;
+import aim.legacy.db.OrderPage;
+import aim.legacy.db.OrderQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Daim.metrics.log=false", "-Daim.sql.slowMillis=3600000"})
+public class OrderListBenchmark {
+    
+    // PagedTableModel.DEFAULT_PAGE_SIZE
+    static final int PAGE_SIZE = 100;
+    
+    @State(Scope.Benchmark)
+    public static class Screen {
+        final OrderQuery byId = new OrderQuery();
+        final OrderQuery byTotal = new OrderQuery();
+        int middle;
+        Object[] keyBeforeMiddle;
+        
+        @Setup(Level.Trial)
+        public void prepare(Dataset data) throws SQLException {
+            byId.setDescending(true);
+            byTotal.setSortColumn(OrderQuery.SortColumn.TOTAL);
+            byTotal.setDescending(true);
+            int count = byId.count(DB.getConn());
+            middle = Math.max(0, count / 2 - (count / 2) % PAGE_SIZE);
+            keyBeforeMiddle = middle == 0 ? null
+                : byId.fetchAt(DB.getConn(), middle - PAGE_SIZE, PAGE_SIZE).getLastKey();
+        }
+    }
+    
+    @Benchmark
+    public void openScreen(Dataset data, Screen screen, Blackhole bh) throws SQLException {
+        bh.consume(screen.byId.count(DB.getConn()));
+        bh.consume(screen.byId.fetchAt(DB.getConn(), 0, PAGE_SIZE));
+    }
+    
+    @Benchmark
+    public void openScreenByTotal(Dataset data, Screen screen, Blackhole bh) throws SQLException {
+        bh.consume(screen.byTotal.count(DB.getConn()));
+        bh.consume(screen.byTotal.fetchAt(DB.getConn(), 0, PAGE_SIZE));
+    }
+    
+    @Benchmark
+    public OrderPage jumpToMiddleByOffset(Dataset data, Screen screen) throws SQLException {
+        return screen.byId.fetchAt(DB.getConn(), screen.middle, PAGE_SIZE);
+    }
+    
+    @Benchmark
+    public OrderPage nextPageByKey(Dataset data, Screen screen) throws SQLException {
+        return screen.byId.fetchAfter(DB.getConn(), screen.keyBeforeMiddle, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * OrderLoadBenchmark.java
+ * 
+ * Opening an order in the editor (OrderEditorDialog.loadOrder).
+ * 
+ *   fromDatabase   header and lines read with OrderDao.load, as on a cache miss
+ *   throughCache   OrderCache.get over a working set of recently opened orders,
+ *                  which is what the editor does
+ */
+package aim.legacy.bench;
+
+import aim.legacy.cache.OrderCache;
+import aim.legacy.db.DB;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Daim.metrics.log=false", "-Daim.sql.slowMillis=3600000"})
+public class OrderLoadBenchmark {
+    
+    // Orders a user has open over a session; well within the cache's limits
+    static final int WORKING_SET = 200;
+    
+    @State(Scope.Thread)
+    public static class Picks {
+        private final Random random = new Random(7);
+        private long[] recent;
+        private int orders;
+        private int next;
+        
+        @Setup(Level.Trial)
+        public void prepare(Dataset data) throws SQLException {
+            orders = data.orders;
+            recent = new long[Math.min(WORKING_SET, orders)];
+            for (int i = 0; i < recent.length; i++) {
+                recent[i] = 1 + random.nextInt(orders);
+                OrderCache.getInstance().get(recent[i]);
+            }
+        }
+        
+        long anyOrder() {
+            return 1 + random.nextInt(orders);
+        }
+        
+        long recentOrder() {
+            next = (next + 1) % recent.length;
+            return recent[next];
+        }
+    }
+    
+    @Benchmark
+    public Order fromDatabase(Dataset data, Picks picks) throws SQLException {
+        return OrderDao.load(DB.getConn(), picks.anyOrder());
+    }
+    
+    @Benchmark
+    public Order throughCache(Dataset data, Picks picks) throws SQLException {
+        return OrderCache.getInstance().get(picks.recentOrder());
+    }
+}
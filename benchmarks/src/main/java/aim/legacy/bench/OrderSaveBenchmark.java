@@ -0,0 +1,198 @@
+/**
+ * OrderSaveBenchmark.java
+ * 
+ * Saving from the order editor (OrderEditorDialog.save): one write
+ * transaction per order, with the order written through to the cache.
+ * 
+ *   editExisting   reprice and save an existing order under its version
+ *   createNew      save a new 4-line order under a fresh idempotency key
+ *   createBatched  new orders inserted 20 to a transaction, as ingest does;
+ *                  reported per order
+ */
+package aim.legacy.bench;
+
+import aim.legacy.cache.OrderCache;
+import aim.legacy.db.DB;
+import aim.legacy.db.IdempotencyKeys;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+import aim.legacy.pricing.OrderPricing;
+import aim.legacy.pricing.PriceBreakdown;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Daim.metrics.log=false", "-Daim.sql.slowMillis=3600000"})
+public class OrderSaveBenchmark {
+    
+    static final int BATCH = 20;
+    private static final int EDITED_ORDERS = 200;
+    private static final int LINES_PER_NEW_ORDER = 4;
+    
+    @State(Scope.Thread)
+    public static class Editor {
+        private final Random random = new Random(11);
+        private final List<Order> opened = new ArrayList<>();
+        private final List<Object[]> customers = new ArrayList<>();
+        private final List<OrderLine> products = new ArrayList<>();
+        private int next;
+        
+        @Setup(Level.Trial)
+        public void prepare(Dataset data) throws SQLException {
+            Connection conn = DB.getConn();
+            for (int i = 0; i < Math.min(EDITED_ORDERS, data.orders); i++) {
+                Order order = OrderDao.load(conn, 1 + random.nextInt(data.orders));
+                if (order != null && !opened.contains(order)) {
+                    opened.add(order);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT cust_id, cust_name, customer_type FROM customer ORDER BY cust_id LIMIT 100");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    customers.add(new Object[] {rs.getLong(1), rs.getString(2), rs.getString(3)});
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT prod_id, prod_name, unit_price FROM product ORDER BY prod_id LIMIT 100");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    products.add(new OrderLine(null, rs.getLong(1), rs.getString(2), 1, new BigDecimal(rs.getString(3))));
+                }
+            }
+        }
+        
+        // The next opened order with one line's quantity changed, built the way the editor builds it
+        Order nextEdit() {
+            Order base = opened.get(next);
+            next = (next + 1) % opened.size();
+            Order order = new Order(base.getId(), base.getCustomerId(), base.getCustomerName());
+            order.setOrderDate(base.getOrderDate());
+            order.setVersion(base.getVersion());
+            for (OrderLine line : base.getLines()) {
+                order.addLine(new OrderLine(null, line.getProductId(), line.getProductName(), line.getQuantity(), line.getUnitPrice()));
+            }
+            OrderLine changed = order.getLines().get(random.nextInt(order.getLines().size()));
+            changed.setQuantity(changed.getQuantity() % 10 + 1);
+            // The customer's type changes the figures, not the work
+            price(order, "STANDARD");
+            return order;
+        }
+        
+        // A new order for a random customer, as submitted from the editor
+        Order newOrder() {
+            Object[] customer = customers.get(random.nextInt(customers.size()));
+            Order order = new Order(null, (Long) customer[0], (String) customer[1]);
+            order.setOrderDate(LocalDateTime.now(ZoneOffset.UTC).withNano(0));
+            order.setIdempotencyKey(UUID.randomUUID().toString());
+            for (int i = 0; i < LINES_PER_NEW_ORDER; i++) {
+                OrderLine product = products.get(random.nextInt(products.size()));
+                order.addLine(new OrderLine(null, product.getProductId(), product.getProductName(),
+                    1 + random.nextInt(10), product.getUnitPrice()));
+            }
+            price(order, (String) customer[2]);
+            return order;
+        }
+        
+        // The editor stores what it saved as the order it is now editing
+        void saved(Order order) {
+            opened.set((next + opened.size() - 1) % opened.size(), order);
+        }
+        
+        private static void price(Order order, String customerType) {
+            BigDecimal lineSum = BigDecimal.ZERO;
+            for (OrderLine line : order.getLines()) {
+                lineSum = lineSum.add(line.getLineTotal());
+            }
+            PriceBreakdown price = OrderPricing.price(customerType, lineSum, order.getLines().size());
+            order.setSubtotal(price.getSubtotal());
+            order.setDiscount(price.getDiscount());
+            order.setTax(price.getTax());
+            order.setTotal(price.getTotal());
+        }
+    }
+    
+    @Benchmark
+    public boolean editExisting(Dataset data, Editor editor) throws SQLException {
+        Order order = editor.nextEdit();
+        boolean written = save(order);
+        editor.saved(order);
+        return written;
+    }
+    
+    @Benchmark
+    public boolean createNew(Dataset data, Editor editor) throws SQLException {
+        Order order = editor.newOrder();
+        boolean written = save(order);
+        IdempotencyKeys.getInstance().rememberOrders(Collections.singletonList(order));
+        return written;
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Order> createBatched(Dataset data, Editor editor) throws SQLException {
+        List<Order> orders = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            orders.add(editor.newOrder());
+        }
+        Connection conn = DB.getConn();
+        List<Order> inserted;
+        DB.beginWrite(conn);
+        try {
+            inserted = OrderDao.insertAll(conn, orders);
+            DB.commitWrite(conn);
+        } catch (SQLException e) {
+            DB.rollbackWrite(conn);
+            throw e;
+        }
+        IdempotencyKeys.getInstance().rememberOrders(inserted);
+        return inserted;
+    }
+    
+    // One transaction, then write-through to the cache, as OrderEditorDialog.save does
+    private static boolean save(Order order) throws SQLException {
+        Connection conn = DB.getConn();
+        boolean written;
+        DB.beginWrite(conn);
+        try {
+            written = OrderDao.save(conn, order);
+            DB.commitWrite(conn);
+        } catch (SQLException e) {
+            DB.rollbackWrite(conn);
+            throw e;
+        }
+        if (written) {
+            OrderCache.getInstance().put(order);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * StorageProfile.java
+ * 
+ * SQLite journal and sync settings a benchmark database runs under.
+ * Applied to the shared connection after DB has opened and initialized it,
+ * before any other connection is open.
+ * 
+ *   wal          what the application runs with: WAL journal, synchronous=FULL
+ *   wal-normal   WAL journal, synchronous=NORMAL (no fsync per commit, only at checkpoints)
+ *   delete       rollback journal, synchronous=FULL, as the database ran before WAL
+ */
+package aim.legacy.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public enum StorageProfile {
+    
+    WAL("wal", "WAL", "FULL"),
+    WAL_NORMAL("wal-normal", "WAL", "NORMAL"),
+    DELETE("delete", "DELETE", "FULL");
+    
+    private final String name;
+    private final String journalMode;
+    private final String synchronous;
+    
+    StorageProfile(String name, String journalMode, String synchronous) {
+        this.name = name;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+    }
+    
+    public static StorageProfile named(String name) {
+        for (StorageProfile profile : values()) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        throw new IllegalArgumentException("Unknown storage profile " + name);
+    }
+    
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode=" + journalMode);
+            stmt.execute("PRAGMA synchronous=" + synchronous);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * ApiException.java
+ * 
+ * A request the HTTP API refuses, with the status code to answer with.
+ */
+package aim.legacy.api;
+
+public class ApiException extends RuntimeException {
+    
+    private final int status;
+    
+    public ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+    
+    public int getStatus() {
+        return status;
+    }
+}
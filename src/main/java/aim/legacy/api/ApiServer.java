@@ -0,0 +1,549 @@
+/**
+ * ApiServer.java
+ * 
+ * Embedded HTTP/JSON API for other systems to read customers and products,
+ * read and create orders, and price quotes without the desktop client.
+ * 
+ *   GET  /api/customers?q=&limit=     GET /api/customers/{id}
+ *   GET  /api/products?q=&limit=      GET /api/products/{id}
+ *   GET  /api/orders?customerId=&limit=  GET /api/orders/{id}
+ *   POST /api/orders   {"customerId":1,"lines":[{"productId":3,"quantity":2,"unitPrice":19.99}]}
+ *   POST /api/quotes   same body; prices the order without saving it
+ * 
+ * POST /api/orders honours an Idempotency-Key header: a retry with the same
+ * key gets the order the first request created (200 instead of 201, with
+ * Idempotent-Replayed: true) rather than creating it again.
+ * 
+ * Each request runs on its own thread: a virtual thread on Java 21+, a
+ * bounded platform pool otherwise. Reads share a small pool of read-only
+ * connections and new orders go through the single OrderWriter.
+ */
+package aim.legacy.api;
+
+import aim.legacy.cache.ProductCatalog;
+import aim.legacy.db.DB;
+import aim.legacy.db.IdempotencyKeys;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Customer;
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+import aim.legacy.domain.Product;
+import aim.legacy.pricing.OrderPricing;
+import aim.legacy.pricing.PriceBreakdown;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public class ApiServer {
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+    
+    // Pending connections the OS holds for us; sized for bursts of thousands of clients
+    private static final int BACKLOG = Integer.getInteger("aim.api.backlog", 4096);
+    
+    // How long a request waits for its order to be committed
+    private static final long WRITE_TIMEOUT_MILLIS = 30000;
+    
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+    
+    // Response header set when a POST was answered with an earlier order
+    // (exchange attributes are shared by the whole context on older JDKs, so not those)
+    private static final String REPLAYED = "Idempotent-Replayed";
+    
+    private static final String CUSTOMER_COLUMNS = "cust_id, cust_name, email, phone, address, customer_type";
+    
+    private final int port;
+    private HttpServer server;
+    private ExecutorService executor;
+    private ReadConnectionPool readPool;
+    private OrderWriter writer;
+    private ScheduledExecutorService housekeeping;
+    
+    public ApiServer(int port) {
+        this.port = port;
+    }
+    
+    public synchronized void start() throws IOException, SQLException {
+        readPool = new ReadConnectionPool(Integer.getInteger("aim.api.readConnections", 8), 5000);
+        writer = new OrderWriter(Integer.getInteger("aim.api.writeQueue", 10000));
+        executor = newRequestExecutor();
+        
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext("/api/customers", exchange -> handle(exchange, this::customers));
+        server.createContext("/api/products", exchange -> handle(exchange, this::products));
+        server.createContext("/api/orders", exchange -> handle(exchange, this::orders));
+        server.createContext("/api/quotes", exchange -> handle(exchange, this::quotes));
+        server.setExecutor(executor);
+        server.start();
+        
+        housekeeping = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "api-housekeeping");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeping.scheduleAtFixedRate(ApiServer::purgeIdempotencyKeys, 1, 1, TimeUnit.HOURS);
+    }
+    
+    // Expired idempotency keys are otherwise only purged at startup
+    private static void purgeIdempotencyKeys() {
+        try (Connection conn = DB.openWriteConn()) {
+            IdempotencyKeys.getInstance().purgeExpired(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(1);
+        housekeeping.shutdownNow();
+        executor.shutdown();
+        writer.close();
+        readPool.close();
+        server = null;
+    }
+    
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+    
+    // One virtual thread per request when the JVM has them (Java 21+)
+    // Looked up reflectively so the build keeps its Java 8 target
+    static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            int threads = Integer.getInteger("aim.api.threads", 200);
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "api-request");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+    
+    private interface Route {
+        Object serve(HttpExchange exchange, String id) throws Exception;
+    }
+    
+    // Dispatch to a route and write its result as JSON
+    // ApiException maps to its status; anything else is a 500
+    private void handle(HttpExchange exchange, Route route) throws IOException {
+        int status = 200;
+        Object body;
+        try {
+            String base = exchange.getHttpContext().getPath();
+            String rest = exchange.getRequestURI().getPath().substring(base.length());
+            String id = rest.startsWith("/") && rest.length() > 1 ? rest.substring(1) : null;
+            body = route.serve(exchange, id);
+            if ("POST".equals(exchange.getRequestMethod()) && exchange.getHttpContext().getPath().equals("/api/orders")) {
+                status = exchange.getResponseHeaders().containsKey(REPLAYED) ? 200 : 201;
+            }
+        } catch (ApiException e) {
+            status = e.getStatus();
+            body = error(e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            status = 500;
+            body = error("Internal error: " + e.getMessage());
+        }
+        
+        byte[] bytes = MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    // GET /api/customers?q=&limit= matches names by prefix; GET /api/customers/{id}
+    private Object customers(HttpExchange exchange, String id) throws SQLException {
+        requireMethod(exchange, "GET");
+        if (id != null) {
+            long custId = parseId(id);
+            Customer customer = readPool.withConnection(conn -> findCustomer(conn, custId));
+            if (customer == null) {
+                throw new ApiException(404, "No customer " + custId);
+            }
+            return customerJson(customer);
+        }
+        
+        Map<String, String> params = query(exchange);
+        String q = params.getOrDefault("q", "").trim();
+        int limit = limit(params);
+        return readPool.withConnection(conn -> {
+            ArrayNode list = MAPPER.createArrayNode();
+            String sql = "SELECT " + CUSTOMER_COLUMNS + " FROM customer "
+                + (q.isEmpty() ? "" : "WHERE cust_name LIKE ? ESCAPE '\\' ") + "ORDER BY cust_name, cust_id LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (!q.isEmpty()) {
+                    ps.setString(i++, q.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+                }
+                ps.setInt(i, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        list.add(customerJson(readCustomer(rs)));
+                    }
+                }
+            }
+            return list;
+        });
+    }
+    
+    // GET /api/products?q=&limit= served from the in-memory catalog; GET /api/products/{id}
+    private Object products(HttpExchange exchange, String id) throws SQLException {
+        requireMethod(exchange, "GET");
+        if (id != null) {
+            long prodId = parseId(id);
+            Product product = readPool.withConnection(conn -> findProduct(conn, prodId));
+            if (product == null) {
+                throw new ApiException(404, "No product " + prodId);
+            }
+            return productJson(product);
+        }
+        
+        Map<String, String> params = query(exchange);
+        String q = params.getOrDefault("q", "").trim();
+        int limit = limit(params);
+        List<Product> products = q.isEmpty() ? ProductCatalog.getInstance().getProducts()
+            : ProductCatalog.getInstance().search(q, limit);
+        ArrayNode list = MAPPER.createArrayNode();
+        for (int i = 0; i < products.size() && i < limit; i++) {
+            list.add(productJson(products.get(i)));
+        }
+        return list;
+    }
+    
+    // GET /api/orders?customerId=&limit= newest first; GET /api/orders/{id}; POST /api/orders
+    private Object orders(HttpExchange exchange, String id) throws Exception {
+        if ("POST".equals(exchange.getRequestMethod())) {
+            if (id != null) {
+                throw new ApiException(405, "POST to /api/orders to create an order");
+            }
+            String key = idempotencyKey(exchange);
+            if (key != null) {
+                // Most retries arrive after the first request finished: answer without queuing
+                Long original = readPool.withConnection(conn -> IdempotencyKeys.getInstance().find(conn, key));
+                if (original != null) {
+                    return orderJson(replay(exchange, original));
+                }
+            }
+            // Read the body before taking a pooled connection so a slow client cannot hold one
+            JsonNode body = readBody(exchange);
+            Order order = readPool.withConnection(conn -> priceOrder(conn, body));
+            order.setIdempotencyKey(key);
+            Order saved = awaitWrite(order);
+            if (saved != order) {
+                // Raced an earlier request with the same key; the writer returned its order
+                markReplayed(exchange);
+            }
+            return orderJson(saved);
+        }
+        requireMethod(exchange, "GET");
+        if (id != null) {
+            long orderId = parseId(id);
+            Order order = readPool.withConnection(conn -> OrderDao.load(conn, orderId));
+            if (order == null) {
+                throw new ApiException(404, "No order " + orderId);
+            }
+            return orderJson(order);
+        }
+        
+        Map<String, String> params = query(exchange);
+        String customerId = params.get("customerId");
+        Long custId = customerId == null ? null : parseId(customerId);
+        int limit = limit(params);
+        return readPool.withConnection(conn -> {
+            ArrayNode list = MAPPER.createArrayNode();
+            String sql = "SELECT order_id, cust_id, cust_name, order_date, subtotal, discount, tax, total FROM orders "
+                + (custId == null ? "" : "WHERE cust_id = ? ") + "ORDER BY order_id DESC LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (custId != null) {
+                    ps.setLong(i++, custId);
+                }
+                ps.setInt(i, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Order order = new Order(rs.getLong("order_id"), rs.getLong("cust_id"), rs.getString("cust_name"));
+                        order.setOrderDate(OrderDao.parseDate(rs.getString("order_date")));
+                        order.setSubtotal(new BigDecimal(rs.getString("subtotal")));
+                        order.setDiscount(new BigDecimal(rs.getString("discount")));
+                        order.setTax(new BigDecimal(rs.getString("tax")));
+                        order.setTotal(new BigDecimal(rs.getString("total")));
+                        list.add(orderJson(order));
+                    }
+                }
+            }
+            return list;
+        });
+    }
+    
+    // POST /api/quotes: price an order body without saving it
+    private Object quotes(HttpExchange exchange, String id) throws Exception {
+        requireMethod(exchange, "POST");
+        JsonNode body = readBody(exchange);
+        Order order = readPool.withConnection(conn -> priceOrder(conn, body));
+        return orderJson(order);
+    }
+    
+    private static String idempotencyKey(HttpExchange exchange) {
+        String key = exchange.getRequestHeaders().getFirst(IDEMPOTENCY_KEY);
+        if (key == null) {
+            return null;
+        }
+        key = key.trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new ApiException(400, IDEMPOTENCY_KEY + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        return key;
+    }
+    
+    // The order an earlier request created with the same idempotency key
+    private Order replay(HttpExchange exchange, long orderId) throws SQLException {
+        Order order = readPool.withConnection(conn -> OrderDao.load(conn, orderId));
+        if (order == null) {
+            throw new ApiException(410, "Order " + orderId + " created with this " + IDEMPOTENCY_KEY + " has been deleted");
+        }
+        markReplayed(exchange);
+        return order;
+    }
+    
+    private static void markReplayed(HttpExchange exchange) {
+        exchange.getResponseHeaders().set(REPLAYED, "true");
+    }
+    
+    private Order awaitWrite(Order order) throws Exception {
+        try {
+            return writer.submit(order).get(WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ApiException(503, "Timed out saving the order");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException) {
+                throw (ApiException) e.getCause();
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+    
+    // Validate an order body against the database and price it like the order editor does
+    private Order priceOrder(Connection conn, JsonNode body) throws SQLException {
+        if (!body.path("customerId").canConvertToLong()) {
+            throw new ApiException(400, "customerId is required");
+        }
+        long custId = body.path("customerId").asLong();
+        Customer customer = findCustomer(conn, custId);
+        if (customer == null) {
+            throw new ApiException(422, "Unknown customer " + custId);
+        }
+        JsonNode lines = body.path("lines");
+        if (!lines.isArray() || lines.size() == 0) {
+            throw new ApiException(422, "An order needs at least one line");
+        }
+        
+        Order order = new Order(null, custId, customer.getName());
+        order.setOrderDate(LocalDateTime.now(ZoneOffset.UTC).withNano(0));
+        BigDecimal lineSum = BigDecimal.ZERO;
+        for (JsonNode line : lines) {
+            long prodId = line.path("productId").asLong(-1);
+            Product product = findProduct(conn, prodId);
+            if (product == null) {
+                throw new ApiException(422, "Unknown product " + line.path("productId").asText());
+            }
+            int quantity = line.path("quantity").asInt(0);
+            if (quantity <= 0) {
+                throw new ApiException(422, "Quantity must be positive for product " + prodId);
+            }
+            BigDecimal unitPrice = product.getUnitPrice();
+            if (line.hasNonNull("unitPrice")) {
+                unitPrice = line.get("unitPrice").decimalValue();
+                if (unitPrice.signum() < 0) {
+                    throw new ApiException(422, "Unit price must be zero or greater for product " + prodId);
+                }
+            }
+            order.addLine(new OrderLine(null, prodId, product.getName(), quantity, unitPrice));
+            lineSum = lineSum.add(unitPrice.multiply(BigDecimal.valueOf(quantity)));
+        }
+        
+        PriceBreakdown price = OrderPricing.price(customer.getCustomerType(), lineSum, order.getLines().size());
+        order.setSubtotal(price.getSubtotal());
+        order.setDiscount(price.getDiscount());
+        order.setTax(price.getTax());
+        order.setTotal(price.getTotal());
+        return order;
+    }
+    
+    private static Customer findCustomer(Connection conn, long custId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT " + CUSTOMER_COLUMNS + " FROM customer WHERE cust_id = ?")) {
+            ps.setLong(1, custId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readCustomer(rs) : null;
+            }
+        }
+    }
+    
+    private static Customer readCustomer(ResultSet rs) throws SQLException {
+        return new Customer(rs.getLong("cust_id"), rs.getString("cust_name"), rs.getString("email"),
+            rs.getString("phone"), rs.getString("address"), rs.getString("customer_type"));
+    }
+    
+    private static Product findProduct(Connection conn, long prodId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT prod_id, prod_name, unit_price FROM product WHERE prod_id = ?")) {
+            ps.setLong(1, prodId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Product(rs.getLong("prod_id"), rs.getString("prod_name"), null,
+                    new BigDecimal(rs.getString("unit_price")));
+            }
+        }
+    }
+    
+    private static ObjectNode customerJson(Customer customer) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("id", customer.getId());
+        node.put("name", customer.getName());
+        node.put("email", customer.getEmail());
+        node.put("phone", customer.getPhone());
+        node.put("address", customer.getAddress());
+        node.put("customerType", customer.getCustomerType());
+        return node;
+    }
+    
+    private static ObjectNode productJson(Product product) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("id", product.getId());
+        node.put("name", product.getName());
+        node.put("description", product.getDescription());
+        node.put("unitPrice", product.getUnitPrice());
+        return node;
+    }
+    
+    private static ObjectNode orderJson(Order order) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("id", order.getId());
+        node.put("customerId", order.getCustomerId());
+        node.put("customerName", order.getCustomerName());
+        node.put("orderDate", order.getOrderDate() == null ? null : OrderDao.DATE_FORMAT.format(order.getOrderDate()));
+        node.put("subtotal", order.getSubtotal());
+        node.put("discount", order.getDiscount());
+        node.put("tax", order.getTax());
+        node.put("total", order.getTotal());
+        if (!order.getLines().isEmpty()) {
+            ArrayNode lines = node.putArray("lines");
+            for (OrderLine line : order.getLines()) {
+                ObjectNode lineNode = lines.addObject();
+                lineNode.put("id", line.getId());
+                lineNode.put("productId", line.getProductId());
+                lineNode.put("productName", line.getProductName());
+                lineNode.put("quantity", line.getQuantity());
+                lineNode.put("unitPrice", line.getUnitPrice());
+                lineNode.put("lineTotal", line.getLineTotal());
+            }
+        }
+        return node;
+    }
+    
+    private static ObjectNode error(String message) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("error", message);
+        return node;
+    }
+    
+    private static JsonNode readBody(HttpExchange exchange) {
+        try (InputStream in = exchange.getRequestBody()) {
+            JsonNode body = MAPPER.readTree(in);
+            if (body == null || !body.isObject()) {
+                throw new ApiException(400, "Expected a JSON object");
+            }
+            return body;
+        } catch (IOException e) {
+            throw new ApiException(400, "Malformed JSON: " + e.getMessage());
+        }
+    }
+    
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!method.equals(exchange.getRequestMethod())) {
+            throw new ApiException(405, exchange.getRequestMethod() + " not allowed here");
+        }
+    }
+    
+    private static long parseId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "Not an id: " + value);
+        }
+    }
+    
+    private static int limit(Map<String, String> params) {
+        String value = params.get("limit");
+        if (value == null) {
+            return DEFAULT_LIMIT;
+        }
+        return (int) Math.max(1, Math.min(MAX_LIMIT, parseId(value)));
+    }
+    
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        try {
+            for (String pair : raw.split("&")) {
+                int eq = pair.indexOf('=');
+                String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+                params.put(key, value);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ApiException(400, "Malformed query string");
+        }
+        return params;
+    }
+    
+    // Run the API headless: ApiServer [port]; -Daim.api.port also sets the port
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("aim.api.port", 8085);
+        ApiServer api = new ApiServer(port);
+        api.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop();
+            DB.closeConn();
+        }));
+        System.out.println("[api] listening on port " + api.getPort());
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * OrderWriter.java
+ * 
+ * Single writer for orders created through the API.
+ * SQLite allows one writer at a time, so instead of every request thread
+ * contending for the write lock, requests hand priced orders to this thread
+ * and wait. Orders that queue up while a commit is running are inserted
+ * together and committed once (group commit), so throughput rises with load
+ * instead of collapsing into lock retries.
+ */
+package aim.legacy.api;
+
+import aim.legacy.db.DB;
+import aim.legacy.db.IdempotencyKeys;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+import aim.legacy.event.ChangeBus;
+import aim.legacy.event.ChangeEvent;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class OrderWriter {
+    
+    // Most orders committed in one transaction
+    private static final int MAX_BATCH = Integer.getInteger("aim.api.writeBatch", 200);
+    
+    private static class Pending {
+        final Order order;
+        final CompletableFuture<Order> done = new CompletableFuture<>();
+        
+        Pending(Order order) {
+            this.order = order;
+        }
+    }
+    
+    private final BlockingQueue<Pending> queue;
+    private final Connection conn;
+    private final Thread thread;
+    private volatile boolean running = true;
+    
+    public OrderWriter(int queueCapacity) throws SQLException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.conn = DB.openWriteConn();
+        this.thread = new Thread(this::writeLoop, "api-order-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    // Queue an order for insert; completes with the order once committed, ids set
+    // If its idempotency key was already used, completes instead with the order
+    // first created with that key, freshly loaded (410 if since deleted)
+    // Fails fast with 503 when the queue is full rather than piling up requests
+    public CompletableFuture<Order> submit(Order order) {
+        Pending pending = new Pending(order);
+        if (!running || !queue.offer(pending)) {
+            throw new ApiException(503, "Order writer busy, try again");
+        }
+        return pending.done;
+    }
+    
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    
+    public void close() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        List<Order> orders = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+            } catch (InterruptedException e) {
+                break;
+            }
+            
+            for (Pending pending : batch) {
+                orders.add(pending.order);
+            }
+            boolean begun = false;
+            boolean committed = false;
+            Set<Order> written = Collections.newSetFromMap(new IdentityHashMap<>());
+            try {
+                DB.beginWrite(conn);
+                begun = true;
+                List<Order> inserted = OrderDao.insertAll(conn, orders);
+                DB.commitWrite(conn);
+                committed = true;
+                written.addAll(inserted);
+                IdempotencyKeys.getInstance().rememberOrders(inserted);
+                
+                for (Pending pending : batch) {
+                    if (written.contains(pending.order)) {
+                        ChangeBus.publish(ChangeEvent.Table.ORDERS, ChangeEvent.Type.INSERT, pending.order.getId());
+                        pending.done.complete(pending.order);
+                    } else {
+                        completeReplay(pending);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                // Any failure ends this batch only; the writer thread keeps serving the queue
+                e.printStackTrace();
+                if (begun && !committed) {
+                    DB.rollbackWrite(conn);
+                }
+                for (Pending pending : batch) {
+                    if (committed && written.contains(pending.order)) {
+                        // Already durable; only the follow-up work failed
+                        pending.done.complete(pending.order);
+                    } else if (!pending.done.isDone()) {
+                        if (!committed) {
+                            pending.order.setId(null);
+                        }
+                        pending.done.completeExceptionally(e);
+                    }
+                }
+            }
+            batch.clear();
+            orders.clear();
+        }
+        
+        // Anything still queued at shutdown is failed, not silently dropped
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done.completeExceptionally(new ApiException(503, "Server shutting down"));
+        }
+    }
+    
+    // Lost a race with an earlier submission of the same key: answer with that order
+    private void completeReplay(Pending pending) {
+        long orderId = pending.order.getId();
+        try {
+            Order original = OrderDao.load(conn, orderId);
+            if (original == null) {
+                pending.done.completeExceptionally(new ApiException(410, "Order " + orderId + " created with this Idempotency-Key has been deleted"));
+            } else {
+                pending.done.complete(original);
+            }
+        } catch (SQLException e) {
+            pending.done.completeExceptionally(e);
+        }
+    }
+}
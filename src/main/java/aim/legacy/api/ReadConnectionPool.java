@@ -0,0 +1,65 @@
+/**
+ * ReadConnectionPool.java
+ * 
+ * Fixed set of read-only connections shared by API requests.
+ * With one thread per request there can be thousands of requests in flight;
+ * the pool caps how many of them query SQLite at once, and a request that
+ * cannot get a connection in time is answered 503 instead of queueing forever.
+ */
+package aim.legacy.api;
+
+import aim.legacy.db.DB;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ReadConnectionPool {
+    
+    private final BlockingQueue<Connection> idle;
+    private final long timeoutMillis;
+    
+    public ReadConnectionPool(int size, long timeoutMillis) throws SQLException {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.timeoutMillis = timeoutMillis;
+        for (int i = 0; i < size; i++) {
+            idle.add(DB.openReadConn());
+        }
+    }
+    
+    public interface Work<T> {
+        T run(Connection conn) throws SQLException;
+    }
+    
+    // Run work on a pooled connection, waiting up to the timeout for one to free up
+    public <T> T withConnection(Work<T> work) throws SQLException {
+        Connection conn;
+        try {
+            conn = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(503, "Interrupted waiting for a database connection");
+        }
+        if (conn == null) {
+            throw new ApiException(503, "Server busy, try again");
+        }
+        try {
+            return work.run(conn);
+        } finally {
+            idle.add(conn);
+        }
+    }
+    
+    public void close() {
+        Connection conn;
+        while ((conn = idle.poll()) != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * OrderCache.java
+ * 
+ * Bounded LRU cache of fully hydrated orders keyed by order id.
+ * Entries are evicted least-recently-used first once either the entry
+ * count or the total weight (one unit for the header plus one per line)
+ * exceeds its limit. Writers keep the cache current by calling put()
+ * after a save and invalidate() after a delete. A load that was already
+ * running when such a call came in is returned to its caller but not
+ * cached, so it can never overwrite the newer state.
+ */
+package aim.legacy.cache;
+
+import aim.legacy.db.DB;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class OrderCache implements OrderCacheMXBean {
+    
+    // Defaults sized for a few hundred active orders per agent
+    // Override with -Daim.orderCache.maxEntries / -Daim.orderCache.maxWeight
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+    private static final long DEFAULT_MAX_WEIGHT = 25000;
+    
+    private static OrderCache instance;
+    
+    private final int maxEntries;
+    private final long maxWeight;
+    
+    // Access-ordered map: iteration starts at the least recently used entry
+    private final LinkedHashMap<Long, Order> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+    
+    // Database loads in progress, by order id
+    private final Map<Long, Load> loading = new HashMap<>();
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedWeight;
+    
+    // Callers loading one order; generation moves on with every put or invalidate of it
+    private static class Load {
+        int callers;
+        long generation;
+    }
+    
+    public OrderCache(int maxEntries, long maxWeight) {
+        if (maxEntries <= 0 || maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+    
+    // Shared cache used by the order screens
+    // Registered with the platform MBean server on first use
+    public static synchronized OrderCache getInstance() {
+        if (instance == null) {
+            instance = new OrderCache(
+                Integer.getInteger("aim.orderCache.maxEntries", DEFAULT_MAX_ENTRIES),
+                Long.getLong("aim.orderCache.maxWeight", DEFAULT_MAX_WEIGHT));
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    instance, new ObjectName("aim.legacy:type=OrderCache"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return instance;
+    }
+    
+    // Return the cached order, loading it from the database on a miss
+    // Returned orders are shared and must be treated as read-only
+    public Order get(long orderId) throws SQLException {
+        Load load;
+        long generation;
+        synchronized (this) {
+            Order order = entries.get(orderId);
+            if (order != null) {
+                hits++;
+                return order;
+            }
+            misses++;
+            load = loading.get(orderId);
+            if (load == null) {
+                load = new Load();
+                loading.put(orderId, load);
+            }
+            load.callers++;
+            generation = load.generation;
+        }
+        
+        Order loaded;
+        try {
+            loaded = OrderDao.load(DB.getConn(), orderId);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                finishLoad(orderId, load);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            finishLoad(orderId, load);
+            if (loaded != null) {
+                // Another caller may have written through while we were loading
+                Order current = entries.get(orderId);
+                if (current != null) {
+                    return current;
+                }
+                // Invalidated while loading: what we read may predate the change
+                if (load.generation == generation) {
+                    store(loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+    
+    // Write-through after a successful save
+    // Replaces any previous version of the order
+    public synchronized void put(Order order) {
+        if (order == null || order.getId() == null) {
+            return;
+        }
+        changed(order.getId());
+        store(order);
+    }
+    
+    // Drop an order after it has been deleted or changed outside the cache
+    public synchronized void invalidate(long orderId) {
+        changed(orderId);
+        Order removed = entries.remove(orderId);
+        if (removed != null) {
+            weight -= weigh(removed);
+        }
+    }
+    
+    private void finishLoad(long orderId, Load load) {
+        if (--load.callers == 0) {
+            loading.remove(orderId);
+        }
+    }
+    
+    // Loads of this order still in flight must not be cached
+    private void changed(long orderId) {
+        Load load = loading.get(orderId);
+        if (load != null) {
+            load.generation++;
+        }
+    }
+    
+    private void store(Order order) {
+        Order previous = entries.put(order.getId(), order);
+        if (previous != null) {
+            weight -= weigh(previous);
+        }
+        weight += weigh(order);
+        evict();
+    }
+    
+    // Evict least recently used entries until both limits are satisfied
+    // The newest entry is kept even if it alone exceeds the weight limit
+    private void evict() {
+        Iterator<Map.Entry<Long, Order>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && entries.size() > 1 && it.hasNext()) {
+            Order eldest = it.next().getValue();
+            it.remove();
+            long w = weigh(eldest);
+            weight -= w;
+            evictions++;
+            evictedWeight += w;
+        }
+    }
+    
+    private static long weigh(Order order) {
+        return 1 + (order.getLines() == null ? 0 : order.getLines().size());
+    }
+    
+    @Override
+    public synchronized int getSize() {
+        return entries.size();
+    }
+    
+    @Override
+    public synchronized long getWeight() {
+        return weight;
+    }
+    
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    
+    @Override
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+    
+    @Override
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    @Override
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    @Override
+    public synchronized double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+    
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    
+    @Override
+    public synchronized long getEvictedWeight() {
+        return evictedWeight;
+    }
+    
+    @Override
+    public synchronized void clear() {
+        for (Load load : loading.values()) {
+            load.generation++;
+        }
+        entries.clear();
+        weight = 0;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("OrderCache[size=%d/%d, weight=%d/%d, hitRatio=%.3f, evictions=%d]",
+            entries.size(), maxEntries, weight, maxWeight, getHitRatio(), evictions);
+    }
+}
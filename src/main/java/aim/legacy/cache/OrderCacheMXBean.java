@@ -0,0 +1,30 @@
+/**
+ * OrderCacheMXBean.java
+ * 
+ * JMX view of the order cache statistics.
+ * Visible in JConsole/VisualVM under aim.legacy:type=OrderCache.
+ */
+package aim.legacy.cache;
+
+public interface OrderCacheMXBean {
+    
+    int getSize();
+    
+    long getWeight();
+    
+    int getMaxEntries();
+    
+    long getMaxWeight();
+    
+    long getHitCount();
+    
+    long getMissCount();
+    
+    double getHitRatio();
+    
+    long getEvictionCount();
+    
+    long getEvictedWeight();
+    
+    void clear();
+}
@@ -0,0 +1,154 @@
+/**
+ * ProductCatalog.java
+ * 
+ * In-memory copy of the product catalog.
+ * Products are read once (warmed up in the background at startup) and then
+ * served from memory to the order editor instead of querying on every "Add Line".
+ * 
+ * Alongside the list, a sorted prefix index over product names, the words
+ * inside names and product ids answers typeahead lookups with a binary search.
+ */
+package aim.legacy.cache;
+
+import aim.legacy.db.DB;
+import aim.legacy.domain.Product;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+public class ProductCatalog {
+    
+    private static final ProductCatalog instance = new ProductCatalog();
+    
+    // Products and their prefix index, swapped together on reload
+    private static class Snapshot {
+        final List<Product> products;
+        // Sorted lowercase keys; refs[i] is the product position for keys[i]
+        final String[] keys;
+        final int[] refs;
+        
+        Snapshot(List<Product> products, String[] keys, int[] refs) {
+            this.products = products;
+            this.keys = keys;
+            this.refs = refs;
+        }
+    }
+    
+    private volatile Snapshot snapshot;
+    
+    public static ProductCatalog getInstance() {
+        return instance;
+    }
+    
+    // All products ordered by name, loading them on first use
+    public List<Product> getProducts() throws SQLException {
+        return current().products;
+    }
+    
+    // Products whose name, a word in the name, or id starts with the prefix
+    // Returns at most limit products in index order; an empty prefix matches nothing
+    public List<Product> search(String prefix, int limit) throws SQLException {
+        Snapshot snap = current();
+        String key = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (key.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        
+        int i = lowerBound(snap.keys, key);
+        Set<Product> matches = new LinkedHashSet<>();
+        while (i < snap.keys.length && matches.size() < limit && snap.keys[i].startsWith(key)) {
+            matches.add(snap.products.get(snap.refs[i]));
+            i++;
+        }
+        return new ArrayList<>(matches);
+    }
+    
+    // (Re)read the catalog from the database and rebuild the prefix index
+    // Reads through its own connection: it runs off the EDT, which writes on the shared one
+    public synchronized List<Product> load() throws SQLException {
+        List<Product> loaded = new ArrayList<>();
+        try (Connection conn = DB.openReadConn();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT prod_id, prod_name, unit_price FROM product ORDER BY prod_name")) {
+            while (rs.next()) {
+                loaded.add(new Product(
+                    rs.getLong("prod_id"),
+                    rs.getString("prod_name"),
+                    null,
+                    new BigDecimal(rs.getString("unit_price"))));
+            }
+        }
+        
+        snapshot = buildIndex(Collections.unmodifiableList(loaded));
+        return snapshot.products;
+    }
+    
+    private Snapshot current() throws SQLException {
+        Snapshot snap = snapshot;
+        if (snap == null) {
+            load();
+            snap = snapshot;
+        }
+        return snap;
+    }
+    
+    // One key per product for the full name, one per later word and one for the id
+    // Keys are sorted once so each lookup is a binary search plus a short scan
+    private static Snapshot buildIndex(List<Product> products) {
+        List<String> keyList = new ArrayList<>(products.size() * 3);
+        List<Integer> refList = new ArrayList<>(products.size() * 3);
+        for (int p = 0; p < products.size(); p++) {
+            Product product = products.get(p);
+            String name = product.getName() == null ? "" : product.getName().toLowerCase(Locale.ROOT);
+            keyList.add(name);
+            refList.add(p);
+            for (int c = 1; c < name.length(); c++) {
+                if (!Character.isLetterOrDigit(name.charAt(c - 1)) && Character.isLetterOrDigit(name.charAt(c))) {
+                    keyList.add(name.substring(c));
+                    refList.add(p);
+                }
+            }
+            keyList.add(String.valueOf(product.getId()));
+            refList.add(p);
+        }
+        
+        Integer[] order = new Integer[keyList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = keyList.get(a).compareTo(keyList.get(b));
+            return cmp != 0 ? cmp : Integer.compare(refList.get(a), refList.get(b));
+        });
+        
+        String[] keys = new String[order.length];
+        int[] refs = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = keyList.get(order[i]);
+            refs[i] = refList.get(order[i]);
+        }
+        return new Snapshot(products, keys, refs);
+    }
+    
+    // First position whose key is not less than the given key
+    private static int lowerBound(String[] keys, String key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
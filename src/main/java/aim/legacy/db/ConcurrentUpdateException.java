@@ -0,0 +1,49 @@
+/**
+ * ConcurrentUpdateException.java
+ * 
+ * Thrown when a versioned update finds the row changed or deleted since it
+ * was read. Nothing has been written; the caller reloads the current row,
+ * merges, and saves again against the new version.
+ */
+package aim.legacy.db;
+
+import java.sql.SQLException;
+
+public class ConcurrentUpdateException extends SQLException {
+    
+    private final String table;
+    private final long id;
+    private final long expectedVersion;
+    private final long currentVersion;
+    
+    public ConcurrentUpdateException(String table, long id, long expectedVersion, long currentVersion) {
+        super(currentVersion == 0
+            ? table + " #" + id + " was deleted by another user"
+            : table + " #" + id + " was changed by another user (version " + expectedVersion + ", now " + currentVersion + ")");
+        this.table = table;
+        this.id = id;
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+    
+    public String getTable() {
+        return table;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+    
+    // Version now in the database, or 0 when the row no longer exists
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+    
+    public boolean isDeleted() {
+        return currentVersion == 0;
+    }
+}
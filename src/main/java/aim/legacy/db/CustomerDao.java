@@ -0,0 +1,88 @@
+/**
+ * CustomerDao.java
+ * 
+ * Reads customers with their row version and applies versioned updates and
+ * deletes, so two users working on the same customer cannot silently
+ * overwrite each other.
+ */
+package aim.legacy.db;
+
+import aim.legacy.domain.Customer;
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import java.sql.*;
+
+public class CustomerDao {
+    
+    private static final OperationMetrics UPDATE = Metrics.operation("customer.save");
+    
+    // Load a customer with its version, or null when it does not exist
+    public static Customer load(Connection conn, long custId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT cust_id, cust_name, email, phone, address, customer_type, version FROM customer WHERE cust_id = ?")) {
+            ps.setLong(1, custId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Customer customer = new Customer(
+                    rs.getLong("cust_id"),
+                    rs.getString("cust_name"),
+                    rs.getString("email"),
+                    rs.getString("phone"),
+                    rs.getString("address"),
+                    rs.getString("customer_type"));
+                customer.setVersion(rs.getLong("version"));
+                return customer;
+            }
+        }
+    }
+    
+    // Update the customer if it still has the version it was loaded with
+    // On success the customer carries its new version; otherwise nothing is
+    // written and ConcurrentUpdateException says whether it changed or was deleted
+    public static void update(Connection conn, Customer customer) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            write(conn, customer);
+            UPDATE.recordSince(started);
+        } catch (SQLException e) {
+            UPDATE.failedSince(started);
+            throw e;
+        }
+    }
+    
+    private static void write(Connection conn, Customer customer) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE customer SET cust_name = ?, email = ?, phone = ?, address = ?, customer_type = ?, " +
+                "version = version + 1 WHERE cust_id = ? AND version = ?")) {
+            ps.setString(1, customer.getName());
+            ps.setString(2, customer.getEmail());
+            ps.setString(3, customer.getPhone());
+            ps.setString(4, customer.getAddress());
+            ps.setString(5, customer.getCustomerType());
+            ps.setLong(6, customer.getId());
+            ps.setLong(7, customer.getVersion());
+            if (ps.executeUpdate() == 0) {
+                throw new ConcurrentUpdateException("customer", customer.getId(), customer.getVersion(),
+                    OrderDao.currentVersion(conn, "customer", "cust_id", customer.getId()));
+            }
+        }
+        customer.setVersion(customer.getVersion() + 1);
+    }
+    
+    // Delete the customer if it still has the version it was read with
+    // Otherwise nothing is deleted and ConcurrentUpdateException says whether it
+    // changed or was already deleted
+    public static void delete(Connection conn, long custId, long version) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM customer WHERE cust_id = ? AND version = ?")) {
+            ps.setLong(1, custId);
+            ps.setLong(2, version);
+            if (ps.executeUpdate() == 0) {
+                throw new ConcurrentUpdateException("customer", custId, version,
+                    OrderDao.currentVersion(conn, "customer", "cust_id", custId));
+            }
+        }
+    }
+}
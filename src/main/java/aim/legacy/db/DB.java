@@ -3,23 +3,28 @@
  * 
  * Database connection manager for the Order Entry System.
  * Handles SQLite database initialization and connection pooling.
+ * Every connection handed out times its statements into Metrics (see TimedConnection).
  */
 package aim.legacy.db;
 
+import org.sqlite.SQLiteConfig;
+
 import java.sql.*;
 
 public class DB {
     
     private static Connection conn;
-    private static final String DB_FILE = "orderentry.db";
+    // Database file; -Daim.db.file points the app or the headless tools elsewhere
+    private static final String DB_FILE = System.getProperty("aim.db.file", "orderentry.db");
     
     // Returns database connection, creates new if needed
     // Note: Connection is thread-safe due to synchronization
-    public static Connection getConn() {
+    // Synchronized so startup warm-up tasks cannot open it twice
+    public static synchronized Connection getConn() {
         if (conn == null) {
             try {
                 Class.forName("org.sqlite.JDBC");
-                conn = DriverManager.getConnection("jdbc:sqlite:" + DB_FILE);
+                conn = TimedConnection.wrap(DriverManager.getConnection("jdbc:sqlite:" + DB_FILE));
                 initDB();
             } catch (Exception e) {
                 e.printStackTrace();
@@ -35,6 +40,9 @@ public class DB {
         try {
             Statement stmt = conn.createStatement();
             
+            // WAL lets background readers (report jobs) run alongside writes
+            stmt.execute("PRAGMA journal_mode=WAL");
+            
             stmt.execute("CREATE TABLE IF NOT EXISTS customer (" +
                 "cust_id INTEGER PRIMARY KEY, " +
                 "cust_name TEXT NOT NULL, " +
@@ -78,6 +86,14 @@ public class DB {
             if (rs.next() && rs.getInt(1) == 0) {
                 seedData();
             }
+            rs.close();
+            
+            // Added after seeding, which inserts by position
+            initVersions(stmt);
+            inTransaction(stmt, DB::initFullText);
+            initIndexes(stmt);
+            inTransaction(stmt, DB::initSummaries);
+            initSubmissions(stmt);
             
             stmt.close();
         } catch (SQLException e) {
@@ -85,6 +101,112 @@ public class DB {
         }
     }
     
+    // Row versions for optimistic concurrency on orders and customers
+    // Every update bumps the version and only applies if the row still has the
+    // version the editor started from (see OrderDao.save, CustomerDao.update)
+    private static void initVersions(Statement stmt) {
+        for (String table : new String[] {"orders", "customer"}) {
+            try {
+                stmt.execute("ALTER TABLE " + table + " ADD COLUMN version INTEGER NOT NULL DEFAULT 1");
+            } catch (SQLException e) {
+                // Column already exists, ignore error
+            }
+        }
+    }
+    
+    // Idempotency keys of submitted orders (see IdempotencyKeys)
+    // Keyed by the idempotency key itself; created_at drives the TTL purge, run on every start
+    private static void initSubmissions(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TABLE IF NOT EXISTS order_submission (" +
+            "idem_key TEXT PRIMARY KEY, " +
+            "order_id INTEGER NOT NULL, " +
+            "created_at INTEGER NOT NULL) WITHOUT ROWID");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_submission_created ON order_submission(created_at)");
+        IdempotencyKeys.getInstance().purgeExpired(conn);
+    }
+    
+    private interface SchemaStep {
+        void run(Statement stmt) throws SQLException;
+    }
+    
+    // Run a schema step as one write transaction
+    // Creating tables and backfilling them either both happen or neither does,
+    // so a crash or a second instance starting alongside never sees half of it
+    private static void inTransaction(Statement stmt, SchemaStep step) throws SQLException {
+        stmt.execute("BEGIN IMMEDIATE");
+        try {
+            step.run(stmt);
+            stmt.execute("COMMIT");
+        } catch (SQLException | RuntimeException e) {
+            try {
+                stmt.execute("ROLLBACK");
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw e;
+        }
+    }
+    
+    // Create FTS5 indexes over customer contact data and order line products
+    // External-content tables stay in sync through triggers on the base tables
+    // Existing databases are indexed once, when the FTS tables are first created
+    // (in the same transaction as the CREATE, see inTransaction)
+    private static void initFullText(Statement stmt) throws SQLException {
+        boolean created = false;
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'customer_fts'");
+        if (rs.next() && rs.getInt(1) == 0) {
+            created = true;
+        }
+        rs.close();
+        
+        stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS customer_fts USING fts5(" +
+            "cust_name, email, phone, address, " +
+            "content='customer', content_rowid='cust_id', tokenize='porter unicode61')");
+        
+        stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS order_line_fts USING fts5(" +
+            "prod_name, " +
+            "content='order_line', content_rowid='line_id', tokenize='porter unicode61')");
+        
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS customer_fts_ai AFTER INSERT ON customer BEGIN " +
+            "INSERT INTO customer_fts(rowid, cust_name, email, phone, address) " +
+            "VALUES (new.cust_id, new.cust_name, new.email, new.phone, new.address); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS customer_fts_ad AFTER DELETE ON customer BEGIN " +
+            "INSERT INTO customer_fts(customer_fts, rowid, cust_name, email, phone, address) " +
+            "VALUES ('delete', old.cust_id, old.cust_name, old.email, old.phone, old.address); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS customer_fts_au AFTER UPDATE ON customer BEGIN " +
+            "INSERT INTO customer_fts(customer_fts, rowid, cust_name, email, phone, address) " +
+            "VALUES ('delete', old.cust_id, old.cust_name, old.email, old.phone, old.address); " +
+            "INSERT INTO customer_fts(rowid, cust_name, email, phone, address) " +
+            "VALUES (new.cust_id, new.cust_name, new.email, new.phone, new.address); END");
+        
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS order_line_fts_ai AFTER INSERT ON order_line BEGIN " +
+            "INSERT INTO order_line_fts(rowid, prod_name) VALUES (new.line_id, new.prod_name); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS order_line_fts_ad AFTER DELETE ON order_line BEGIN " +
+            "INSERT INTO order_line_fts(order_line_fts, rowid, prod_name) VALUES ('delete', old.line_id, old.prod_name); END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS order_line_fts_au AFTER UPDATE ON order_line BEGIN " +
+            "INSERT INTO order_line_fts(order_line_fts, rowid, prod_name) VALUES ('delete', old.line_id, old.prod_name); " +
+            "INSERT INTO order_line_fts(rowid, prod_name) VALUES (new.line_id, new.prod_name); END");
+        
+        // Order lines are looked up by order_id when loading orders and when grouping matched lines
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_order_line_order ON order_line(order_id)");
+        
+        if (created) {
+            stmt.execute("INSERT INTO customer_fts(customer_fts) VALUES ('rebuild')");
+            stmt.execute("INSERT INTO order_line_fts(order_line_fts) VALUES ('rebuild')");
+        }
+    }
+    
+    // Secondary indexes backing the order filters on the orders screen
+    // SQLite appends the rowid (order_id) to every index entry, so each index
+    // also serves keyset paging on (column, order_id)
+    private static void initIndexes(Statement stmt) throws SQLException {
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_cust_date ON orders(cust_id, order_date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_date ON orders(order_date)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_cust_name ON orders(cust_name)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_orders_total ON orders(total)");
+        stmt.execute("CREATE INDEX IF NOT EXISTS idx_customer_type ON customer(customer_type)");
+    }
+    
     // Seed database with sample customer and product data
     // Also creates a few test orders to demonstrate the system
     private static void seedData() throws SQLException {
@@ -123,6 +245,163 @@ public class DB {
         stmt.close();
     }
     
+    // Customer type an order is counted under; orders of deleted customers count as STANDARD
+    private static String typeOf(String custId) {
+        return "COALESCE((SELECT customer_type FROM customer WHERE cust_id = " + custId + "), 'STANDARD')";
+    }
+    
+    // Money is summed as integer cents so incremental updates never drift
+    private static String cents(String column) {
+        return "CAST(ROUND(" + column + " * 100) AS INTEGER)";
+    }
+    
+    // Upsert one order (sign +1 adds it, -1 removes it) into a summary table
+    private static String applyOrder(String table, String keyColumn, String key, String type, String row, int sign) {
+        String s = sign < 0 ? "-" : "";
+        return "INSERT INTO " + table + " (" + keyColumn + ", customer_type, orders, subtotal_cents, discount_cents, tax_cents, total_cents) " +
+            "VALUES (" + key + ", " + type + ", " + s + "1, " + s + cents(row + ".subtotal") + ", " + s + cents(row + ".discount") + ", " +
+            s + cents(row + ".tax") + ", " + s + cents(row + ".total") + ") " +
+            "ON CONFLICT(" + keyColumn + ", customer_type) DO UPDATE SET orders = orders + excluded.orders, " +
+            "subtotal_cents = subtotal_cents + excluded.subtotal_cents, discount_cents = discount_cents + excluded.discount_cents, " +
+            "tax_cents = tax_cents + excluded.tax_cents, total_cents = total_cents + excluded.total_cents; ";
+    }
+    
+    // Upsert all of one customer's orders, grouped by day or month, under the given type
+    private static String applyCustomer(String table, String keyColumn, int keyLength, String type, String custId, int sign) {
+        String s = sign < 0 ? "-" : "";
+        return "INSERT INTO " + table + " (" + keyColumn + ", customer_type, orders, subtotal_cents, discount_cents, tax_cents, total_cents) " +
+            "SELECT COALESCE(substr(order_date, 1, " + keyLength + "), ''), " + type + ", " + s + "COUNT(*), " +
+            s + "SUM(" + cents("subtotal") + "), " + s + "SUM(" + cents("discount") + "), " +
+            s + "SUM(" + cents("tax") + "), " + s + "SUM(" + cents("total") + ") " +
+            "FROM orders WHERE cust_id = " + custId + " GROUP BY 1 " +
+            "ON CONFLICT(" + keyColumn + ", customer_type) DO UPDATE SET orders = orders + excluded.orders, " +
+            "subtotal_cents = subtotal_cents + excluded.subtotal_cents, discount_cents = discount_cents + excluded.discount_cents, " +
+            "tax_cents = tax_cents + excluded.tax_cents, total_cents = total_cents + excluded.total_cents; ";
+    }
+    
+    // Move a customer's orders from one type to another in both summary tables
+    private static String moveCustomer(String fromType, String toType, String custId) {
+        return applyCustomer("sales_daily", "day", 10, fromType, custId, -1) +
+            applyCustomer("sales_daily", "day", 10, toType, custId, 1) +
+            applyCustomer("sales_monthly", "month", 7, fromType, custId, -1) +
+            applyCustomer("sales_monthly", "month", 7, toType, custId, 1) +
+            "DELETE FROM sales_daily WHERE orders = 0; DELETE FROM sales_monthly WHERE orders = 0; ";
+    }
+    
+    // Pre-aggregated order totals per day and per month, split by customer type
+    // Triggers keep them current in the same transaction as every order write,
+    // and move a customer's orders between types when the customer's type changes
+    // Existing databases are summarized once, when the tables are first created
+    // (in the same transaction as the CREATE, see inTransaction)
+    private static void initSummaries(Statement stmt) throws SQLException {
+        boolean created = false;
+        ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE name = 'sales_daily'");
+        if (rs.next() && rs.getInt(1) == 0) {
+            created = true;
+        }
+        rs.close();
+        
+        stmt.execute("CREATE TABLE IF NOT EXISTS sales_daily (" +
+            "day TEXT NOT NULL, " +
+            "customer_type TEXT NOT NULL, " +
+            "orders INTEGER NOT NULL, " +
+            "subtotal_cents INTEGER NOT NULL, " +
+            "discount_cents INTEGER NOT NULL, " +
+            "tax_cents INTEGER NOT NULL, " +
+            "total_cents INTEGER NOT NULL, " +
+            "PRIMARY KEY (day, customer_type))");
+        stmt.execute("CREATE TABLE IF NOT EXISTS sales_monthly (" +
+            "month TEXT NOT NULL, " +
+            "customer_type TEXT NOT NULL, " +
+            "orders INTEGER NOT NULL, " +
+            "subtotal_cents INTEGER NOT NULL, " +
+            "discount_cents INTEGER NOT NULL, " +
+            "tax_cents INTEGER NOT NULL, " +
+            "total_cents INTEGER NOT NULL, " +
+            "PRIMARY KEY (month, customer_type))");
+        
+        String newDay = "COALESCE(substr(new.order_date, 1, 10), '')";
+        String newMonth = "COALESCE(substr(new.order_date, 1, 7), '')";
+        String oldDay = "COALESCE(substr(old.order_date, 1, 10), '')";
+        String oldMonth = "COALESCE(substr(old.order_date, 1, 7), '')";
+        String cleanup = "DELETE FROM sales_daily WHERE orders = 0; DELETE FROM sales_monthly WHERE orders = 0; ";
+        
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS sales_orders_ai AFTER INSERT ON orders BEGIN " +
+            applyOrder("sales_daily", "day", newDay, typeOf("new.cust_id"), "new", 1) +
+            applyOrder("sales_monthly", "month", newMonth, typeOf("new.cust_id"), "new", 1) + "END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS sales_orders_ad AFTER DELETE ON orders BEGIN " +
+            applyOrder("sales_daily", "day", oldDay, typeOf("old.cust_id"), "old", -1) +
+            applyOrder("sales_monthly", "month", oldMonth, typeOf("old.cust_id"), "old", -1) + cleanup + "END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS sales_orders_au AFTER UPDATE ON orders BEGIN " +
+            applyOrder("sales_daily", "day", oldDay, typeOf("old.cust_id"), "old", -1) +
+            applyOrder("sales_monthly", "month", oldMonth, typeOf("old.cust_id"), "old", -1) +
+            applyOrder("sales_daily", "day", newDay, typeOf("new.cust_id"), "new", 1) +
+            applyOrder("sales_monthly", "month", newMonth, typeOf("new.cust_id"), "new", 1) + cleanup + "END");
+        
+        String oldType = "COALESCE(old.customer_type, 'STANDARD')";
+        String newType = "COALESCE(new.customer_type, 'STANDARD')";
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS sales_customer_au AFTER UPDATE OF customer_type ON customer " +
+            "WHEN " + oldType + " <> " + newType + " BEGIN " + moveCustomer(oldType, newType, "new.cust_id") + "END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS sales_customer_ad AFTER DELETE ON customer " +
+            "WHEN " + oldType + " <> 'STANDARD' BEGIN " + moveCustomer(oldType, "'STANDARD'", "old.cust_id") + "END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS sales_customer_ai AFTER INSERT ON customer " +
+            "WHEN " + newType + " <> 'STANDARD' BEGIN " + moveCustomer("'STANDARD'", newType, "new.cust_id") + "END");
+        
+        if (created) {
+            String type = "COALESCE(c.customer_type, 'STANDARD')";
+            String sums = "COUNT(*), SUM(" + cents("o.subtotal") + "), SUM(" + cents("o.discount") + "), " +
+                "SUM(" + cents("o.tax") + "), SUM(" + cents("o.total") + ") ";
+            stmt.execute("INSERT INTO sales_daily SELECT COALESCE(substr(o.order_date, 1, 10), ''), " + type + ", " + sums +
+                "FROM orders o LEFT JOIN customer c ON c.cust_id = o.cust_id GROUP BY 1, 2");
+            stmt.execute("INSERT INTO sales_monthly SELECT COALESCE(substr(o.order_date, 1, 7), ''), " + type + ", " + sums +
+                "FROM orders o LEFT JOIN customer c ON c.cust_id = o.cust_id GROUP BY 1, 2");
+        }
+    }
+    
+    // Open a separate read-only connection for long-running background reads
+    // The caller owns it and must close it; the schema is created first if needed
+    public static Connection openReadConn() throws SQLException {
+        getConn();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(5000);
+        return TimedConnection.wrap(config.createConnection("jdbc:sqlite:" + DB_FILE));
+    }
+    
+    // Open a separate connection for writes outside the shared connection
+    // The caller owns it and must close it; it stays in auto-commit mode and
+    // multi-statement writes are wrapped in beginWrite/commitWrite
+    public static Connection openWriteConn() throws SQLException {
+        getConn();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(30000);
+        return TimedConnection.wrap(config.createConnection("jdbc:sqlite:" + DB_FILE));
+    }
+    
+    // Start a transaction that takes the write lock up front, so ids read at the start stay free
+    // Explicit statements rather than setAutoCommit(false): the driver begins the next
+    // transaction as soon as commit() returns, which would keep the write lock held while idle
+    public static void beginWrite(Connection writeConn) throws SQLException {
+        try (Statement stmt = writeConn.createStatement()) {
+            stmt.execute("BEGIN IMMEDIATE");
+        }
+    }
+    
+    public static void commitWrite(Connection writeConn) throws SQLException {
+        try (Statement stmt = writeConn.createStatement()) {
+            stmt.execute("COMMIT");
+        }
+    }
+    
+    // Roll back after a failed write; errors here are logged so the original failure is kept
+    public static void rollbackWrite(Connection writeConn) {
+        try (Statement stmt = writeConn.createStatement()) {
+            stmt.execute("ROLLBACK");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
     // Close database connection when application shuts down
     // Should be called in shutdown hook or exit handler
     public static void closeConn() {
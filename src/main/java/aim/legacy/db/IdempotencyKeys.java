@@ -0,0 +1,168 @@
+/**
+ * IdempotencyKeys.java
+ * 
+ * Remembers which order each idempotency key created, so a retried or
+ * re-fed submission returns the original order instead of a duplicate.
+ * 
+ * Keys live in the order_submission table, written in the same transaction
+ * as the order and purged after a TTL (aim.idempotency.ttlHours, default 72).
+ * A window of recently seen keys is kept in memory in front of the table
+ * (aim.idempotency.window, default 100000 keys), so most duplicate checks at
+ * high ingest rates never reach the database.
+ */
+package aim.legacy.db;
+
+import aim.legacy.domain.Order;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class IdempotencyKeys {
+    
+    static final long TTL_MILLIS = Long.getLong("aim.idempotency.ttlHours", 72) * 3600000L;
+    private static final int WINDOW = Integer.getInteger("aim.idempotency.window", 100000);
+    
+    // Keys per IN (...) lookup; stays well under SQLite's bound-parameter limit
+    private static final int LOOKUP_CHUNK = 500;
+    
+    private static final IdempotencyKeys instance = new IdempotencyKeys();
+    
+    private static class Entry {
+        final long orderId;
+        final long createdAt;
+        
+        Entry(long orderId, long createdAt) {
+            this.orderId = orderId;
+            this.createdAt = createdAt;
+        }
+    }
+    
+    // Insertion-ordered, so the eldest entry is the first to go when the window is full
+    private final LinkedHashMap<String, Entry> recent = new LinkedHashMap<String, Entry>() {
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > WINDOW;
+        }
+    };
+    
+    public static IdempotencyKeys getInstance() {
+        return instance;
+    }
+    
+    // Order id for a key from the in-memory window only, or null
+    // A hit is certain; a miss still has to be checked against the table
+    public synchronized Long recent(String key) {
+        Entry entry = recent.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.createdAt < System.currentTimeMillis() - TTL_MILLIS) {
+            recent.remove(key);
+            return null;
+        }
+        return entry.orderId;
+    }
+    
+    // Order ids already on record for any of the keys, memory first, then the table
+    // Race-free when called inside the write transaction that will record new keys
+    public Map<String, Long> findAll(Connection conn, Collection<String> keys) throws SQLException {
+        Map<String, Long> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String key : keys) {
+            Long orderId = recent(key);
+            if (orderId != null) {
+                found.put(key, orderId);
+            } else {
+                misses.add(key);
+            }
+        }
+        
+        long cutoff = System.currentTimeMillis() - TTL_MILLIS;
+        for (int from = 0; from < misses.size(); from += LOOKUP_CHUNK) {
+            List<String> chunk = misses.subList(from, Math.min(misses.size(), from + LOOKUP_CHUNK));
+            StringBuilder sql = new StringBuilder(
+                "SELECT idem_key, order_id, created_at FROM order_submission WHERE created_at >= ? AND idem_key IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                ps.setLong(1, cutoff);
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 2, chunk.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        found.put(rs.getString(1), rs.getLong(2));
+                        remember(rs.getString(1), rs.getLong(2), rs.getLong(3));
+                    }
+                }
+            }
+        }
+        return found;
+    }
+    
+    public Long find(Connection conn, String key) throws SQLException {
+        return findAll(conn, Collections.singletonList(key)).get(key);
+    }
+    
+    // Record keys for newly inserted orders, in the caller's transaction
+    // The in-memory window is only told once the caller has committed (see rememberOrders)
+    public void recordAll(Connection conn, Map<String, Long> orderIds, long now) throws SQLException {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT OR REPLACE INTO order_submission (idem_key, order_id, created_at) VALUES (?, ?, ?)")) {
+            for (Map.Entry<String, Long> entry : orderIds.entrySet()) {
+                ps.setString(1, entry.getKey());
+                ps.setLong(2, entry.getValue());
+                ps.setLong(3, now);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+    
+    // Add the keys of committed orders to the in-memory window
+    public void rememberOrders(Collection<Order> orders) {
+        long now = System.currentTimeMillis();
+        for (Order order : orders) {
+            if (order.getIdempotencyKey() != null && order.getId() != null) {
+                remember(order.getIdempotencyKey(), order.getId(), now);
+            }
+        }
+    }
+    
+    private synchronized void remember(String key, long orderId, long createdAt) {
+        recent.put(key, new Entry(orderId, createdAt));
+    }
+    
+    // Delete keys older than the TTL from the table and the window
+    // Returns the number of rows deleted
+    public int purgeExpired(Connection conn) throws SQLException {
+        long cutoff = System.currentTimeMillis() - TTL_MILLIS;
+        synchronized (this) {
+            Iterator<Entry> it = recent.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().createdAt < cutoff) {
+                    it.remove();
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM order_submission WHERE created_at < ?")) {
+            ps.setLong(1, cutoff);
+            return ps.executeUpdate();
+        }
+    }
+    
+    public synchronized int getWindowSize() {
+        return recent.size();
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * OrderDao.java
+ * 
+ * Reads fully hydrated orders (header plus line items) from the database.
+ * Used by the order cache to populate entries on a miss.
+ * Also saves orders from the editor and inserts batches of new orders for
+ * the headless ingest and the HTTP API.
+ */
+package aim.legacy.db;
+
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+import aim.legacy.jfr.OrderSaveEvent;
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OrderDao {
+    
+    // Same layout SQLite produces for datetime('now')
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
+    private static final OperationMetrics INSERT_BATCH = Metrics.operation("order.insertBatch");
+    private static final OperationMetrics SAVE = Metrics.operation("order.save");
+    
+    // Load an order and its lines, or null when the order does not exist
+    // Header and lines are read with two indexed lookups on order_id
+    public static Order load(Connection conn, long orderId) throws SQLException {
+        Order order = null;
+        
+        PreparedStatement ps = conn.prepareStatement(
+            "SELECT order_id, cust_id, cust_name, order_date, subtotal, discount, tax, total, version FROM orders WHERE order_id = ?");
+        ps.setLong(1, orderId);
+        ResultSet rs = ps.executeQuery();
+        if (rs.next()) {
+            order = new Order(rs.getLong("order_id"), rs.getLong("cust_id"), rs.getString("cust_name"));
+            order.setOrderDate(parseDate(rs.getString("order_date")));
+            order.setSubtotal(toDecimal(rs.getString("subtotal")));
+            order.setDiscount(toDecimal(rs.getString("discount")));
+            order.setTax(toDecimal(rs.getString("tax")));
+            order.setTotal(toDecimal(rs.getString("total")));
+            order.setVersion(rs.getLong("version"));
+        }
+        rs.close();
+        ps.close();
+        
+        if (order == null) {
+            return null;
+        }
+        
+        ps = conn.prepareStatement(
+            "SELECT line_id, prod_id, prod_name, quantity, unit_price FROM order_line WHERE order_id = ? ORDER BY line_id");
+        ps.setLong(1, orderId);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            order.addLine(new OrderLine(
+                rs.getLong("line_id"),
+                rs.getLong("prod_id"),
+                rs.getString("prod_name"),
+                rs.getInt("quantity"),
+                new BigDecimal(rs.getString("unit_price"))
+            ));
+        }
+        rs.close();
+        ps.close();
+        
+        return order;
+    }
+    
+    // Insert new orders and their lines as batched statements
+    // Ids are assigned after the current maximums and set on the orders and lines
+    // An order whose idempotency key is already on record is not inserted again:
+    // it takes the id of the order first submitted with that key
+    // Returns the orders actually inserted; after committing, pass them to
+    // IdempotencyKeys.rememberOrders
+    // Runs in the caller's transaction, which must hold the write lock (see DB.beginWrite)
+    public static List<Order> insertAll(Connection conn, List<Order> orders) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            List<Order> inserted = insert(conn, orders);
+            INSERT_BATCH.recordSince(started);
+            return inserted;
+        } catch (SQLException e) {
+            INSERT_BATCH.failedSince(started);
+            throw e;
+        }
+    }
+    
+    private static List<Order> insert(Connection conn, List<Order> orders) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        for (Order order : orders) {
+            if (order.getIdempotencyKey() != null) {
+                keys.add(order.getIdempotencyKey());
+            }
+        }
+        Map<String, Long> known = keys.isEmpty() ? new HashMap<>() : IdempotencyKeys.getInstance().findAll(conn, keys);
+        
+        long nextOrderId = maxId(conn, "SELECT MAX(order_id) FROM orders") + 1;
+        long nextLineId = maxId(conn, "SELECT MAX(line_id) FROM order_line") + 1;
+        
+        List<Order> inserted = new ArrayList<>(orders.size());
+        Map<String, Long> recorded = new HashMap<>();
+        try (PreparedStatement orderPs = conn.prepareStatement(
+                "INSERT INTO orders (order_id, cust_id, cust_name, order_date, subtotal, discount, tax, total) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement linePs = conn.prepareStatement(
+                "INSERT INTO order_line (line_id, order_id, prod_id, prod_name, quantity, unit_price) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (Order order : orders) {
+                String key = order.getIdempotencyKey();
+                if (key != null) {
+                    // Seen before, or earlier in this same batch
+                    Long original = known.containsKey(key) ? known.get(key) : recorded.get(key);
+                    if (original != null) {
+                        order.setId(original);
+                        continue;
+                    }
+                }
+                order.setId(nextOrderId++);
+                order.setVersion(1);
+                orderPs.setLong(1, order.getId());
+                orderPs.setLong(2, order.getCustomerId());
+                orderPs.setString(3, order.getCustomerName());
+                orderPs.setString(4, order.getOrderDate() == null ? null : DATE_FORMAT.format(order.getOrderDate()));
+                orderPs.setDouble(5, order.getSubtotal().doubleValue());
+                orderPs.setDouble(6, order.getDiscount().doubleValue());
+                orderPs.setDouble(7, order.getTax().doubleValue());
+                orderPs.setDouble(8, order.getTotal().doubleValue());
+                orderPs.addBatch();
+                
+                for (OrderLine line : order.getLines()) {
+                    line.setId(nextLineId++);
+                    linePs.setLong(1, line.getId());
+                    linePs.setLong(2, order.getId());
+                    linePs.setLong(3, line.getProductId());
+                    linePs.setString(4, line.getProductName());
+                    linePs.setInt(5, line.getQuantity());
+                    linePs.setDouble(6, line.getUnitPrice().doubleValue());
+                    linePs.addBatch();
+                }
+                inserted.add(order);
+                if (key != null) {
+                    recorded.put(key, order.getId());
+                }
+            }
+            if (!inserted.isEmpty()) {
+                orderPs.executeBatch();
+                linePs.executeBatch();
+            }
+        }
+        IdempotencyKeys.getInstance().recordAll(conn, recorded, System.currentTimeMillis());
+        return inserted;
+    }
+    
+    // Insert a new order (null id) or replace an existing order's header and lines
+    // Lines are re-inserted with new ids; the order date of an existing order is kept
+    // An existing order is only replaced if it still has the version it was loaded
+    // with; otherwise nothing is written and ConcurrentUpdateException is thrown
+    // Returns false when a new order's idempotency key was already used: nothing is
+    // written and the order carries the id of the order first saved with that key
+    // Runs in the caller's transaction so a failed save can be rolled back whole
+    public static boolean save(Connection conn, Order order) throws SQLException {
+        long started = System.nanoTime();
+        OrderSaveEvent event = OrderSaveEvent.start(order);
+        try {
+            boolean written = write(conn, order);
+            SAVE.recordSince(started);
+            event.saved(order, written);
+            return written;
+        } catch (SQLException e) {
+            SAVE.failedSince(started);
+            event.failed(order);
+            throw e;
+        }
+    }
+    
+    private static boolean write(Connection conn, Order order) throws SQLException {
+        if (order.getId() == null) {
+            return !insertAll(conn, Collections.singletonList(order)).isEmpty();
+        }
+        
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE orders SET cust_id = ?, cust_name = ?, subtotal = ?, discount = ?, tax = ?, total = ?, " +
+                "version = version + 1 WHERE order_id = ? AND version = ?")) {
+            ps.setLong(1, order.getCustomerId());
+            ps.setString(2, order.getCustomerName());
+            ps.setDouble(3, order.getSubtotal().doubleValue());
+            ps.setDouble(4, order.getDiscount().doubleValue());
+            ps.setDouble(5, order.getTax().doubleValue());
+            ps.setDouble(6, order.getTotal().doubleValue());
+            ps.setLong(7, order.getId());
+            ps.setLong(8, order.getVersion());
+            if (ps.executeUpdate() == 0) {
+                throw new ConcurrentUpdateException("orders", order.getId(), order.getVersion(),
+                    currentVersion(conn, "orders", "order_id", order.getId()));
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM order_line WHERE order_id = ?")) {
+            ps.setLong(1, order.getId());
+            ps.executeUpdate();
+        }
+        
+        long nextLineId = maxId(conn, "SELECT MAX(line_id) FROM order_line") + 1;
+        try (PreparedStatement linePs = conn.prepareStatement(
+                "INSERT INTO order_line (line_id, order_id, prod_id, prod_name, quantity, unit_price) VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (OrderLine line : order.getLines()) {
+                line.setId(nextLineId++);
+                linePs.setLong(1, line.getId());
+                linePs.setLong(2, order.getId());
+                linePs.setLong(3, line.getProductId());
+                linePs.setString(4, line.getProductName());
+                linePs.setInt(5, line.getQuantity());
+                linePs.setDouble(6, line.getUnitPrice().doubleValue());
+                linePs.addBatch();
+            }
+            linePs.executeBatch();
+        }
+        order.setVersion(order.getVersion() + 1);
+        return true;
+    }
+    
+    // Delete an order and its lines if it still has the version it was read with
+    // Otherwise nothing is deleted and ConcurrentUpdateException says whether it
+    // changed or was already deleted
+    // Runs in the caller's transaction so the lines cannot outlive their order
+    public static void delete(Connection conn, long orderId, long version) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM orders WHERE order_id = ? AND version = ?")) {
+            ps.setLong(1, orderId);
+            ps.setLong(2, version);
+            if (ps.executeUpdate() == 0) {
+                throw new ConcurrentUpdateException("orders", orderId, version,
+                    currentVersion(conn, "orders", "order_id", orderId));
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement("DELETE FROM order_line WHERE order_id = ?")) {
+            ps.setLong(1, orderId);
+            ps.executeUpdate();
+        }
+    }
+    
+    // Version of a row as it is now, or 0 when it does not exist
+    static long currentVersion(Connection conn, String table, String key, long id) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT version FROM " + table + " WHERE " + key + " = ?")) {
+            ps.setLong(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+    
+    private static long maxId(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+    
+    // Parse an order_date column value, tolerating legacy or missing values
+    public static LocalDateTime parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.length() > 19 ? value.substring(0, 19) : value, DATE_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+    
+    private static BigDecimal toDecimal(String value) {
+        return value == null ? null : new BigDecimal(value);
+    }
+}
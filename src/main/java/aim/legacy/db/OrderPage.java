@@ -0,0 +1,35 @@
+/**
+ * OrderPage.java
+ * 
+ * One keyset page of order headers returned by OrderQuery.
+ * lastKey is the sort key of the final row and is passed back to fetch the next page.
+ */
+package aim.legacy.db;
+
+import aim.legacy.domain.Order;
+
+import java.util.List;
+
+public class OrderPage {
+    private final List<Order> orders;
+    private final Object[] lastKey;
+    private final boolean hasMore;
+
+    public OrderPage(List<Order> orders, Object[] lastKey, boolean hasMore) {
+        this.orders = orders;
+        this.lastKey = lastKey;
+        this.hasMore = hasMore;
+    }
+
+    public List<Order> getOrders() {
+        return orders;
+    }
+
+    public Object[] getLastKey() {
+        return lastKey;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
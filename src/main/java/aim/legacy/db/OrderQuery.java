@@ -0,0 +1,305 @@
+/**
+ * OrderQuery.java
+ * 
+ * Filtered, sorted view over order headers, evaluated in SQL.
+ * Filters on customer, date range, customer type and total range are pushed
+ * into the WHERE clause so the composite indexes created by DB can be used.
+ * Pages are fetched with keyset pagination on (sort column, order_id): each
+ * page starts strictly after the last key of the previous one, so deep pages
+ * cost the same as the first and the full result is never held in memory.
+ * fetchAt() covers jumps to an arbitrary row offset when no key is known.
+ */
+package aim.legacy.db;
+
+import aim.legacy.domain.Order;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OrderQuery {
+    
+    // Sortable columns, in the same order as the orders table on screen
+    public enum SortColumn {
+        ID("order_id"),
+        CUSTOMER("cust_name"),
+        DATE("order_date"),
+        SUBTOTAL("subtotal"),
+        DISCOUNT("discount"),
+        TAX("tax"),
+        TOTAL("total");
+        
+        private final String column;
+        
+        SortColumn(String column) {
+            this.column = column;
+        }
+        
+        public String getColumn() {
+            return column;
+        }
+    }
+    
+    private static final String COLUMNS = "order_id, cust_id, cust_name, order_date, subtotal, discount, tax, total";
+    
+    private Long customerId;
+    private LocalDate fromDate;
+    private LocalDate toDate;
+    private String customerType;
+    private BigDecimal minTotal;
+    private BigDecimal maxTotal;
+    private SortColumn sortColumn = SortColumn.ID;
+    private boolean descending;
+    
+    public Long getCustomerId() {
+        return customerId;
+    }
+    
+    public void setCustomerId(Long customerId) {
+        this.customerId = customerId;
+    }
+    
+    public LocalDate getFromDate() {
+        return fromDate;
+    }
+    
+    public void setFromDate(LocalDate fromDate) {
+        this.fromDate = fromDate;
+    }
+    
+    // Inclusive: orders placed any time on this day are included
+    public LocalDate getToDate() {
+        return toDate;
+    }
+    
+    public void setToDate(LocalDate toDate) {
+        this.toDate = toDate;
+    }
+    
+    public String getCustomerType() {
+        return customerType;
+    }
+    
+    public void setCustomerType(String customerType) {
+        this.customerType = customerType;
+    }
+    
+    public BigDecimal getMinTotal() {
+        return minTotal;
+    }
+    
+    public void setMinTotal(BigDecimal minTotal) {
+        this.minTotal = minTotal;
+    }
+    
+    public BigDecimal getMaxTotal() {
+        return maxTotal;
+    }
+    
+    public void setMaxTotal(BigDecimal maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+    
+    public SortColumn getSortColumn() {
+        return sortColumn;
+    }
+    
+    public void setSortColumn(SortColumn sortColumn) {
+        this.sortColumn = sortColumn;
+    }
+    
+    public boolean isDescending() {
+        return descending;
+    }
+    
+    public void setDescending(boolean descending) {
+        this.descending = descending;
+    }
+    
+    // Independent copy, so a query handed to a background reader is never changed under it
+    public OrderQuery copy() {
+        OrderQuery q = new OrderQuery();
+        q.customerId = customerId;
+        q.fromDate = fromDate;
+        q.toDate = toDate;
+        q.customerType = customerType;
+        q.minTotal = minTotal;
+        q.maxTotal = maxTotal;
+        q.sortColumn = sortColumn;
+        q.descending = descending;
+        return q;
+    }
+    
+    // Number of orders matching the filters
+    public int count(Connection conn) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM orders" + where(params, null, false);
+        PreparedStatement ps = conn.prepareStatement(sql);
+        bind(ps, params);
+        ResultSet rs = ps.executeQuery();
+        int count = rs.next() ? rs.getInt(1) : 0;
+        rs.close();
+        ps.close();
+        return count;
+    }
+    
+    // Fetch up to limit orders following afterKey (null for the first page)
+    public OrderPage fetchAfter(Connection conn, Object[] afterKey, int limit) throws SQLException {
+        return fetch(conn, afterKey, 0, limit);
+    }
+    
+    // Fetch up to limit orders starting at a row offset
+    // Used to jump into the middle of the result when no neighbouring key is known
+    public OrderPage fetchAt(Connection conn, int offset, int limit) throws SQLException {
+        return fetch(conn, null, offset, limit);
+    }
+    
+    // The order with this id if it matches the filters, as a page of at most one row
+    public OrderPage fetchById(Connection conn, long orderId) throws SQLException {
+        return fetch(conn, null, orderId, 0, 1);
+    }
+    
+    // Position of an order within the sorted result, or -1 if it does not match
+    // Counts the matching rows that sort before it, using the same keyset predicate as paging
+    public int positionOf(Connection conn, long orderId) throws SQLException {
+        OrderPage page = fetchById(conn, orderId);
+        if (page.getOrders().isEmpty()) {
+            return -1;
+        }
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM orders" + where(params, page.getLastKey(), !descending);
+        PreparedStatement ps = conn.prepareStatement(sql);
+        bind(ps, params);
+        ResultSet rs = ps.executeQuery();
+        int position = rs.next() ? rs.getInt(1) : -1;
+        rs.close();
+        ps.close();
+        return position;
+    }
+    
+    private OrderPage fetch(Connection conn, Object[] key, int offset, int limit) throws SQLException {
+        return fetch(conn, key, null, offset, limit);
+    }
+    
+    private OrderPage fetch(Connection conn, Object[] key, Long orderId, int offset, int limit) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM orders");
+        String where = where(params, key, descending);
+        sql.append(where);
+        if (orderId != null) {
+            sql.append(where.isEmpty() ? " WHERE " : " AND ").append("order_id = ?");
+            params.add(orderId);
+        }
+        String dir = descending ? " DESC" : "";
+        sql.append(" ORDER BY ");
+        if (sortColumn != SortColumn.ID) {
+            sql.append(sortColumn.getColumn()).append(dir).append(", ");
+        }
+        sql.append("order_id").append(dir);
+        sql.append(" LIMIT ?");
+        params.add(limit + 1);
+        if (offset > 0) {
+            sql.append(" OFFSET ?");
+            params.add(offset);
+        }
+        
+        PreparedStatement ps = conn.prepareStatement(sql.toString());
+        bind(ps, params);
+        ResultSet rs = ps.executeQuery();
+        List<Order> orders = new ArrayList<>();
+        Object[] lastKey = null;
+        while (rs.next()) {
+            if (orders.size() == limit) {
+                // The extra row only tells us there is more
+                orders.add(null);
+                break;
+            }
+            Order order = new Order(rs.getLong("order_id"), rs.getLong("cust_id"), rs.getString("cust_name"));
+            order.setOrderDate(OrderDao.parseDate(rs.getString("order_date")));
+            order.setSubtotal(toDecimal(rs.getString("subtotal")));
+            order.setDiscount(toDecimal(rs.getString("discount")));
+            order.setTax(toDecimal(rs.getString("tax")));
+            order.setTotal(toDecimal(rs.getString("total")));
+            orders.add(order);
+            lastKey = new Object[]{rs.getObject(sortColumn.getColumn()), order.getId()};
+        }
+        rs.close();
+        ps.close();
+        
+        boolean more = orders.size() > limit;
+        if (more) {
+            orders.remove(orders.size() - 1);
+        }
+        return new OrderPage(orders, lastKey, more);
+    }
+    
+    // Build the WHERE clause, appending bind values to params
+    // key is the {sort value, order_id} of the row to page past, if any
+    // desc selects rows sorting below the key instead of above it; NULL sort values sort lowest
+    private String where(List<Object> params, Object[] key, boolean desc) {
+        List<String> clauses = new ArrayList<>();
+        if (customerId != null) {
+            clauses.add("cust_id = ?");
+            params.add(customerId);
+        }
+        if (fromDate != null) {
+            clauses.add("order_date >= ?");
+            params.add(fromDate.toString());
+        }
+        if (toDate != null) {
+            clauses.add("order_date < ?");
+            params.add(toDate.plusDays(1).toString());
+        }
+        if (customerType != null) {
+            clauses.add("cust_id IN (SELECT cust_id FROM customer WHERE customer_type = ?)");
+            params.add(customerType);
+        }
+        if (minTotal != null) {
+            clauses.add("total >= ?");
+            params.add(minTotal.doubleValue());
+        }
+        if (maxTotal != null) {
+            clauses.add("total <= ?");
+            params.add(maxTotal.doubleValue());
+        }
+        if (key != null) {
+            String op = desc ? "<" : ">";
+            if (sortColumn == SortColumn.ID) {
+                clauses.add("order_id " + op + " ?");
+                params.add(key[1]);
+            } else if (key[0] == null) {
+                // SQLite sorts NULL below every value, and a comparison with NULL matches nothing
+                String col = sortColumn.getColumn();
+                if (desc) {
+                    clauses.add("(" + col + " IS NULL AND order_id < ?)");
+                } else {
+                    clauses.add("((" + col + " IS NULL AND order_id > ?) OR " + col + " IS NOT NULL)");
+                }
+                params.add(key[1]);
+            } else {
+                // Row-value comparison lets SQLite seek the (column, rowid) index directly
+                String col = sortColumn.getColumn();
+                String compare = "(" + col + ", order_id) " + op + " (?, ?)";
+                clauses.add(desc ? "(" + compare + " OR " + col + " IS NULL)" : compare);
+                params.add(key[0]);
+                params.add(key[1]);
+            }
+        }
+        if (clauses.isEmpty()) {
+            return "";
+        }
+        return " WHERE " + String.join(" AND ", clauses);
+    }
+    
+    private static void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+    
+    private static BigDecimal toDecimal(String value) {
+        return value == null ? null : new BigDecimal(value);
+    }
+}
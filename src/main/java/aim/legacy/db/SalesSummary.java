@@ -0,0 +1,97 @@
+/**
+ * SalesSummary.java
+ * 
+ * Order totals for any date range from the sales_daily and sales_monthly tables.
+ * Whole months inside the range come from monthly rows and the partial months at
+ * either end from daily rows, so a query touches a few dozen pre-aggregated rows
+ * however many orders the range holds.
+ */
+package aim.legacy.db;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SalesSummary {
+    
+    private static final String COLUMNS =
+        "orders, subtotal_cents, discount_cents, tax_cents, total_cents";
+    
+    // Totals for orders dated from..to inclusive; null ends are open
+    // customerType restricts to one type, null means all types
+    public static SalesTotals totals(Connection conn, LocalDate from, LocalDate to, String customerType) throws SQLException {
+        List<String> parts = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        
+        if (from != null && to != null && from.isAfter(to)) {
+            return new SalesTotals(0, 0, 0, 0, 0);
+        }
+        
+        // Whole months covered by the range; null means unbounded on that side
+        YearMonth firstMonth = from == null ? null
+            : from.getDayOfMonth() == 1 ? YearMonth.from(from) : YearMonth.from(from).plusMonths(1);
+        YearMonth lastMonth = to == null ? null
+            : to.equals(YearMonth.from(to).atEndOfMonth()) ? YearMonth.from(to) : YearMonth.from(to).minusMonths(1);
+        
+        if (firstMonth != null && lastMonth != null && firstMonth.isAfter(lastMonth)) {
+            // Range sits inside one or two partial months
+            addDays(parts, params, from, to, customerType);
+        } else {
+            addMonths(parts, params, firstMonth, lastMonth, customerType);
+            if (from != null && from.isBefore(firstMonth.atDay(1))) {
+                addDays(parts, params, from, firstMonth.atDay(1).minusDays(1), customerType);
+            }
+            if (to != null && to.isAfter(lastMonth.atEndOfMonth())) {
+                addDays(parts, params, lastMonth.atEndOfMonth().plusDays(1), to, customerType);
+            }
+        }
+        
+        String sql = "SELECT SUM(orders), SUM(subtotal_cents), SUM(discount_cents), SUM(tax_cents), SUM(total_cents) FROM (" +
+            String.join(" UNION ALL ", parts) + ")";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return new SalesTotals(rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5));
+            }
+        }
+    }
+    
+    // Totals across every order
+    public static SalesTotals totals(Connection conn) throws SQLException {
+        return totals(conn, null, null, null);
+    }
+    
+    private static void addMonths(List<String> parts, List<Object> params, YearMonth first, YearMonth last, String customerType) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM sales_monthly WHERE 1 = 1");
+        if (first != null) {
+            sql.append(" AND month >= ?");
+            params.add(first.toString());
+        }
+        if (last != null) {
+            sql.append(" AND month <= ?");
+            params.add(last.toString());
+        }
+        addType(sql, params, customerType);
+        parts.add(sql.toString());
+    }
+    
+    private static void addDays(List<String> parts, List<Object> params, LocalDate from, LocalDate to, String customerType) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM sales_daily WHERE day >= ? AND day <= ?");
+        params.add(from.toString());
+        params.add(to.toString());
+        addType(sql, params, customerType);
+        parts.add(sql.toString());
+    }
+    
+    private static void addType(StringBuilder sql, List<Object> params, String customerType) {
+        if (customerType != null) {
+            sql.append(" AND customer_type = ?");
+            params.add(customerType);
+        }
+    }
+}
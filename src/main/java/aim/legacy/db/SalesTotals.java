@@ -0,0 +1,50 @@
+/**
+ * SalesTotals.java
+ * 
+ * Order count and money totals for a date range, read from the summary tables.
+ */
+package aim.legacy.db;
+
+import java.math.BigDecimal;
+
+public class SalesTotals {
+    private final long orders;
+    private final BigDecimal subtotal;
+    private final BigDecimal discount;
+    private final BigDecimal tax;
+    private final BigDecimal total;
+
+    public SalesTotals(long orders, long subtotalCents, long discountCents, long taxCents, long totalCents) {
+        this.orders = orders;
+        this.subtotal = BigDecimal.valueOf(subtotalCents, 2);
+        this.discount = BigDecimal.valueOf(discountCents, 2);
+        this.tax = BigDecimal.valueOf(taxCents, 2);
+        this.total = BigDecimal.valueOf(totalCents, 2);
+    }
+
+    public long getOrders() {
+        return orders;
+    }
+
+    public BigDecimal getSubtotal() {
+        return subtotal;
+    }
+
+    public BigDecimal getDiscount() {
+        return discount;
+    }
+
+    public BigDecimal getTax() {
+        return tax;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "SalesTotals{orders=" + orders + ", subtotal=" + subtotal + ", discount=" + discount +
+            ", tax=" + tax + ", total=" + total + "}";
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * SlowQueryLog.java
+ * 
+ * Logs statements that take longer than aim.sql.slowMillis (default 100),
+ * counting both execution and the time spent reading their rows.
+ * Each entry shows the normalized SQL, the bind values and the row count.
+ * The first slow run of a statement shape also captures SQLite's
+ * EXPLAIN QUERY PLAN, which shows full scans (SCAN) against index lookups
+ * (SEARCH ... USING INDEX).
+ * 
+ * Bind values are redacted: numbers and nulls are shown, while text and
+ * other values are reduced to their type and length.
+ * -Daim.sql.logBindValues=true shows them in full.
+ * 
+ * Totals for every statement shape are kept as well, so the statements
+ * costing the most time overall can be listed. The list is available over
+ * JMX (aim.legacy:type=SlowQueryLog) and is printed at exit when anything
+ * was slow.
+ */
+package aim.legacy.db;
+
+import aim.legacy.metrics.Metrics;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+public class SlowQueryLog implements SlowQueryLogMXBean {
+    
+    // Distinct SQL strings and shapes tracked; beyond this, statements are
+    // still timed and logged but not added to the totals
+    private static final int MAX_TRACKED = 2000;
+    private static final int TOP_N = Integer.getInteger("aim.sql.topN", 10);
+    private static final boolean SHOW_BIND_VALUES = Boolean.getBoolean("aim.sql.logBindValues");
+    
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+    
+    private static final SlowQueryLog instance = create();
+    
+    private final ConcurrentHashMap<String, SqlShape> bySql = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SqlShape> byShape = new ConcurrentHashMap<>();
+    private final LongAdder slowCount = new LongAdder();
+    private volatile long thresholdNanos;
+    
+    SlowQueryLog(long thresholdMillis) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+    
+    // Registered with the platform MBean server; prints the top statements at exit
+    private static SlowQueryLog create() {
+        SlowQueryLog log = new SlowQueryLog(Long.getLong("aim.sql.slowMillis", 100));
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                log, new ObjectName("aim.legacy:type=SlowQueryLog"));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (log.getSlowCount() > 0) {
+                log.printSummary();
+            }
+        }, "slow-query-summary"));
+        return log;
+    }
+    
+    public static SlowQueryLog getInstance() {
+        return instance;
+    }
+    
+    // Shape of a statement, worked out once per distinct SQL string
+    SqlShape shapeFor(String sql) {
+        if (sql == null) {
+            sql = "";
+        }
+        SqlShape shape = bySql.get(sql);
+        if (shape != null) {
+            return shape;
+        }
+        String normalized = normalize(sql);
+        shape = byShape.get(normalized);
+        if (shape == null) {
+            shape = new SqlShape(normalized, Metrics.operation(TimedConnection.operationName(sql)));
+            if (byShape.size() < MAX_TRACKED) {
+                SqlShape existing = byShape.putIfAbsent(normalized, shape);
+                if (existing != null) {
+                    shape = existing;
+                }
+            }
+        }
+        if (bySql.size() < MAX_TRACKED) {
+            bySql.put(sql, shape);
+        }
+        return shape;
+    }
+    
+    // A statement finished: add it to its shape's totals and log it if slow
+    // rows is -1 when the driver does not say; conn is the unwrapped connection
+    void finished(SqlShape shape, Connection conn, String sql, Object[] binds, long nanos, long rows) {
+        shape.record(nanos, rows);
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        slowCount.increment();
+        shape.slowCount.increment();
+        
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "[slow-sql] %.1f ms", nanos / 1e6));
+        out.append(rows < 0 ? "" : " rows=" + rows).append(" [").append(shape.metrics.getName()).append("] ");
+        out.append(shape.sql).append(System.lineSeparator());
+        if (binds != null && binds.length > 0) {
+            out.append("  binds: ").append(describeBinds(binds)).append(System.lineSeparator());
+        }
+        // Only the first slow run of a shape pays for the plan
+        if (shape.planTaken.compareAndSet(false, true)) {
+            shape.plan = explain(conn, sql);
+            if (shape.plan != null) {
+                out.append("  plan:").append(System.lineSeparator()).append(shape.plan);
+            }
+        }
+        System.out.print(out);
+    }
+    
+    // SQLite's EXPLAIN QUERY PLAN as an indented tree, or null for statements without one
+    // Parameters are left unbound; the plan does not depend on their values
+    static String explain(Connection conn, String sql) {
+        String verb = sql.trim().split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+        if (!verb.equals("select") && !verb.equals("with") && !verb.equals("insert") && !verb.equals("replace")
+                && !verb.equals("update") && !verb.equals("delete")) {
+            return null;
+        }
+        StringBuilder plan = new StringBuilder();
+        Map<Integer, Integer> depth = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                Integer parentDepth = depth.get(rs.getInt(2));
+                int level = parentDepth == null ? 0 : parentDepth + 1;
+                depth.put(id, level);
+                plan.append("    ");
+                for (int i = 0; i < level; i++) {
+                    plan.append("  ");
+                }
+                plan.append(rs.getString(4)).append(System.lineSeparator());
+            }
+        } catch (SQLException e) {
+            return "    (no plan: " + e.getMessage() + ")" + System.lineSeparator();
+        }
+        return plan.toString();
+    }
+    
+    // Literals become ?, whitespace is collapsed and lists of parameters shortened
+    static String normalize(String sql) {
+        String s = STRING_LITERAL.matcher(sql).replaceAll("?");
+        s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+        s = WHITESPACE.matcher(s).replaceAll(" ").trim();
+        return PARAMETER_LIST.matcher(s).replaceAll("?, ...");
+    }
+    
+    // "[1]=42 [2]=<text 12> [3]=null"; index 0 is unused, as JDBC parameters start at 1
+    static String describeBinds(Object[] binds) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 1; i < binds.length; i++) {
+            if (out.length() > 0) {
+                out.append(' ');
+            }
+            out.append('[').append(i).append("]=").append(describe(binds[i]));
+        }
+        return out.toString();
+    }
+    
+    private static String describe(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value);
+        }
+        if (value instanceof String) {
+            return SHOW_BIND_VALUES ? "'" + value + "'" : "<text " + ((String) value).length() + ">";
+        }
+        if (value instanceof byte[]) {
+            return "<bytes " + ((byte[]) value).length + ">";
+        }
+        return SHOW_BIND_VALUES ? String.valueOf(value) : "<" + value.getClass().getSimpleName() + ">";
+    }
+    
+    public void printSummary() {
+        System.out.println("[slow-sql] top statements by total time:");
+        for (String line : getTopStatements()) {
+            System.out.println("[slow-sql]   " + line);
+        }
+    }
+    
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+    
+    public void setThresholdMillis(long millis) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+    
+    public long getSlowCount() {
+        return slowCount.sum();
+    }
+    
+    public int getShapeCount() {
+        return byShape.size();
+    }
+    
+    public String[] getTopStatements() {
+        List<SqlShape> shapes = new ArrayList<>(byShape.values());
+        shapes.removeIf(shape -> shape.count.sum() == 0);
+        shapes.sort((a, b) -> Long.compare(b.totalNanos.sum(), a.totalNanos.sum()));
+        List<String> lines = new ArrayList<>();
+        for (SqlShape shape : shapes.subList(0, Math.min(TOP_N, shapes.size()))) {
+            long n = shape.count.sum();
+            long total = shape.totalNanos.sum();
+            lines.add(String.format(Locale.ROOT, "total=%.1f ms n=%d avg=%.3f ms max=%.1f ms rows=%d slow=%d  %s",
+                total / 1e6, n, total / 1e6 / n, shape.maxNanos.get() / 1e6, shape.rows.sum(),
+                shape.slowCount.sum(), shape.sql));
+        }
+        return lines.toArray(new String[0]);
+    }
+    
+    // Clear the totals; captured plans are kept
+    public void reset() {
+        for (SqlShape shape : byShape.values()) {
+            shape.reset();
+        }
+        slowCount.reset();
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * SlowQueryLogMXBean.java
+ * 
+ * JMX view of the slow-query log and the per-statement totals behind it.
+ * Visible in JConsole/VisualVM under aim.legacy:type=SlowQueryLog.
+ */
+package aim.legacy.db;
+
+public interface SlowQueryLogMXBean {
+    
+    long getThresholdMillis();
+    
+    void setThresholdMillis(long millis);
+    
+    long getSlowCount();
+    
+    int getShapeCount();
+    
+    // One line per statement shape, highest total time first
+    String[] getTopStatements();
+    
+    void reset();
+}
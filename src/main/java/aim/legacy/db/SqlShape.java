@@ -0,0 +1,55 @@
+/**
+ * SqlShape.java
+ * 
+ * Totals for one statement shape: the SQL with its literals replaced by ?,
+ * so the same query built with different values is counted once.
+ * Also holds the shape's EXPLAIN QUERY PLAN once it has been captured.
+ */
+package aim.legacy.db;
+
+import aim.legacy.metrics.OperationMetrics;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+class SqlShape {
+    
+    final String sql;
+    final OperationMetrics metrics;
+    
+    final LongAdder count = new LongAdder();
+    final LongAdder totalNanos = new LongAdder();
+    final LongAdder rows = new LongAdder();
+    final LongAdder slowCount = new LongAdder();
+    final AtomicLong maxNanos = new AtomicLong();
+    
+    // Set by the first slow execution, which then captures the plan
+    final AtomicBoolean planTaken = new AtomicBoolean();
+    volatile String plan;
+    
+    SqlShape(String sql, OperationMetrics metrics) {
+        this.sql = sql;
+        this.metrics = metrics;
+    }
+    
+    void record(long nanos, long rowCount) {
+        count.increment();
+        totalNanos.add(nanos);
+        if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+        long seen;
+        while (nanos > (seen = maxNanos.get()) && !maxNanos.compareAndSet(seen, nanos)) {
+            // retry until our value is stored or a larger one is
+        }
+    }
+    
+    void reset() {
+        count.reset();
+        totalNanos.reset();
+        rows.reset();
+        slowCount.reset();
+        maxNanos.set(0);
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * TimedConnection.java
+ * 
+ * Wraps a JDBC connection so every statement it runs is timed into Metrics.
+ * Statements are named by verb and first table, e.g. sql.select.orders or
+ * sql.insert.order_line, which keeps the number of metrics small however many
+ * distinct statements the screens build. Metrics time execution only, not
+ * the rows read afterwards from a ResultSet.
+ * 
+ * DB hands out wrapped connections, so queries from the screens, the DAOs
+ * and the headless tools are all covered without changing their code.
+ * 
+ * Each run is also reported to SlowQueryLog with its bind values and row
+ * count. For queries that is the time to execute plus the time spent in
+ * ResultSet.next(), reported when the ResultSet (or its statement) is closed.
+ * Runs are recorded as SqlStatementEvents when Flight Recorder is on.
+ * -Daim.metrics.sql=false hands out the driver's connections unwrapped.
+ */
+package aim.legacy.db;
+
+import aim.legacy.jfr.SqlStatementEvent;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Locale;
+
+class TimedConnection implements InvocationHandler {
+    
+    private static final boolean ENABLED = !"false".equals(System.getProperty("aim.metrics.sql"));
+    
+    private final Connection conn;
+    private Connection proxy;
+    
+    private TimedConnection(Connection conn) {
+        this.conn = conn;
+    }
+    
+    static Connection wrap(Connection conn) {
+        if (!ENABLED) {
+            return conn;
+        }
+        TimedConnection handler = new TimedConnection(conn);
+        handler.proxy = (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, handler);
+        return handler.proxy;
+    }
+    
+    public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        Object result = call(conn, method, args);
+        String name = method.getName();
+        if (name.equals("createStatement")) {
+            return wrapStatement((Statement) result, Statement.class, null);
+        }
+        if (name.equals("prepareStatement")) {
+            return wrapStatement((Statement) result, PreparedStatement.class, (String) args[0]);
+        }
+        return result;
+    }
+    
+    private <T extends Statement> T wrapStatement(Statement stmt, Class<T> type, String preparedSql) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+            new TimedStatement(stmt, preparedSql)));
+    }
+    
+    // Times execute* calls; a plain Statement is named by the SQL passed in,
+    // a PreparedStatement by the SQL it was prepared with
+    private class TimedStatement implements InvocationHandler {
+        private final Statement stmt;
+        private final String preparedSql;
+        private String batchSql;
+        private Object[] binds;
+        private TimedResultSet open;
+        
+        TimedStatement(Statement stmt, String preparedSql) {
+            this.stmt = stmt;
+            this.preparedSql = preparedSql;
+        }
+        
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                binds = null;
+            } else if (name.equals("getConnection")) {
+                return proxy;
+            } else if (name.equals("addBatch") && args != null && args.length == 1) {
+                batchSql = (String) args[0];
+            } else if (name.equals("close")) {
+                finishOpen();
+            }
+            if (!name.startsWith("execute")) {
+                return call(stmt, method, args);
+            }
+            
+            finishOpen();
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+                : preparedSql != null ? preparedSql : batchSql;
+            SqlShape shape = SlowQueryLog.getInstance().shapeFor(sql);
+            long started = System.nanoTime();
+            SqlStatementEvent event = SqlStatementEvent.start();
+            Object result;
+            try {
+                result = call(stmt, method, args);
+            } catch (Throwable e) {
+                shape.metrics.failedSince(started);
+                throw e;
+            }
+            long nanos = System.nanoTime() - started;
+            shape.metrics.record(nanos);
+            if (!event.executed()) {
+                event = null;
+            }
+            
+            if (result instanceof ResultSet) {
+                // Reported to the slow-query log once its rows have been read
+                open = new TimedResultSet((ResultSet) result, shape, sql, snapshotBinds(), nanos, event);
+                return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class}, open);
+            }
+            long rows = rowsOf(result);
+            SlowQueryLog.getInstance().finished(shape, conn, sql, snapshotBinds(), nanos, rows);
+            if (event != null) {
+                event.finish(shape.metrics.getName(), shape.sql, rows, 0);
+            }
+            return result;
+        }
+        
+        private void bind(int index, Object value) {
+            if (binds == null || binds.length <= index) {
+                binds = Arrays.copyOf(binds == null ? new Object[0] : binds, Math.max(index + 1, 8));
+            }
+            binds[index] = value;
+        }
+        
+        // Binds up to the highest parameter set, copied as the statement may be reused
+        private Object[] snapshotBinds() {
+            if (binds == null) {
+                return null;
+            }
+            int last = binds.length - 1;
+            while (last > 0 && binds[last] == null) {
+                last--;
+            }
+            return Arrays.copyOf(binds, last + 1);
+        }
+        
+        private void finishOpen() {
+            if (open != null) {
+                open.finish();
+                open = null;
+            }
+        }
+    }
+    
+    // Counts rows and the time spent fetching them
+    private class TimedResultSet implements InvocationHandler {
+        private final ResultSet rs;
+        private final SqlShape shape;
+        private final String sql;
+        private final Object[] binds;
+        private final long executeNanos;
+        private final SqlStatementEvent event;
+        private long nanos;
+        private long rows;
+        private boolean finished;
+        
+        // event is null when the execution is not being recorded
+        TimedResultSet(ResultSet rs, SqlShape shape, String sql, Object[] binds, long executeNanos, SqlStatementEvent event) {
+            this.rs = rs;
+            this.shape = shape;
+            this.sql = sql;
+            this.binds = binds;
+            this.executeNanos = executeNanos;
+            this.event = event;
+            this.nanos = executeNanos;
+        }
+        
+        public Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long started = System.nanoTime();
+                Object more = call(rs, method, args);
+                nanos += System.nanoTime() - started;
+                if (Boolean.TRUE.equals(more)) {
+                    rows++;
+                }
+                return more;
+            }
+            if (name.equals("close")) {
+                finish();
+            }
+            return call(rs, method, args);
+        }
+        
+        void finish() {
+            if (!finished) {
+                finished = true;
+                SlowQueryLog.getInstance().finished(shape, conn, sql, binds, nanos, rows);
+                if (event != null) {
+                    event.finish(shape.metrics.getName(), shape.sql, rows, nanos - executeNanos);
+                }
+            }
+        }
+    }
+    
+    // Rows changed by an update or batch, or -1 when the result does not say
+    private static long rowsOf(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        if (result instanceof int[]) {
+            long rows = 0;
+            for (int n : (int[]) result) {
+                rows += Math.max(0, n);
+            }
+            return rows;
+        }
+        return -1;
+    }
+    
+    // Invoke on the real object, rethrowing what it threw rather than the reflection wrapper
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    // "sql." + verb + "." + first table, or just "sql." + verb when there is no plain table name
+    static String operationName(String sql) {
+        String[] words = sql.trim().toLowerCase(Locale.ROOT).split("[\\s(),;]+");
+        if (words.length == 0 || words[0].isEmpty()) {
+            return "sql.other";
+        }
+        String verb = words[0];
+        String after;
+        switch (verb) {
+            case "select":
+            case "with":
+            case "delete":
+                after = "from";
+                break;
+            case "insert":
+            case "replace":
+                after = "into";
+                break;
+            case "update":
+                after = "update";
+                break;
+            default:
+                return "sql." + verb;
+        }
+        for (int i = 0; i < words.length - 1; i++) {
+            if (words[i].equals(after)) {
+                String table = words[i + 1].replace("\"", "");
+                if (table.matches("[a-z_][a-z0-9_]*") && !table.equals("select")) {
+                    return "sql." + verb + "." + table;
+                }
+                break;
+            }
+        }
+        return "sql." + verb;
+    }
+}
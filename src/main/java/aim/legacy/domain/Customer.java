@@ -15,6 +15,7 @@ public class Customer {
     private String phone;
     private String address;
     private String customerType; // STANDARD, PREMIUM, VIP
+    private long version; // row version read from the database, 0 if never saved
 
     public Customer() {
     }
@@ -84,6 +85,14 @@ public class Customer {
         this.customerType = customerType;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
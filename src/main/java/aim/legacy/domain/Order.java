@@ -22,6 +22,8 @@ public class Order {
     private BigDecimal discount;
     private BigDecimal tax;
     private BigDecimal total;
+    private long version; // row version read from the database, 0 if never saved
+    private String idempotencyKey; // submission key of a new order, kept in order_submission
 
     public Order() {
         this.lines = new ArrayList<>();
@@ -115,6 +117,22 @@ public class Order {
         this.total = total;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,121 @@
+/**
+ * OrderMerge.java
+ * 
+ * Three-way merge of two concurrent edits of an order.
+ * Given the order as both users loaded it (base), my edit and the version
+ * another user saved (theirs), each line and the customer take whichever side
+ * changed them. When both sides changed the same thing differently my version
+ * is kept and the clash is reported so the user can review it before saving.
+ */
+package aim.legacy.domain;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OrderMerge {
+
+    public static class Result {
+        private final Order order;
+        private final List<String> conflicts;
+
+        Result(Order order, List<String> conflicts) {
+            this.order = order;
+            this.conflicts = conflicts;
+        }
+
+        // Merged order carrying theirs' id and version, not yet priced
+        public Order getOrder() {
+            return order;
+        }
+
+        // One description per line or field both sides changed differently
+        public List<String> getConflicts() {
+            return conflicts;
+        }
+
+        public boolean hasConflicts() {
+            return !conflicts.isEmpty();
+        }
+    }
+
+    public static Result merge(Order base, Order mine, Order theirs) {
+        List<String> conflicts = new ArrayList<>();
+        Order merged = new Order(theirs.getId(), theirs.getCustomerId(), theirs.getCustomerName());
+        merged.setOrderDate(theirs.getOrderDate());
+        merged.setVersion(theirs.getVersion());
+
+        boolean mineChangedCustomer = !same(base.getCustomerId(), mine.getCustomerId());
+        boolean theirsChangedCustomer = !same(base.getCustomerId(), theirs.getCustomerId());
+        if (mineChangedCustomer) {
+            merged.setCustomerId(mine.getCustomerId());
+            merged.setCustomerName(mine.getCustomerName());
+            if (theirsChangedCustomer && !same(mine.getCustomerId(), theirs.getCustomerId())) {
+                conflicts.add("Customer: yours " + mine.getCustomerName() + ", theirs " + theirs.getCustomerName());
+            }
+        }
+
+        Map<String, OrderLine> baseLines = byKey(base);
+        Map<String, OrderLine> myLines = byKey(mine);
+        Map<String, OrderLine> theirLines = byKey(theirs);
+
+        // Their line order first, then lines only I added
+        List<String> keys = new ArrayList<>(theirLines.keySet());
+        for (String key : myLines.keySet()) {
+            if (!theirLines.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+
+        for (String key : keys) {
+            OrderLine b = baseLines.get(key);
+            OrderLine m = myLines.get(key);
+            OrderLine t = theirLines.get(key);
+            OrderLine take;
+            if (same(m, b)) {
+                take = t;
+            } else if (same(t, b) || same(m, t)) {
+                take = m;
+            } else {
+                take = m;
+                conflicts.add(name(m, t) + ": yours " + describe(m) + ", theirs " + describe(t));
+            }
+            if (take != null) {
+                merged.addLine(new OrderLine(null, take.getProductId(), take.getProductName(), take.getQuantity(), take.getUnitPrice()));
+            }
+        }
+        return new Result(merged, conflicts);
+    }
+
+    // Lines keyed by product, numbered when an order has the same product more than once
+    private static Map<String, OrderLine> byKey(Order order) {
+        Map<String, OrderLine> lines = new LinkedHashMap<>();
+        Map<Long, Integer> seen = new HashMap<>();
+        for (OrderLine line : order.getLines()) {
+            int n = seen.merge(line.getProductId(), 1, Integer::sum);
+            lines.put(line.getProductId() + "#" + n, line);
+        }
+        return lines;
+    }
+
+    private static boolean same(Long a, Long b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean same(OrderLine a, OrderLine b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getQuantity() == b.getQuantity() && a.getUnitPrice().compareTo(b.getUnitPrice()) == 0;
+    }
+
+    private static String name(OrderLine a, OrderLine b) {
+        return a != null ? a.getProductName() : b.getProductName();
+    }
+
+    private static String describe(OrderLine line) {
+        return line == null ? "removed" : line.getQuantity() + " @ $" + line.getUnitPrice();
+    }
+}
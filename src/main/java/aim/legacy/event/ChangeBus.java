@@ -0,0 +1,56 @@
+/**
+ * ChangeBus.java
+ * 
+ * In-process bus for committed data changes.
+ * Every write path publishes the table, kind and id of the row it changed.
+ * Each table carries a monotonically increasing data version, so a screen can
+ * tell whether anything changed since it last looked without querying the
+ * database, and listeners get the row-level deltas to apply.
+ */
+package aim.legacy.event;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChangeBus {
+    
+    private static final Map<ChangeEvent.Table, AtomicLong> versions = new EnumMap<>(ChangeEvent.Table.class);
+    private static final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    
+    static {
+        for (ChangeEvent.Table table : ChangeEvent.Table.values()) {
+            versions.put(table, new AtomicLong());
+        }
+    }
+    
+    // Record a committed change and notify listeners
+    // Call only after the write has succeeded
+    public static ChangeEvent publish(ChangeEvent.Table table, ChangeEvent.Type type, long id) {
+        long version = versions.get(table).incrementAndGet();
+        ChangeEvent event = new ChangeEvent(table, type, id, version);
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return event;
+    }
+    
+    // Current data version of a table; starts at 0 and only goes up
+    public static long version(ChangeEvent.Table table) {
+        return versions.get(table).get();
+    }
+    
+    public static void addListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    public static void removeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+}
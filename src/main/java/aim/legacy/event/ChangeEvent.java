@@ -0,0 +1,48 @@
+/**
+ * ChangeEvent.java
+ * 
+ * A single committed row change: which table, what kind of change, which row,
+ * and the table's data version after the change.
+ */
+package aim.legacy.event;
+
+public class ChangeEvent {
+    
+    public enum Table { CUSTOMER, ORDERS, PRODUCT }
+    
+    public enum Type { INSERT, UPDATE, DELETE }
+    
+    private final Table table;
+    private final Type type;
+    private final long id;
+    private final long version;
+
+    public ChangeEvent(Table table, Type type, long id, long version) {
+        this.table = table;
+        this.type = type;
+        this.id = id;
+        this.version = version;
+    }
+
+    public Table getTable() {
+        return table;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // Primary key of the changed row (cust_id, order_id or prod_id)
+    public long getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return table + " " + type + " #" + id + " (v" + version + ")";
+    }
+}
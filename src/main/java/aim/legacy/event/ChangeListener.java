@@ -0,0 +1,12 @@
+/**
+ * ChangeListener.java
+ * 
+ * Receives row changes published on the ChangeBus.
+ * Called on the publishing thread; UI listeners hop to the EDT themselves.
+ */
+package aim.legacy.event;
+
+public interface ChangeListener {
+    
+    void onChange(ChangeEvent event);
+}
@@ -0,0 +1,122 @@
+/**
+ * IngestCli.java
+ * 
+ * Headless bulk import of order files (EDI exports, web-shop feeds).
+ * Usage: IngestCli [--batch N] [--pricers N] [--queue N] [--report SECONDS] [--rejects FILE] FILE|DIR...
+ * Directories are read in file name order. The database is orderentry.db
+ * unless -Daim.db.file points elsewhere.
+ * Exit status: 0 all orders loaded, 3 loaded with rejects, 1 failed, 2 usage.
+ */
+package aim.legacy.ingest;
+
+import aim.legacy.db.DB;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class IngestCli {
+    
+    private static final String USAGE =
+        "Usage: IngestCli [--batch N] [--pricers N] [--queue N] [--report SECONDS] [--rejects FILE] FILE|DIR...";
+    
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+    
+    // Parse arguments and run the pipeline; returns the exit status
+    public static int run(String[] args) {
+        int batch = 500;
+        int pricers = Runtime.getRuntime().availableProcessors();
+        int queue = 1000;
+        int reportSeconds = 5;
+        File rejectsFile = null;
+        List<File> files = new ArrayList<>();
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--batch")) {
+                    batch = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--pricers")) {
+                    pricers = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--queue")) {
+                    queue = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--report")) {
+                    reportSeconds = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--rejects")) {
+                    rejectsFile = new File(args[++i]);
+                } else if (arg.startsWith("--")) {
+                    System.err.println("Unknown option " + arg);
+                    System.err.println(USAGE);
+                    return 2;
+                } else {
+                    addInput(new File(arg), files);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (files.isEmpty()) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        for (File file : files) {
+            if (!file.isFile()) {
+                System.err.println("Not a file: " + file);
+                return 2;
+            }
+        }
+        
+        PrintWriter rejectLog = null;
+        try {
+            if (rejectsFile != null) {
+                rejectLog = new PrintWriter(new OutputStreamWriter(new FileOutputStream(rejectsFile), StandardCharsets.UTF_8));
+            }
+            // Creates the schema on a fresh database file
+            DB.getConn();
+            
+            IngestPipeline pipeline = new IngestPipeline(batch, pricers, queue, rejectLog);
+            long started = System.currentTimeMillis();
+            System.out.println("[ingest] " + files.size() + " file(s): batch " + batch
+                + ", " + pricers + " pricer(s), queue " + queue);
+            try {
+                pipeline.run(files, reportSeconds);
+            } finally {
+                pipeline.printStats();
+            }
+            long elapsed = System.currentTimeMillis() - started;
+            long written = pipeline.getWriteStats().getItems();
+            System.out.println("[ingest] " + written + " orders written, " + pipeline.getDuplicates() + " duplicates skipped, "
+                + pipeline.getRejected() + " rejected in " + elapsed + " ms (" + (written * 1000 / Math.max(1, elapsed)) + " orders/s)");
+            return pipeline.getRejected() > 0 ? 3 : 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("[ingest] failed: " + e.getMessage());
+            return 1;
+        } finally {
+            if (rejectLog != null) {
+                rejectLog.close();
+            }
+            DB.closeConn();
+        }
+    }
+    
+    private static void addInput(File input, List<File> files) {
+        if (input.isDirectory()) {
+            File[] children = input.listFiles(File::isFile);
+            if (children != null) {
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            }
+        } else {
+            files.add(input);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/**
+ * IngestPipeline.java
+ * 
+ * Bounded producer/consumer pipeline that loads order files into the database.
+ * read:  one thread parses files into OrderRecords
+ * price: a pool validates each order against customers and products and prices
+ *        it with OrderPricing
+ * write: one thread inserts priced orders in batches, one transaction per batch
+ * Orders whose reference was already loaded are counted as duplicates and
+ * skipped: by the pricers when the key is in IdempotencyKeys' recent window,
+ * otherwise by the writer inside the insert transaction.
+ * Stages are joined by bounded queues, so a slow stage holds back the ones
+ * before it instead of letting orders pile up in memory.
+ */
+package aim.legacy.ingest;
+
+import aim.legacy.db.DB;
+import aim.legacy.db.IdempotencyKeys;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+import aim.legacy.domain.Product;
+import aim.legacy.pricing.OrderPricing;
+import aim.legacy.pricing.PriceBreakdown;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IngestPipeline {
+    
+    // End-of-input markers passed down the queues
+    private static final OrderRecord END_RECORD = new OrderRecord("", "", 0, null);
+    private static final Order END_ORDER = new Order();
+    
+    private final int batchSize;
+    private final int pricers;
+    private final int queueCapacity;
+    private final PrintWriter rejectLog;
+    
+    private final StageStats readStats = new StageStats("read", 1);
+    private final StageStats priceStats;
+    private final StageStats writeStats = new StageStats("write", 1);
+    private final AtomicLong duplicates = new AtomicLong();
+    
+    // Reference data loaded once before the pipeline starts
+    private final Map<Long, String> customerNames = new HashMap<>();
+    private final Map<Long, String> customerTypes = new HashMap<>();
+    private final Map<Long, Product> products = new HashMap<>();
+    
+    private BlockingQueue<OrderRecord> parsed;
+    private BlockingQueue<Order> priced;
+    private volatile boolean aborted;
+    private volatile Throwable readFailure;
+    
+    public IngestPipeline(int batchSize, int pricers, int queueCapacity, PrintWriter rejectLog) {
+        this.batchSize = Math.max(1, batchSize);
+        this.pricers = Math.max(1, pricers);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.rejectLog = rejectLog;
+        this.priceStats = new StageStats("price", this.pricers);
+    }
+    
+    public StageStats getReadStats() {
+        return readStats;
+    }
+    
+    public StageStats getPriceStats() {
+        return priceStats;
+    }
+    
+    public StageStats getWriteStats() {
+        return writeStats;
+    }
+    
+    // Orders skipped because their reference had already been loaded
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+    
+    public long getRejected() {
+        return readStats.getRejected() + priceStats.getRejected() + writeStats.getRejected();
+    }
+    
+    // Ingest all files; returns once every accepted order is committed
+    // A database failure rolls back the current batch and stops the pipeline
+    public void run(List<File> files, int reportSeconds) throws Exception {
+        loadReferenceData();
+        parsed = new ArrayBlockingQueue<>(queueCapacity);
+        priced = new ArrayBlockingQueue<>(queueCapacity);
+        
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ingest-report");
+            t.setDaemon(true);
+            return t;
+        });
+        if (reportSeconds > 0) {
+            reporter.scheduleAtFixedRate(this::printStats, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+        }
+        
+        Thread reader = new Thread(() -> readAll(files), "ingest-read");
+        reader.setDaemon(true);
+        reader.start();
+        List<Thread> pricerThreads = new ArrayList<>();
+        for (int i = 0; i < pricers; i++) {
+            Thread t = new Thread(this::priceAll, "ingest-price-" + (i + 1));
+            t.setDaemon(true);
+            t.start();
+            pricerThreads.add(t);
+        }
+        
+        try {
+            writeAll();
+        } catch (Exception e) {
+            aborted = true;
+            throw e;
+        } finally {
+            reporter.shutdownNow();
+        }
+        reader.join();
+        for (Thread t : pricerThreads) {
+            t.join();
+        }
+        if (readFailure != null) {
+            throw new IllegalStateException("Reading input failed: " + readFailure.getMessage(), readFailure);
+        }
+    }
+    
+    public void printStats() {
+        System.out.println("[ingest] " + readStats.format());
+        System.out.println("[ingest] " + priceStats.format());
+        System.out.println("[ingest] " + writeStats.format());
+    }
+    
+    private void loadReferenceData() throws SQLException {
+        Connection conn = DB.getConn();
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT cust_id, cust_name, customer_type FROM customer")) {
+                while (rs.next()) {
+                    long id = rs.getLong("cust_id");
+                    customerNames.put(id, rs.getString("cust_name"));
+                    String type = rs.getString("customer_type");
+                    customerTypes.put(id, type == null ? "STANDARD" : type);
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT prod_id, prod_name, unit_price FROM product")) {
+                while (rs.next()) {
+                    long id = rs.getLong("prod_id");
+                    products.put(id, new Product(id, rs.getString("prod_name"), null, new BigDecimal(rs.getString("unit_price"))));
+                }
+            }
+        }
+    }
+    
+    // read stage: parse every file, then tell each pricer the input is done
+    private void readAll(List<File> files) {
+        try {
+            // Parse time is the time between handing one record off and the next
+            long[] mark = {System.nanoTime()};
+            for (File file : files) {
+                OrderFileReader.read(file, record -> {
+                    readStats.item();
+                    readStats.busy(System.nanoTime() - mark[0]);
+                    put(parsed, record, readStats);
+                    mark[0] = System.nanoTime();
+                }, (source, reason) -> reject(readStats, source, reason));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            readFailure = e;
+            aborted = true;
+        } finally {
+            for (int i = 0; i < pricers; i++) {
+                try {
+                    put(parsed, END_RECORD, readStats);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+    
+    // price stage: validate and price orders until the end marker arrives
+    private void priceAll() {
+        try {
+            while (true) {
+                OrderRecord record = take(parsed, priceStats);
+                if (record == null) {
+                    return;
+                }
+                if (record == END_RECORD) {
+                    put(priced, END_ORDER, priceStats);
+                    return;
+                }
+                String key = record.getIdempotencyKey();
+                if (key != null && IdempotencyKeys.getInstance().recent(key) != null) {
+                    duplicates.incrementAndGet();
+                    continue;
+                }
+                long started = System.nanoTime();
+                Order order;
+                try {
+                    order = price(record);
+                } catch (RuntimeException e) {
+                    reject(priceStats, record.getSource(), "order " + record.getRef() + ": " + e);
+                    order = null;
+                }
+                priceStats.busy(System.nanoTime() - started);
+                if (order != null) {
+                    priceStats.item();
+                    put(priced, order, priceStats);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Build a priced Order, or reject the record and return null
+    private Order price(OrderRecord record) {
+        String customerName = customerNames.get(record.getCustomerId());
+        if (customerName == null) {
+            reject(priceStats, record.getSource(), "order " + record.getRef() + ": unknown customer " + record.getCustomerId());
+            return null;
+        }
+        if (record.getLines().isEmpty()) {
+            reject(priceStats, record.getSource(), "order " + record.getRef() + ": no lines");
+            return null;
+        }
+        
+        Order order = new Order(null, record.getCustomerId(), customerName);
+        order.setIdempotencyKey(record.getIdempotencyKey());
+        // Same UTC timestamp the order editor records for new orders
+        order.setOrderDate(record.getOrderDate() != null ? record.getOrderDate()
+            : LocalDateTime.now(ZoneOffset.UTC).withNano(0));
+        BigDecimal lineSum = BigDecimal.ZERO;
+        for (OrderRecord.Line line : record.getLines()) {
+            Product product = products.get(line.getProductId());
+            if (product == null) {
+                reject(priceStats, record.getSource(), "order " + record.getRef() + ": unknown product " + line.getProductId());
+                return null;
+            }
+            if (line.getQuantity() <= 0) {
+                reject(priceStats, record.getSource(), "order " + record.getRef() + ": quantity must be positive");
+                return null;
+            }
+            BigDecimal unitPrice = line.getUnitPrice() != null ? line.getUnitPrice() : product.getUnitPrice();
+            if (unitPrice.signum() < 0) {
+                reject(priceStats, record.getSource(), "order " + record.getRef() + ": unit price must be zero or greater");
+                return null;
+            }
+            order.addLine(new OrderLine(null, product.getId(), product.getName(), line.getQuantity(), unitPrice));
+            lineSum = lineSum.add(unitPrice.multiply(BigDecimal.valueOf(line.getQuantity())));
+        }
+        
+        PriceBreakdown price = OrderPricing.price(customerTypes.get(record.getCustomerId()), lineSum, order.getLines().size());
+        order.setSubtotal(price.getSubtotal());
+        order.setDiscount(price.getDiscount());
+        order.setTax(price.getTax());
+        order.setTotal(price.getTotal());
+        return order;
+    }
+    
+    // write stage: commit orders in batches until every pricer has finished
+    private void writeAll() throws SQLException, InterruptedException {
+        try (Connection conn = DB.openWriteConn()) {
+            List<Order> batch = new ArrayList<>(batchSize);
+            int finished = 0;
+            while (finished < pricers) {
+                Order order = take(priced, writeStats);
+                if (order == null) {
+                    break;
+                }
+                if (order == END_ORDER) {
+                    finished++;
+                    continue;
+                }
+                batch.add(order);
+                if (batch.size() >= batchSize) {
+                    commit(conn, batch);
+                }
+            }
+            if (!batch.isEmpty() && !aborted) {
+                commit(conn, batch);
+            }
+        }
+    }
+    
+    private void commit(Connection conn, List<Order> batch) throws SQLException {
+        long started = System.nanoTime();
+        List<Order> inserted;
+        DB.beginWrite(conn);
+        try {
+            inserted = OrderDao.insertAll(conn, batch);
+            DB.commitWrite(conn);
+        } catch (SQLException e) {
+            DB.rollbackWrite(conn);
+            throw e;
+        }
+        IdempotencyKeys.getInstance().rememberOrders(inserted);
+        writeStats.busy(System.nanoTime() - started);
+        writeStats.items(inserted.size());
+        duplicates.addAndGet(batch.size() - inserted.size());
+        batch.clear();
+    }
+    
+    // Blocking put that gives up once the pipeline is aborted
+    private <T> void put(BlockingQueue<T> queue, T item, StageStats stats) throws InterruptedException {
+        long started = System.nanoTime();
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (aborted) {
+                throw new InterruptedException("Ingest aborted");
+            }
+        }
+        stats.blocked(System.nanoTime() - started);
+    }
+    
+    // Blocking take; returns null once the pipeline is aborted
+    private <T> T take(BlockingQueue<T> queue, StageStats stats) throws InterruptedException {
+        long started = System.nanoTime();
+        T item;
+        while ((item = queue.poll(100, TimeUnit.MILLISECONDS)) == null) {
+            if (aborted) {
+                return null;
+            }
+        }
+        stats.waited(System.nanoTime() - started);
+        return item;
+    }
+    
+    private void reject(StageStats stats, String source, String reason) {
+        stats.rejected();
+        reason = reason.replace('\n', ' ').replace('\r', ' ');
+        String message = "reject " + source + ": " + reason;
+        System.err.println("[ingest] " + message);
+        if (rejectLog != null) {
+            synchronized (rejectLog) {
+                rejectLog.println(source + "\t" + reason);
+            }
+        }
+    }
+}
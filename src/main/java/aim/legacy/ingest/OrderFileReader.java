@@ -0,0 +1,179 @@
+/**
+ * OrderFileReader.java
+ * 
+ * Reads orders from ingest files.
+ * CSV files have the header order_ref,cust_id,order_date,prod_id,quantity,unit_price
+ * with one row per order line; consecutive rows with the same order_ref form one
+ * order, and order_date and unit_price may be left empty. A row with an empty
+ * order_ref is an order of its own, and an order whose rows name different
+ * customers is rejected.
+ * Files ending in .jsonl or .ndjson hold one order object per line:
+ * {"ref":"A1","customerId":1,"orderDate":"2024-05-01 10:00:00",
+ *  "lines":[{"productId":3,"quantity":2,"unitPrice":19.99}]}
+ * A non-empty order reference is the order's idempotency key, so feeding the
+ * same file twice loads each order once. The key is "ingest:<cust_id>:<ref>",
+ * so file references never collide with API Idempotency-Key values or with
+ * another customer's references.
+ */
+package aim.legacy.ingest;
+
+import aim.legacy.db.OrderDao;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+public class OrderFileReader {
+    
+    // Receives each parsed order; may block when the pipeline is full
+    public interface Sink {
+        void accept(OrderRecord record) throws InterruptedException;
+    }
+    
+    // Receives lines that could not be parsed
+    public interface Rejects {
+        void reject(String source, String reason);
+    }
+    
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    // Read every order in the file into the sink
+    public static void read(File file, Sink sink, Rejects rejects) throws IOException, InterruptedException {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            readJsonLines(file, sink, rejects);
+        } else {
+            readCsv(file, sink, rejects);
+        }
+    }
+    
+    private static void readCsv(File file, Sink sink, Rejects rejects) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            int lineNo = 1;
+            if (line == null) {
+                return;
+            }
+            if (!line.trim().toLowerCase().startsWith("order_ref")) {
+                rejects.reject(file.getName() + ":1", "missing header order_ref,cust_id,order_date,prod_id,quantity,unit_price");
+                return;
+            }
+            
+            OrderRecord current = null;
+            boolean currentBad = false;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty()) continue;
+                String source = file.getName() + ":" + lineNo;
+                String[] fields = line.split(",", -1);
+                if (fields.length < 5) {
+                    rejects.reject(source, "expected at least 5 fields");
+                    continue;
+                }
+                String ref = fields[0].trim();
+                
+                if (current == null || ref.isEmpty() || !current.getRef().equals(ref)) {
+                    if (current != null && !currentBad) {
+                        sink.accept(current);
+                    }
+                    try {
+                        current = new OrderRecord(source, ref, Long.parseLong(fields[1].trim()), parseDate(fields[2]));
+                        current.setIdempotencyKey(idempotencyKey(current.getCustomerId(), ref));
+                        currentBad = false;
+                    } catch (NumberFormatException | DateTimeParseException e) {
+                        rejects.reject(source, "order " + ref + ": bad customer id or date");
+                        current = new OrderRecord(source, ref, 0, null);
+                        currentBad = true;
+                        continue;
+                    }
+                } else if (currentBad) {
+                    continue;
+                } else if (!sameCustomer(fields[1], current)) {
+                    // The order_ref was probably reused by mistake; don't merge two orders
+                    rejects.reject(source, "order " + ref + ": customer changes within the order");
+                    currentBad = true;
+                    continue;
+                }
+                
+                try {
+                    String price = fields.length > 5 ? fields[5].trim() : "";
+                    current.addLine(new OrderRecord.Line(
+                        Long.parseLong(fields[3].trim()),
+                        Integer.parseInt(fields[4].trim()),
+                        price.isEmpty() ? null : new BigDecimal(price)));
+                } catch (NumberFormatException e) {
+                    // One bad line rejects the whole order rather than ingesting part of it
+                    rejects.reject(source, "order " + ref + ": bad product, quantity or price");
+                    currentBad = true;
+                }
+            }
+            if (current != null && !currentBad) {
+                sink.accept(current);
+            }
+        }
+    }
+    
+    private static boolean sameCustomer(String field, OrderRecord record) {
+        try {
+            return Long.parseLong(field.trim()) == record.getCustomerId();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    private static void readJsonLines(File file, Sink sink, Rejects rejects) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty()) continue;
+                String source = file.getName() + ":" + lineNo;
+                OrderRecord record;
+                try {
+                    JsonNode node = MAPPER.readTree(line);
+                    JsonNode date = node.get("orderDate");
+                    record = new OrderRecord(source, node.path("ref").asText(String.valueOf(lineNo)),
+                        node.path("customerId").asLong(), date == null || date.isNull() ? null : parseDate(date.asText()));
+                    record.setIdempotencyKey(idempotencyKey(record.getCustomerId(), node.path("ref").asText("").trim()));
+                    for (JsonNode item : node.path("lines")) {
+                        JsonNode price = item.get("unitPrice");
+                        record.addLine(new OrderRecord.Line(
+                            item.path("productId").asLong(),
+                            item.path("quantity").asInt(),
+                            price == null || price.isNull() ? null : price.decimalValue()));
+                    }
+                } catch (IOException | DateTimeParseException e) {
+                    rejects.reject(source, "unreadable order: " + e.getMessage());
+                    continue;
+                }
+                sink.accept(record);
+            }
+        }
+    }
+    
+    // Key for an order reference from a file, or null when there is none
+    static String idempotencyKey(long customerId, String ref) {
+        return ref.isEmpty() ? null : "ingest:" + customerId + ":" + ref;
+    }
+    
+    // "yyyy-MM-dd HH:mm:ss" or "yyyy-MM-dd"; empty means now
+    private static LocalDateTime parseDate(String value) {
+        String text = value.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        if (text.length() == 10) {
+            text = text + " 00:00:00";
+        }
+        return LocalDateTime.parse(text, OrderDao.DATE_FORMAT);
+    }
+}
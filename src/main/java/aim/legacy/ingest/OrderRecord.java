@@ -0,0 +1,87 @@
+/**
+ * OrderRecord.java
+ * 
+ * One order as read from an ingest file, before validation and pricing.
+ * Unit prices are optional; missing ones are taken from the product catalog.
+ */
+package aim.legacy.ingest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OrderRecord {
+    private final String source;
+    private final String ref;
+    private final long customerId;
+    private final LocalDateTime orderDate;
+    private final List<Line> lines = new ArrayList<>();
+    private String idempotencyKey;
+
+    public static class Line {
+        private final long productId;
+        private final int quantity;
+        private final BigDecimal unitPrice;
+
+        public Line(long productId, int quantity, BigDecimal unitPrice) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+        }
+
+        public long getProductId() {
+            return productId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public BigDecimal getUnitPrice() {
+            return unitPrice;
+        }
+    }
+
+    public OrderRecord(String source, String ref, long customerId, LocalDateTime orderDate) {
+        this.source = source;
+        this.ref = ref;
+        this.customerId = customerId;
+        this.orderDate = orderDate;
+    }
+
+    // File and line (or order reference) the record came from, for reject messages
+    public String getSource() {
+        return source;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    // The order reference when the file gave one; re-feeding a file with the same
+    // references skips the orders already loaded
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+
+    public List<Line> getLines() {
+        return lines;
+    }
+
+    public void addLine(Line line) {
+        lines.add(line);
+    }
+}
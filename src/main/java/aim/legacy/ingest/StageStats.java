@@ -0,0 +1,70 @@
+/**
+ * StageStats.java
+ * 
+ * Throughput counters for one ingest pipeline stage.
+ * Time is split into working, waiting for input and blocked on a full
+ * downstream queue, so a report shows which stage is the bottleneck.
+ */
+package aim.legacy.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StageStats {
+    
+    private final String name;
+    private final int threads;
+    private final long started = System.nanoTime();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+    
+    public StageStats(String name, int threads) {
+        this.name = name;
+        this.threads = threads;
+    }
+    
+    public void item() {
+        items.incrementAndGet();
+    }
+    
+    public void items(long count) {
+        items.addAndGet(count);
+    }
+    
+    public void rejected() {
+        rejected.incrementAndGet();
+    }
+    
+    public void busy(long nanos) {
+        busyNanos.addAndGet(nanos);
+    }
+    
+    // Time spent waiting for work from the upstream queue
+    public void waited(long nanos) {
+        waitNanos.addAndGet(nanos);
+    }
+    
+    // Time spent blocked on a full downstream queue (backpressure)
+    public void blocked(long nanos) {
+        blockedNanos.addAndGet(nanos);
+    }
+    
+    public long getItems() {
+        return items.get();
+    }
+    
+    public long getRejected() {
+        return rejected.get();
+    }
+    
+    // One line: items, rate, rejects and how the stage's thread time was spent
+    public String format() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - started) / 1e9);
+        double threadNanos = Math.max(1, seconds * 1e9 * threads);
+        return String.format("%-7s %9d items %10.1f/s %6d rejected  busy %3.0f%%  waiting %3.0f%%  blocked %3.0f%%",
+            name, items.get(), items.get() / seconds, rejected.get(),
+            100 * busyNanos.get() / threadNanos, 100 * waitNanos.get() / threadNanos, 100 * blockedNanos.get() / threadNanos);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * OrderSaveEvent.java
+ * 
+ * Flight Recorder event for one OrderDao.save: the order, its line count and
+ * how the save ended. Duration covers the whole save inside the caller's
+ * transaction, not the commit.
+ */
+package aim.legacy.jfr;
+
+import aim.legacy.domain.Order;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("aim.legacy.OrderSave")
+@Label("Order Save")
+@Category({"AIM Order Entry", "Orders"})
+@Description("Order header and lines written by OrderDao.save")
+public class OrderSaveEvent extends Event {
+    
+    @Label("Order Id")
+    long orderId;
+    
+    @Label("Lines")
+    int lineCount;
+    
+    @Label("Outcome")
+    @Description("inserted, updated, replay (idempotency key already used) or failed")
+    String outcome;
+    
+    // Not recorded; decides between inserted and updated
+    private transient boolean newOrder;
+    
+    // Begin timing a save; does next to nothing while the event is not recorded
+    public static OrderSaveEvent start(Order order) {
+        OrderSaveEvent event = new OrderSaveEvent();
+        event.begin();
+        event.newOrder = order.getId() == null;
+        return event;
+    }
+    
+    public void saved(Order order, boolean written) {
+        finish(order, !written ? "replay" : newOrder ? "inserted" : "updated");
+    }
+    
+    public void failed(Order order) {
+        finish(order, "failed");
+    }
+    
+    private void finish(Order order, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.orderId = order.getId() == null ? -1 : order.getId();
+            this.lineCount = order.getLines().size();
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
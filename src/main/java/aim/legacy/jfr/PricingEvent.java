@@ -0,0 +1,44 @@
+/**
+ * PricingEvent.java
+ * 
+ * Flight Recorder event for one OrderPricing.price call. Recorded without a
+ * stack trace unless the settings ask for one, as ingest prices thousands of
+ * orders a second.
+ */
+package aim.legacy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("aim.legacy.Pricing")
+@Label("Order Pricing")
+@Category({"AIM Order Entry", "Orders"})
+@Description("Discount and tax calculation for one order")
+@StackTrace(false)
+public class PricingEvent extends Event {
+    
+    @Label("Customer Type")
+    String customerType;
+    
+    @Label("Lines")
+    int lineCount;
+    
+    public static PricingEvent start() {
+        PricingEvent event = new PricingEvent();
+        event.begin();
+        return event;
+    }
+    
+    public void priced(String customerType, int lineCount) {
+        end();
+        if (shouldCommit()) {
+            this.customerType = customerType;
+            this.lineCount = lineCount;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * ReportPhaseEvent.java
+ * 
+ * Flight Recorder event for one phase of writing a report, e.g. reading the
+ * totals, laying out the order rows or closing the PDF. Chunked reports
+ * record a phase per id range on the render thread that laid it out.
+ */
+package aim.legacy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("aim.legacy.ReportPhase")
+@Label("Report Phase")
+@Category({"AIM Order Entry", "Reports"})
+@Description("One phase of rendering a PDF report")
+public class ReportPhaseEvent extends Event {
+    
+    @Label("Report")
+    String report;
+    
+    @Label("Phase")
+    String phase;
+    
+    @Label("Rows")
+    @Description("Rows laid out in this phase; 0 for phases without rows")
+    long rows;
+    
+    public static ReportPhaseEvent start(String report, String phase) {
+        ReportPhaseEvent event = new ReportPhaseEvent();
+        event.begin();
+        event.report = report;
+        event.phase = phase;
+        return event;
+    }
+    
+    public void finish() {
+        finish(0);
+    }
+    
+    public void finish(long rows) {
+        end();
+        if (shouldCommit()) {
+            this.rows = rows;
+            commit();
+        }
+    }
+}
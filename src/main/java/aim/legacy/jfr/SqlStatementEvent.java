@@ -0,0 +1,62 @@
+/**
+ * SqlStatementEvent.java
+ * 
+ * Flight Recorder event for one SQL execution through a connection handed
+ * out by DB. The statement is the normalized shape kept by SlowQueryLog
+ * (literals replaced by ?), so no customer data ends up in a recording.
+ * 
+ * Duration is the execute call. For queries the event is committed once the
+ * ResultSet is closed, with the rows read and the time spent in next();
+ * the threshold applies to the execute time alone.
+ */
+package aim.legacy.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("aim.legacy.SqlStatement")
+@Label("SQL Statement")
+@Category({"AIM Order Entry", "Database"})
+@Description("Statement executed on a connection from DB")
+public class SqlStatementEvent extends Event {
+    
+    @Label("Operation")
+    @Description("Verb and first table, as in the metrics, e.g. sql.select.orders")
+    String operation;
+    
+    @Label("Statement")
+    String statement;
+    
+    @Label("Rows")
+    @Description("Rows read or changed; -1 when the driver does not say")
+    long rows;
+    
+    @Label("Fetch Time")
+    @Description("Time spent in ResultSet.next() after the execute")
+    @Timespan(Timespan.NANOSECONDS)
+    long fetchTime;
+    
+    public static SqlStatementEvent start() {
+        SqlStatementEvent event = new SqlStatementEvent();
+        event.begin();
+        return event;
+    }
+    
+    // Stop the clock when the execute returns; true if the event will be recorded
+    public boolean executed() {
+        end();
+        return shouldCommit();
+    }
+    
+    public void finish(String operation, String statement, long rows, long fetchNanos) {
+        this.operation = operation;
+        this.statement = statement;
+        this.rows = rows;
+        this.fetchTime = fetchNanos;
+        commit();
+    }
+}
@@ -0,0 +1,443 @@
+/**
+ * LoadHarness.java
+ * 
+ * Load and soak test for the order entry data paths.
+ * Runs a weighted mix of operations (create and edit orders, search customers,
+ * list orders, generate reports) from N simulated users against a copy of the
+ * database, and prints latency percentiles, throughput and error rates per
+ * operation every interval and for the whole run.
+ * 
+ * Usage: LoadHarness [--db orderentry.db] [--threads 8] [--rate OPS_PER_SEC]
+ *        [--duration 60s|30m|2h] [--interval 10s]
+ *        [--mix create=15,edit=15,search=30,list=39,report=1] [--csv FILE] [--keep]
+ * --rate 0 (the default) runs every user flat out; --csv appends one row per
+ * operation per interval for plotting long soaks; --keep leaves the copy behind.
+ */
+package aim.legacy.load;
+
+import aim.legacy.cache.ProductCatalog;
+import aim.legacy.db.DB;
+import aim.legacy.domain.Product;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadHarness {
+    
+    static final String[] CUSTOMER_TYPES = {"STANDARD", "PREMIUM", "VIP"};
+    
+    private static final String DEFAULT_MIX = "create=15,edit=15,search=30,list=39,report=1";
+    
+    // Errors printed in full before the harness only counts them
+    private static final int MAX_LOGGED_ERRORS = 20;
+    
+    // Customers, products and search words sampled once before the run
+    static class ReferenceData {
+        long[] customerIds;
+        String[] customerNames;
+        String[] customerTypes;
+        List<Product> products;
+        String[] searchTerms;
+        private final Map<Long, String> typeById = new HashMap<>();
+        
+        String typeOf(long custId) {
+            return typeById.get(custId);
+        }
+    }
+    
+    private final int threads;
+    private final double rate;
+    private final long durationMillis;
+    private final long intervalMillis;
+    private final Map<Operation, Integer> mix;
+    private final File csvFile;
+    
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final AtomicLong maxOrderId = new AtomicLong();
+    private final AtomicInteger loggedErrors = new AtomicInteger();
+    private final AtomicLong editConflicts = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile Throwable workerFailure;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private long startedMillis;
+    private long lastReportMillis;
+    private PrintWriter csv;
+    
+    public LoadHarness(int threads, double rate, long durationMillis, long intervalMillis, Map<Operation, Integer> mix, File csvFile) {
+        this.threads = threads;
+        this.rate = rate;
+        this.durationMillis = durationMillis;
+        this.intervalMillis = intervalMillis;
+        this.mix = mix;
+        this.csvFile = csvFile;
+        
+        List<Operation> ops = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int sum = 0;
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            if (entry.getValue() > 0) {
+                sum += entry.getValue();
+                ops.add(entry.getKey());
+                weights.add(sum);
+            }
+        }
+        if (ops.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operations with a weight above zero");
+        }
+        operations = ops.toArray(new Operation[0]);
+        cumulativeWeights = new int[weights.size()];
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            cumulativeWeights[i] = weights.get(i);
+        }
+        for (Operation op : Operation.values()) {
+            stats.put(op, new OperationStats(op.getKey()));
+        }
+    }
+    
+    // Run the mix for the configured duration against the database DB is pointed at
+    public void run() throws Exception {
+        try {
+            runMix();
+        } finally {
+            finished.countDown();
+        }
+    }
+    
+    private void runMix() throws Exception {
+        ReferenceData refs = loadReferenceData();
+        System.out.println("[load] " + threads + " users, " + (rate > 0 ? rate + " ops/s" : "unthrottled")
+            + ", mix " + mix + ", " + refs.customerIds.length + " customers, " + refs.products.size()
+            + " products, " + maxOrderId.get() + " orders");
+        
+        if (csvFile != null) {
+            boolean header = !csvFile.exists() || csvFile.length() == 0;
+            csv = new PrintWriter(new FileWriter(csvFile, true));
+            if (header) {
+                csv.println("time,elapsed_s,operation,count,rate_per_s,p50_ms,p90_ms,p99_ms,p999_ms,max_ms,errors");
+            }
+        }
+        
+        // Each user gets an equal share of the target rate
+        long periodNanos = rate > 0 ? (long) (1e9 * threads / rate) : 0;
+        List<Thread> workers = new ArrayList<>();
+        startedMillis = System.currentTimeMillis();
+        lastReportMillis = startedMillis;
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(new LoadWorker(this, refs, 31L * i + startedMillis, periodNanos), "load-user-" + (i + 1));
+            t.setDaemon(true);
+            workers.add(t);
+            t.start();
+        }
+        
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-report");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::reportInterval, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        
+        long deadline = startedMillis + durationMillis;
+        while (running && System.currentTimeMillis() < deadline && workerFailure == null) {
+            Thread.sleep(Math.min(500, Math.max(1, deadline - System.currentTimeMillis())));
+        }
+        running = false;
+        for (Thread t : workers) {
+            t.join();
+        }
+        reporter.shutdownNow();
+        reporter.awaitTermination(5, TimeUnit.SECONDS);
+        reportInterval();
+        reportTotals();
+        if (csv != null) {
+            csv.close();
+        }
+        if (workerFailure != null) {
+            throw new IllegalStateException("A load user could not start: " + workerFailure.getMessage(), workerFailure);
+        }
+    }
+    
+    // Stop early (e.g. on Ctrl-C) and wait for the final report to be printed
+    public void stop() {
+        running = false;
+        try {
+            finished.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    boolean isRunning() {
+        return running;
+    }
+    
+    Operation pickOperation(Random random) {
+        int r = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (r < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+    
+    OperationStats statsFor(Operation op) {
+        return stats.get(op);
+    }
+    
+    long getMaxOrderId() {
+        return maxOrderId.get();
+    }
+    
+    void orderCreated(long orderId) {
+        maxOrderId.accumulateAndGet(orderId, Math::max);
+    }
+    
+    // An edit hit a newer version saved by another user and was retried
+    void editConflict() {
+        editConflicts.incrementAndGet();
+    }
+    
+    void operationFailed(Operation op, Exception e) {
+        int n = loggedErrors.incrementAndGet();
+        if (n <= MAX_LOGGED_ERRORS) {
+            System.err.println("[load] " + op.getKey() + " failed: " + e);
+            if (n == MAX_LOGGED_ERRORS) {
+                System.err.println("[load] further errors are counted but not printed");
+            }
+        }
+    }
+    
+    void workerFailed(Throwable e) {
+        workerFailure = e;
+    }
+    
+    private ReferenceData loadReferenceData() throws SQLException {
+        ReferenceData refs = new ReferenceData();
+        Connection conn = DB.getConn();
+        List<Long> ids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        Set<String> terms = new LinkedHashSet<>();
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT cust_id, cust_name, customer_type FROM customer")) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                    names.add(rs.getString(2));
+                    String type = rs.getString(3) == null ? "STANDARD" : rs.getString(3);
+                    types.add(type);
+                    refs.typeById.put(rs.getLong(1), type);
+                    addTerms(rs.getString(2), terms);
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT MAX(order_id) FROM orders")) {
+                maxOrderId.set(rs.next() ? rs.getLong(1) : 0);
+            }
+        }
+        refs.products = ProductCatalog.getInstance().getProducts();
+        for (Product product : refs.products) {
+            addTerms(product.getName(), terms);
+        }
+        if (ids.isEmpty() || refs.products.isEmpty()) {
+            throw new IllegalStateException("The database needs at least one customer and one product");
+        }
+        
+        refs.customerIds = new long[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            refs.customerIds[i] = ids.get(i);
+        }
+        refs.customerNames = names.toArray(new String[0]);
+        refs.customerTypes = types.toArray(new String[0]);
+        // A few thousand distinct words is plenty of variety for search
+        List<String> sample = new ArrayList<>(terms);
+        refs.searchTerms = sample.subList(0, Math.min(sample.size(), 5000)).toArray(new String[0]);
+        if (refs.searchTerms.length == 0) {
+            refs.searchTerms = new String[] {"a"};
+        }
+        return refs;
+    }
+    
+    private static void addTerms(String text, Set<String> terms) {
+        if (text == null) {
+            return;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() >= 3) {
+                terms.add(word);
+            }
+        }
+    }
+    
+    private synchronized void reportInterval() {
+        long now = System.currentTimeMillis();
+        long intervalLength = Math.max(1, now - lastReportMillis);
+        lastReportMillis = now;
+        double elapsed = (now - startedMillis) / 1000.0;
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(now));
+        System.out.println("[load] --- " + formatElapsed(now - startedMillis) + " ---");
+        for (Operation op : operations) {
+            OperationStats.Snapshot s = stats.get(op).drainInterval();
+            double perSecond = s.getCount() * 1000.0 / intervalLength;
+            System.out.println("[load] " + format(op.getKey(), s, perSecond));
+            if (csv != null) {
+                csv.println(String.format(Locale.ROOT, "%s,%.1f,%s,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%d",
+                    time, elapsed, op.getKey(), s.getCount(), perSecond, s.getPercentileMillis(50),
+                    s.getPercentileMillis(90), s.getPercentileMillis(99), s.getPercentileMillis(99.9),
+                    s.getMaxMillis(), s.getErrors()));
+            }
+        }
+        if (csv != null) {
+            csv.flush();
+        }
+    }
+    
+    private void reportTotals() {
+        double seconds = Math.max(0.001, (System.currentTimeMillis() - startedMillis) / 1000.0);
+        long ops = 0;
+        long errors = 0;
+        System.out.println("[load] === totals over " + formatElapsed(System.currentTimeMillis() - startedMillis) + " ===");
+        for (Operation op : operations) {
+            OperationStats.Snapshot s = stats.get(op).getTotal();
+            ops += s.getCount();
+            errors += s.getErrors();
+            System.out.println("[load] " + format(op.getKey(), s, s.getCount() / seconds));
+        }
+        System.out.println(String.format(Locale.ROOT, "[load] all     %9d ops %9.1f/s  errors %d (%.2f%%)",
+            ops, ops / seconds, errors, ops == 0 ? 0 : 100.0 * errors / ops));
+        System.out.println("[load] edit conflicts detected and merged by retry: " + editConflicts.get());
+    }
+    
+    private static String format(String name, OperationStats.Snapshot s, double perSecond) {
+        return String.format(Locale.ROOT,
+            "%-7s %9d ops %9.1f/s  p50 %8.2f  p90 %8.2f  p99 %8.2f  p99.9 %8.2f  max %8.2f ms  errors %d (%.2f%%)",
+            name, s.getCount(), perSecond, s.getPercentileMillis(50), s.getPercentileMillis(90),
+            s.getPercentileMillis(99), s.getPercentileMillis(99.9), s.getMaxMillis(), s.getErrors(), s.getErrorPercent());
+    }
+    
+    private static String formatElapsed(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+    
+    // "90" or "90s", "15m", "2h" to milliseconds
+    static long parseDuration(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1000;
+        if (v.endsWith("ms")) {
+            unit = 1;
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("s")) {
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("m")) {
+            unit = 60000;
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("h")) {
+            unit = 3600000;
+            v = v.substring(0, v.length() - 1);
+        }
+        return (long) (Double.parseDouble(v) * unit);
+    }
+    
+    // "create=15,edit=15,..." to weights; operations left out get no weight
+    static Map<Operation, Integer> parseMix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("Expected name=weight in mix, got " + part);
+            }
+            mix.put(Operation.fromKey(kv[0].trim()), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+    
+    // Copy the database (and its WAL, if any) so the run never touches the original
+    private static File copyDatabase(File source) throws IOException {
+        if (!source.isFile()) {
+            throw new IOException("No database at " + source);
+        }
+        File dir = new File("target", "loadtest");
+        dir.mkdirs();
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File copy = new File(dir, source.getName().replaceFirst("\\.db$", "") + "-" + stamp + ".db");
+        Files.copy(source.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        File wal = new File(source.getPath() + "-wal");
+        if (wal.isFile()) {
+            Files.copy(wal.toPath(), new File(copy.getPath() + "-wal").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return copy;
+    }
+    
+    private static final String USAGE = "Usage: LoadHarness [--db FILE] [--threads N] [--rate OPS_PER_SEC] [--duration 60s|30m|2h]"
+        + " [--interval 10s] [--mix " + DEFAULT_MIX + "] [--csv FILE] [--keep]";
+    
+    public static void main(String[] args) throws Exception {
+        File source = new File("orderentry.db");
+        int threads = 8;
+        double rate = 0;
+        long duration = 60000;
+        long interval = 10000;
+        String mix = DEFAULT_MIX;
+        File csvFile = null;
+        boolean keep = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--db": source = new File(args[++i]); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--rate": rate = Double.parseDouble(args[++i]); break;
+                    case "--duration": duration = parseDuration(args[++i]); break;
+                    case "--interval": interval = parseDuration(args[++i]); break;
+                    case "--mix": mix = args[++i]; break;
+                    case "--csv": csvFile = new File(args[++i]); break;
+                    case "--keep": keep = true; break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() == null ? USAGE : e.getMessage() + "\n" + USAGE);
+            System.exit(2);
+        }
+        
+        File copy = copyDatabase(source);
+        // Must be set before DB is first used
+        System.setProperty("aim.db.file", copy.getPath());
+        System.out.println("[load] running against " + copy + " (copy of " + source + ")");
+        
+        LoadHarness harness = new LoadHarness(Math.max(1, threads), rate, duration, Math.max(1000, interval), parseMix(mix), csvFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(harness::stop));
+        try {
+            harness.run();
+        } finally {
+            DB.closeConn();
+            if (!keep) {
+                new File(copy.getPath() + "-wal").delete();
+                new File(copy.getPath() + "-shm").delete();
+                copy.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * LoadWorker.java
+ * 
+ * One simulated user for the load harness. Each worker owns a read-only and a
+ * write connection, like a separate desktop client, and runs the same data
+ * paths the screens use: OrderDao and OrderPricing for saves, OrderQuery for
+ * the orders list, FullTextSearch for customer search and OrderSummaryReport
+ * for reports.
+ */
+package aim.legacy.load;
+
+import aim.legacy.db.ConcurrentUpdateException;
+import aim.legacy.db.DB;
+import aim.legacy.db.OrderDao;
+import aim.legacy.db.OrderQuery;
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+import aim.legacy.domain.Product;
+import aim.legacy.pricing.OrderPricing;
+import aim.legacy.pricing.PriceBreakdown;
+import aim.legacy.report.OrderSummaryReport;
+import aim.legacy.search.FullTextSearch;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Random;
+
+class LoadWorker implements Runnable {
+    
+    // Rows per page, as in the orders screen
+    private static final int PAGE_SIZE = 100;
+    
+    // Saves of one edit before giving up on repeated conflicts
+    private static final int MAX_EDIT_ATTEMPTS = 5;
+    
+    private final LoadHarness harness;
+    private final LoadHarness.ReferenceData refs;
+    private final Random random;
+    private final long periodNanos;
+    
+    private Connection readConn;
+    private Connection writeConn;
+    
+    LoadWorker(LoadHarness harness, LoadHarness.ReferenceData refs, long seed, long periodNanos) {
+        this.harness = harness;
+        this.refs = refs;
+        this.random = new Random(seed);
+        this.periodNanos = periodNanos;
+    }
+    
+    // Run operations until the harness stops
+    // With a target rate each operation has a scheduled start, and latency is
+    // measured from that start, so a stall also counts against the operations
+    // that queued up behind it instead of hiding them
+    public void run() {
+        try {
+            readConn = DB.openReadConn();
+            writeConn = DB.openWriteConn();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            harness.workerFailed(e);
+            return;
+        }
+        
+        long next = System.nanoTime() + (periodNanos > 0 ? (long) (random.nextDouble() * periodNanos) : 0);
+        try {
+            while (harness.isRunning()) {
+                long start;
+                if (periodNanos > 0) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    }
+                    start = next;
+                    next += periodNanos;
+                } else {
+                    start = System.nanoTime();
+                }
+                
+                Operation op = harness.pickOperation(random);
+                OperationStats stats = harness.statsFor(op);
+                try {
+                    perform(op);
+                    stats.success(System.nanoTime() - start);
+                } catch (Exception e) {
+                    stats.failure(System.nanoTime() - start);
+                    harness.operationFailed(op, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(readConn);
+            closeQuietly(writeConn);
+        }
+    }
+    
+    private void perform(Operation op) throws Exception {
+        switch (op) {
+            case CREATE:
+                createOrder();
+                break;
+            case EDIT:
+                editOrder();
+                break;
+            case SEARCH:
+                searchCustomers();
+                break;
+            case LIST:
+                listOrders();
+                break;
+            case REPORT:
+                generateReport();
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + op);
+        }
+    }
+    
+    // New order with 1-5 random lines, priced and saved like the order editor does
+    private void createOrder() throws SQLException {
+        int c = random.nextInt(refs.customerIds.length);
+        Order order = new Order(null, refs.customerIds[c], refs.customerNames[c]);
+        order.setOrderDate(LocalDateTime.now(ZoneOffset.UTC).withNano(0));
+        int lines = 1 + random.nextInt(5);
+        for (int i = 0; i < lines; i++) {
+            Product product = refs.products.get(random.nextInt(refs.products.size()));
+            order.addLine(new OrderLine(null, product.getId(), product.getName(), 1 + random.nextInt(10), product.getUnitPrice()));
+        }
+        price(order, refs.customerTypes[c]);
+        
+        save(order);
+        harness.orderCreated(order.getId());
+    }
+    
+    // Open a random existing order, change one line's quantity and save it back
+    // A concurrent edit of the same order is handled as the editor would:
+    // reload the current version, reapply the change and save again
+    private void editOrder() throws SQLException {
+        long maxId = harness.getMaxOrderId();
+        if (maxId < 1) {
+            createOrder();
+            return;
+        }
+        long orderId = 1 + (long) (random.nextDouble() * maxId);
+        int quantity = 1 + random.nextInt(10);
+        for (int attempt = 1; ; attempt++) {
+            Order order = OrderDao.load(readConn, orderId);
+            if (order == null || order.getLines().isEmpty()) {
+                // Deleted or empty; opening it is all the editor would do
+                return;
+            }
+            OrderLine line = order.getLines().get(random.nextInt(order.getLines().size()));
+            line.setQuantity(quantity);
+            price(order, refs.typeOf(order.getCustomerId()));
+            try {
+                save(order);
+                return;
+            } catch (ConcurrentUpdateException e) {
+                harness.editConflict();
+                if (attempt >= MAX_EDIT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    // First page of a full-text customer search for a word taken from real data
+    private void searchCustomers() throws SQLException {
+        String term = refs.searchTerms[random.nextInt(refs.searchTerms.length)];
+        FullTextSearch.searchCustomers(readConn, term, 0, PAGE_SIZE);
+    }
+    
+    // Count plus one page of the orders list with a random filter and sort
+    private void listOrders() throws SQLException {
+        OrderQuery query = new OrderQuery();
+        int filter = random.nextInt(4);
+        if (filter == 1) {
+            query.setCustomerId(refs.customerIds[random.nextInt(refs.customerIds.length)]);
+        } else if (filter == 2) {
+            LocalDate from = LocalDate.now().minusDays(random.nextInt(365));
+            query.setFromDate(from);
+            query.setToDate(from.plusDays(30));
+        } else if (filter == 3) {
+            query.setCustomerType(LoadHarness.CUSTOMER_TYPES[random.nextInt(LoadHarness.CUSTOMER_TYPES.length)]);
+        }
+        OrderQuery.SortColumn[] columns = OrderQuery.SortColumn.values();
+        query.setSortColumn(columns[random.nextInt(columns.length)]);
+        query.setDescending(random.nextBoolean());
+        
+        int count = query.count(readConn);
+        int pages = Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE);
+        // Most users stay near the top; some jump deep into the list
+        int page = random.nextInt(10) < 8 ? 0 : random.nextInt(pages);
+        query.fetchAt(readConn, page * PAGE_SIZE, PAGE_SIZE);
+    }
+    
+    // Full order summary PDF, rendered and thrown away
+    private void generateReport() throws Exception {
+        OrderSummaryReport report = new OrderSummaryReport();
+        report.write(readConn, new OutputStream() {
+            public void write(int b) {
+            }
+            
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+    
+    // One write transaction per save, as the order editor does
+    private void save(Order order) throws SQLException {
+        DB.beginWrite(writeConn);
+        try {
+            OrderDao.save(writeConn, order);
+            DB.commitWrite(writeConn);
+        } catch (SQLException e) {
+            DB.rollbackWrite(writeConn);
+            throw e;
+        }
+    }
+    
+    private static void price(Order order, String customerType) {
+        BigDecimal lineSum = BigDecimal.ZERO;
+        for (OrderLine line : order.getLines()) {
+            lineSum = lineSum.add(line.getLineTotal());
+        }
+        PriceBreakdown price = OrderPricing.price(customerType, lineSum, order.getLines().size());
+        order.setSubtotal(price.getSubtotal());
+        order.setDiscount(price.getDiscount());
+        order.setTax(price.getTax());
+        order.setTotal(price.getTotal());
+    }
+    
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Operation.java
+ * 
+ * Kinds of work the load harness mixes, named as they appear in --mix.
+ */
+package aim.legacy.load;
+
+public enum Operation {
+    CREATE("create"),
+    EDIT("edit"),
+    SEARCH("search"),
+    LIST("list"),
+    REPORT("report");
+    
+    private final String key;
+    
+    Operation(String key) {
+        this.key = key;
+    }
+    
+    public String getKey() {
+        return key;
+    }
+    
+    public static Operation fromKey(String key) {
+        for (Operation op : values()) {
+            if (op.key.equalsIgnoreCase(key)) {
+                return op;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key);
+    }
+}
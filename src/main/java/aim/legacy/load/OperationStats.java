@@ -0,0 +1,84 @@
+/**
+ * OperationStats.java
+ * 
+ * Latency, throughput and error counts for one load-test operation.
+ * Workers record into an interval histogram; each report drains it into
+ * the run total, so both per-interval and whole-run percentiles are kept
+ * without stopping the workers.
+ */
+package aim.legacy.load;
+
+import aim.legacy.metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class OperationStats {
+    
+    private final String name;
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final AtomicLong intervalErrors = new AtomicLong();
+    private final AtomicLong totalErrors = new AtomicLong();
+    
+    public OperationStats(String name) {
+        this.name = name;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void success(long nanos) {
+        interval.record(nanos);
+    }
+    
+    // Failed operations count towards latency too, so slow failures show up
+    public void failure(long nanos) {
+        interval.record(nanos);
+        intervalErrors.incrementAndGet();
+    }
+    
+    // Take the interval's figures and fold them into the run total
+    public Snapshot drainInterval() {
+        LatencyHistogram drained = interval.drain();
+        long errors = intervalErrors.getAndSet(0);
+        total.add(drained);
+        totalErrors.addAndGet(errors);
+        return new Snapshot(drained, errors);
+    }
+    
+    public Snapshot getTotal() {
+        return new Snapshot(total, totalErrors.get());
+    }
+    
+    public static class Snapshot {
+        final LatencyHistogram histogram;
+        final long errors;
+        
+        Snapshot(LatencyHistogram histogram, long errors) {
+            this.histogram = histogram;
+            this.errors = errors;
+        }
+        
+        public long getCount() {
+            return histogram.getCount();
+        }
+        
+        public long getErrors() {
+            return errors;
+        }
+        
+        public double getErrorPercent() {
+            long n = histogram.getCount();
+            return n == 0 ? 0 : 100.0 * errors / n;
+        }
+        
+        public double getPercentileMillis(double percentile) {
+            return histogram.getPercentileMillis(percentile);
+        }
+        
+        public double getMaxMillis() {
+            return histogram.getMaxNanos() / 1e6;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * LatencyHistogram.java
+ * 
+ * Lock-free latency histogram with log-linear buckets, in the style of
+ * HdrHistogram: values are kept to about 1.6% precision (64 sub-buckets per
+ * power of two) from nanoseconds up to hours in a few thousand counters.
+ * Recording is a single atomic increment, so many threads can record into
+ * one histogram without contention on a lock.
+ */
+package aim.legacy.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+    
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final int BUCKETS = 64 - SUB_BITS + 1;
+    
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * HALF_COUNT + HALF_COUNT);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long seen;
+        while (value > (seen = max.get()) && !max.compareAndSet(seen, value)) {
+            // retry until our value is stored or a larger one is
+        }
+    }
+    
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    public long getCount() {
+        return total.get();
+    }
+    
+    public long getMaxNanos() {
+        return max.get();
+    }
+    
+    public double getMeanNanos() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+    
+    // Value at the given percentile (0-100), as the top of its bucket, in nanoseconds
+    public long getPercentileNanos(double percentile) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, percentile) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    public double getPercentileMillis(double percentile) {
+        return getPercentileNanos(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+    
+    // Add another histogram's counts into this one
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        total.addAndGet(other.total.get());
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long seen;
+        while (otherMax > (seen = max.get()) && !max.compareAndSet(seen, otherMax)) {
+            // retry
+        }
+    }
+    
+    // Move everything recorded so far into a new histogram and start empty
+    // Counts recorded while this runs land in one histogram or the other, never both
+    public LatencyHistogram drain() {
+        LatencyHistogram copy = new LatencyHistogram();
+        long n = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.getAndSet(i, 0);
+            if (c != 0) {
+                copy.counts.set(i, c);
+                n += c;
+            }
+        }
+        total.addAndGet(-n);
+        copy.total.set(n);
+        copy.sum.set(sum.getAndSet(0));
+        copy.max.set(max.getAndSet(0));
+        return copy;
+    }
+    
+    // Buckets 0..127 hold 0..127 exactly; above that each power of two is
+    // split into 64 sub-buckets
+    static int indexOf(long value) {
+        int bucket = 64 - Long.numberOfLeadingZeros(value | (SUB_COUNT - 1)) - SUB_BITS;
+        int sub = (int) (value >>> bucket);
+        return bucket == 0 ? sub : bucket * HALF_COUNT + sub;
+    }
+    
+    static long highestOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int bucket = index / HALF_COUNT - 1;
+        long sub = index - bucket * HALF_COUNT;
+        return ((sub + 1) << bucket) - 1;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Metrics.java
+ * 
+ * Registry of named OperationMetrics for database, pricing, save and report
+ * operations. Each operation is registered with the platform MBean server as
+ * aim.legacy:type=Metrics,name=<operation> when first used.
+ * 
+ * A daemon thread closes a reporting interval every aim.metrics.intervalSeconds
+ * (default 60) and logs rate, p50/p99/p99.9/max latency and errors for every
+ * operation that ran in it; -Daim.metrics.log=false keeps the figures for JMX
+ * without the log lines.
+ */
+package aim.legacy.metrics;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class Metrics {
+    
+    private static final long INTERVAL_SECONDS = Math.max(1, Long.getLong("aim.metrics.intervalSeconds", 60));
+    private static final boolean LOG = !"false".equals(System.getProperty("aim.metrics.log"));
+    
+    private static final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    
+    private static ScheduledExecutorService reporter;
+    private static long intervalStart = System.nanoTime();
+    
+    // Metrics for the named operation, created and registered on first use
+    // Callers on hot paths keep the result in a static field
+    public static OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        return operations.computeIfAbsent(name, Metrics::register);
+    }
+    
+    private static OperationMetrics register(String name) {
+        OperationMetrics metrics = new OperationMetrics(name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                metrics, new ObjectName("aim.legacy:type=Metrics,name=" + name));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        startReporter();
+        return metrics;
+    }
+    
+    private static synchronized void startReporter() {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-report");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(Metrics::report, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    // Close the interval on every operation and log the ones that ran
+    private static void report() {
+        try {
+            String text = roll();
+            if (LOG && !text.isEmpty()) {
+                System.out.print(text);
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; one bad interval should not end reporting
+            e.printStackTrace();
+        }
+    }
+    
+    static synchronized String roll() {
+        long now = System.nanoTime();
+        long nanos = now - intervalStart;
+        intervalStart = now;
+        
+        StringBuilder out = new StringBuilder();
+        for (OperationMetrics metrics : sorted()) {
+            OperationMetrics.Interval interval = metrics.roll(nanos);
+            if (interval.getCount() > 0) {
+                out.append(format(metrics.getName(), interval)).append(System.lineSeparator());
+            }
+        }
+        return out.toString();
+    }
+    
+    // One log line: name, count, rate, latency percentiles in ms, errors
+    static String format(String name, OperationMetrics.Interval interval) {
+        LatencyHistogram latency = interval.getLatency();
+        return String.format(Locale.ROOT, "[metrics] %-32s n=%-7d %9.1f/s p50=%.3f p99=%.3f p99.9=%.3f max=%.3f ms errors=%d",
+            name, interval.getCount(), interval.getRatePerSecond(),
+            latency.getPercentileMillis(50), latency.getPercentileMillis(99), latency.getPercentileMillis(99.9),
+            latency.getMaxNanos() / 1e6, interval.getErrors());
+    }
+    
+    // Every registered operation, by name
+    public static List<OperationMetrics> sorted() {
+        Map<String, OperationMetrics> byName = new TreeMap<>(operations);
+        return new ArrayList<>(byName.values());
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * OperationMetrics.java
+ * 
+ * Call count, error count and latency of one named operation.
+ * Counters are LongAdders, so threads recording at once update separate
+ * cells instead of fighting over one value; latencies go into lock-free
+ * LatencyHistograms, one since start (or the last reset) and one for the
+ * current reporting interval.
+ * 
+ * Typical use, with the metrics held in a static field:
+ * 
+ *   long started = System.nanoTime();
+ *   try {
+ *       ...
+ *       SAVE.recordSince(started);
+ *   } catch (SQLException e) {
+ *       SAVE.failedSince(started);
+ *       throw e;
+ *   }
+ */
+package aim.legacy.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class OperationMetrics implements OperationMetricsMXBean {
+    
+    private static final double NANOS_PER_MILLI = 1000000.0;
+    
+    private final String name;
+    
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile long countingSince = System.nanoTime();
+    
+    // Current interval, moved into the "recent" figures by roll()
+    private final LongAdder intervalErrors = new LongAdder();
+    private final LatencyHistogram interval = new LatencyHistogram();
+    private volatile Interval recent = new Interval(new LatencyHistogram(), 0, 1);
+    
+    // One finished reporting interval
+    public static class Interval {
+        private final LatencyHistogram latency;
+        private final long errors;
+        private final long nanos;
+        
+        Interval(LatencyHistogram latency, long errors, long nanos) {
+            this.latency = latency;
+            this.errors = errors;
+            this.nanos = Math.max(1, nanos);
+        }
+        
+        public long getCount() {
+            return latency.getCount();
+        }
+        
+        public long getErrors() {
+            return errors;
+        }
+        
+        public double getRatePerSecond() {
+            return latency.getCount() * 1e9 / nanos;
+        }
+        
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+    
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+    
+    // A successful call that started at startNanos (System.nanoTime)
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    // A failed call that started at startNanos; its time counts towards the latency too
+    public void failedSince(long startNanos) {
+        errors.increment();
+        intervalErrors.increment();
+        record(System.nanoTime() - startNanos);
+    }
+    
+    public void record(long nanos) {
+        count.increment();
+        latency.record(nanos);
+        interval.record(nanos);
+    }
+    
+    // Close the current interval; called by the Metrics reporter
+    Interval roll(long intervalNanos) {
+        recent = new Interval(interval.drain(), intervalErrors.sumThenReset(), intervalNanos);
+        return recent;
+    }
+    
+    public Interval getRecent() {
+        return recent;
+    }
+    
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public long getErrorCount() {
+        return errors.sum();
+    }
+    
+    public double getMeanRatePerSecond() {
+        return count.sum() * 1e9 / Math.max(1, System.nanoTime() - countingSince);
+    }
+    
+    public double getRecentRatePerSecond() {
+        return recent.getRatePerSecond();
+    }
+    
+    public double getMeanMillis() {
+        return latency.getMeanNanos() / NANOS_PER_MILLI;
+    }
+    
+    public double getP50Millis() {
+        return latency.getPercentileMillis(50);
+    }
+    
+    public double getP99Millis() {
+        return latency.getPercentileMillis(99);
+    }
+    
+    public double getP999Millis() {
+        return latency.getPercentileMillis(99.9);
+    }
+    
+    public double getMaxMillis() {
+        return latency.getMaxNanos() / NANOS_PER_MILLI;
+    }
+    
+    public double getRecentP99Millis() {
+        return recent.getLatency().getPercentileMillis(99);
+    }
+    
+    public long getRecentErrorCount() {
+        return recent.getErrors();
+    }
+    
+    // Start the since-start figures over; the current interval is left alone
+    public void reset() {
+        latency.drain();
+        count.reset();
+        errors.reset();
+        countingSince = System.nanoTime();
+    }
+}
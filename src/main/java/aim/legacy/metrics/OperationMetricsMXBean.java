@@ -0,0 +1,37 @@
+/**
+ * OperationMetricsMXBean.java
+ * 
+ * JMX view of one timed operation.
+ * Visible in JConsole/VisualVM under aim.legacy:type=Metrics,name=<operation>.
+ * "Recent" figures cover the last reporting interval (aim.metrics.intervalSeconds).
+ */
+package aim.legacy.metrics;
+
+public interface OperationMetricsMXBean {
+    
+    String getName();
+    
+    long getCount();
+    
+    long getErrorCount();
+    
+    double getMeanRatePerSecond();
+    
+    double getRecentRatePerSecond();
+    
+    double getMeanMillis();
+    
+    double getP50Millis();
+    
+    double getP99Millis();
+    
+    double getP999Millis();
+    
+    double getMaxMillis();
+    
+    double getRecentP99Millis();
+    
+    long getRecentErrorCount();
+    
+    void reset();
+}
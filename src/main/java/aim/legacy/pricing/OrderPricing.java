@@ -0,0 +1,86 @@
+/**
+ * OrderPricing.java
+ * 
+ * Discount and tax rules by customer type, shared by the order editor and the
+ * headless ingest so both price an order the same way.
+ * STANDARD: Tiered discounts (5% @ $500, 10% @ $1000, 15% @ $2000), 14.975% tax
+ * PREMIUM: Tiered discounts (7% @ $400, 12% @ $800, 18% @ $1500), 12% tax
+ * VIP: Flat 20% discount, 10% tax
+ * Tax is applied to subtotal after discount
+ */
+package aim.legacy.pricing;
+
+import aim.legacy.jfr.PricingEvent;
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class OrderPricing {
+    
+    private static final BigDecimal STANDARD_TAX_RATE = new BigDecimal("0.14975");
+    private static final BigDecimal PREMIUM_TAX_RATE = new BigDecimal("0.12");
+    private static final BigDecimal VIP_TAX_RATE = new BigDecimal("0.10");
+    
+    private static final OperationMetrics PRICE = Metrics.operation("pricing.price");
+    
+    // Price an order from the sum of its line amounts
+    // Unknown or missing customer types are priced as STANDARD
+    // lineCount is only recorded, for the pricing JFR event
+    public static PriceBreakdown price(String customerType, BigDecimal lineSum, int lineCount) {
+        long started = System.nanoTime();
+        PricingEvent event = PricingEvent.start();
+        try {
+            PriceBreakdown price = calculate(customerType, lineSum);
+            PRICE.recordSince(started);
+            event.priced(customerType, lineCount);
+            return price;
+        } catch (RuntimeException e) {
+            PRICE.failedSince(started);
+            throw e;
+        }
+    }
+    
+    private static PriceBreakdown calculate(String customerType, BigDecimal lineSum) {
+        BigDecimal subtotal = lineSum.setScale(2, RoundingMode.HALF_UP);
+        
+        BigDecimal discount = BigDecimal.ZERO;
+        BigDecimal taxRate = STANDARD_TAX_RATE;
+        BigDecimal maxDiscountRate = new BigDecimal("0.15");
+        
+        if ("VIP".equals(customerType)) {
+            // VIP: Flat 20% discount
+            discount = subtotal.multiply(new BigDecimal("0.20"));
+            taxRate = VIP_TAX_RATE;
+            maxDiscountRate = new BigDecimal("0.20");
+        } else if ("PREMIUM".equals(customerType)) {
+            // PREMIUM: Enhanced tiered discounts
+            if (subtotal.compareTo(new BigDecimal("1500")) >= 0) {
+                discount = subtotal.multiply(new BigDecimal("0.18"));
+            } else if (subtotal.compareTo(new BigDecimal("800")) >= 0) {
+                discount = subtotal.multiply(new BigDecimal("0.12"));
+            } else if (subtotal.compareTo(new BigDecimal("400")) >= 0) {
+                discount = subtotal.multiply(new BigDecimal("0.07"));
+            }
+            taxRate = PREMIUM_TAX_RATE;
+            maxDiscountRate = new BigDecimal("0.18");
+        } else {
+            // STANDARD: Original tiered discounts
+            if (subtotal.compareTo(new BigDecimal("2000")) >= 0) {
+                discount = subtotal.multiply(new BigDecimal("0.15"));
+            } else if (subtotal.compareTo(new BigDecimal("1000")) >= 0) {
+                discount = subtotal.multiply(new BigDecimal("0.10"));
+            } else if (subtotal.compareTo(new BigDecimal("500")) >= 0) {
+                discount = subtotal.multiply(new BigDecimal("0.05"));
+            }
+        }
+        discount = discount.setScale(2, RoundingMode.HALF_UP);
+        
+        BigDecimal taxableAmount = subtotal.subtract(discount);
+        BigDecimal tax = taxableAmount.multiply(taxRate).setScale(2, RoundingMode.HALF_UP);
+        BigDecimal total = subtotal.subtract(discount).add(tax).setScale(2, RoundingMode.HALF_UP);
+        
+        return new PriceBreakdown(subtotal, discount, tax, total, maxDiscountRate);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * PriceBreakdown.java
+ * 
+ * Subtotal, discount, tax and total of a priced order, all at two decimals.
+ * maxDiscountRate is the cap for the customer type, used by validation.
+ */
+package aim.legacy.pricing;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class PriceBreakdown {
+    private final BigDecimal subtotal;
+    private final BigDecimal discount;
+    private final BigDecimal tax;
+    private final BigDecimal total;
+    private final BigDecimal maxDiscountRate;
+
+    public PriceBreakdown(BigDecimal subtotal, BigDecimal discount, BigDecimal tax, BigDecimal total, BigDecimal maxDiscountRate) {
+        this.subtotal = subtotal;
+        this.discount = discount;
+        this.tax = tax;
+        this.total = total;
+        this.maxDiscountRate = maxDiscountRate;
+    }
+
+    public BigDecimal getSubtotal() {
+        return subtotal;
+    }
+
+    public BigDecimal getDiscount() {
+        return discount;
+    }
+
+    public BigDecimal getTax() {
+        return tax;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public BigDecimal getMaxDiscountRate() {
+        return maxDiscountRate;
+    }
+
+    // True when the discount is within the cap for the customer type
+    public boolean isDiscountWithinLimit() {
+        if (subtotal.signum() <= 0) {
+            return true;
+        }
+        return discount.divide(subtotal, 4, RoundingMode.HALF_UP).compareTo(maxDiscountRate) <= 0;
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * ChunkedOrderSummaryReport.java
+ * 
+ * Order summary PDF rendered in parallel.
+ * Orders are split into contiguous order-id ranges and each range is laid out
+ * into its own PDF fragment on a bounded render pool, each fragment reading
+ * through its own connection. The fragments and a final summary page are then
+ * concatenated with PdfCopy, stamping continuous "Page n of m" footers.
+ * 
+ * Each fragment starts on a new page and repeats the column headings, so the
+ * merged document can have a part-filled page at every range boundary.
+ * 
+ * The ranges cover every order id up to the highest one seen when the report
+ * started; later orders are left out. Each fragment reads its rows and their
+ * totals in one read transaction, and the summary page adds up those totals,
+ * so the summary always matches the rows listed even while orders change.
+ */
+package aim.legacy.report;
+
+import aim.legacy.db.DB;
+import aim.legacy.db.SalesTotals;
+import aim.legacy.jfr.ReportPhaseEvent;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfCopy;
+import com.itextpdf.text.pdf.PdfImportedPage;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ChunkedOrderSummaryReport {
+    
+    // Orders per fragment; smaller ranges spread better across cores but add part-filled pages
+    static final int CHUNK_ROWS = Integer.getInteger("aim.report.chunkRows", 20000);
+    
+    // Render threads shared by all reports (aim.report.renderThreads, default one per core)
+    private static final ExecutorService RENDER_POOL;
+    
+    static {
+        int threads = Math.max(1, Integer.getInteger("aim.report.renderThreads", Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadNo = new AtomicInteger();
+        RENDER_POOL = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "report-render-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+    
+    // Report name on its ReportPhaseEvents
+    private static final String REPORT = "orderSummary.chunked";
+    
+    private static final String RANGE_TOTALS_SQL =
+        "SELECT COUNT(*), " +
+        "SUM(CAST(ROUND(subtotal * 100) AS INTEGER)), SUM(CAST(ROUND(discount * 100) AS INTEGER)), " +
+        "SUM(CAST(ROUND(tax * 100) AS INTEGER)), SUM(CAST(ROUND(total * 100) AS INTEGER)) " +
+        "FROM orders WHERE order_id BETWEEN ? AND ?";
+    
+    private static final String RANGE_SQL =
+        "SELECT order_id, cust_name, order_date, subtotal, discount, tax, total FROM orders " +
+        "WHERE order_id BETWEEN ? AND ? ORDER BY order_id";
+    
+    private ReportProgress progress = OrderSummaryReport.NO_PROGRESS;
+    
+    public void setProgress(ReportProgress progress) {
+        this.progress = progress == null ? OrderSummaryReport.NO_PROGRESS : progress;
+    }
+    
+    // Write the report to out, using conn for the range boundaries
+    // Fragments are written next to workDir and removed afterwards
+    // Returns the totals of the orders listed, as shown on the summary page
+    public SalesTotals write(Connection conn, OutputStream out, File workDir)
+            throws SQLException, DocumentException, IOException {
+        ReportPhaseEvent phase = ReportPhaseEvent.start(REPORT, "split");
+        List<long[]> ranges = splitRanges(conn, CHUNK_ROWS);
+        phase.finish();
+        long estimated = 0;
+        for (long[] range : ranges) {
+            estimated += range[2];
+        }
+        progress.rowsDone(0, estimated);
+        
+        String prefix = "report-" + Long.toHexString(System.nanoTime()) + "-";
+        List<File> fragments = new ArrayList<>();
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicLong rowsDone = new AtomicLong();
+        List<Future<long[]>> renders = new ArrayList<>();
+        try {
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                boolean first = i == 0;
+                File fragment = new File(workDir, prefix + i + ".pdf");
+                fragments.add(fragment);
+                ReportProgress chunkProgress = new ChunkProgress(rowsDone, estimated, failed);
+                renders.add(RENDER_POOL.submit(() -> renderRange(fragment, range[0], range[1], first, chunkProgress)));
+            }
+            
+            // Time the caller spends waiting on the render threads
+            phase = ReportPhaseEvent.start(REPORT, "await");
+            long[] sums = awaitAll(renders, failed);
+            phase.finish();
+            if (progress.isCancelled()) {
+                throw new CancellationException("Report cancelled");
+            }
+            
+            SalesTotals totals = new SalesTotals(sums[0], sums[1], sums[2], sums[3], sums[4]);
+            File summary = new File(workDir, prefix + "summary.pdf");
+            fragments.add(summary);
+            phase = ReportPhaseEvent.start(REPORT, "summary");
+            renderSummary(summary, totals, ranges.isEmpty());
+            phase.finish();
+            
+            phase = ReportPhaseEvent.start(REPORT, "merge");
+            merge(fragments, out);
+            phase.finish(rowsDone.get());
+            progress.rowsDone(rowsDone.get(), estimated);
+            return totals;
+        } finally {
+            failed.set(true);
+            for (Future<long[]> render : renders) {
+                render.cancel(false);
+            }
+            for (File fragment : fragments) {
+                fragment.delete();
+            }
+        }
+    }
+    
+    // {first, last, orders} order-id ranges of about chunkRows orders each
+    // Each range starts right after the previous one, so no id up to the last is missed
+    // Only the primary key is read, so this is a quick scan of the id index
+    static List<long[]> splitRanges(Connection conn, int chunkRows) throws SQLException {
+        List<long[]> ranges = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(OrderSummaryReport.FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery("SELECT order_id FROM orders ORDER BY order_id")) {
+                long start = 0;
+                long last = 0;
+                int count = 0;
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (count == 0) {
+                        start = ranges.isEmpty() ? id : last + 1;
+                    }
+                    last = id;
+                    if (++count == chunkRows) {
+                        ranges.add(new long[]{start, last, count});
+                        count = 0;
+                    }
+                }
+                if (count > 0) {
+                    ranges.add(new long[]{start, last, count});
+                }
+            }
+        }
+        return ranges;
+    }
+    
+    // Lay out one id range into its own PDF; the first range also carries the title
+    // Returns {orders, subtotal, discount, tax, total} in cents for the rows laid out
+    private static long[] renderRange(File fragment, long firstId, long lastId, boolean withTitle, ReportProgress progress)
+            throws SQLException, DocumentException, IOException {
+        try (Connection conn = DB.openReadConn();
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(fragment));
+             PreparedStatement sums = conn.prepareStatement(RANGE_TOTALS_SQL);
+             PreparedStatement ps = conn.prepareStatement(RANGE_SQL)) {
+            // Totals and rows come from the same snapshot
+            conn.setAutoCommit(false);
+            long[] totals = new long[5];
+            sums.setLong(1, firstId);
+            sums.setLong(2, lastId);
+            try (ResultSet rs = sums.executeQuery()) {
+                rs.next();
+                for (int i = 0; i < totals.length; i++) {
+                    totals[i] = rs.getLong(i + 1);
+                }
+            }
+            
+            ps.setFetchSize(OrderSummaryReport.FETCH_SIZE);
+            ps.setLong(1, firstId);
+            ps.setLong(2, lastId);
+            
+            ReportPhaseEvent phase = ReportPhaseEvent.start(REPORT, "range");
+            Document document = newDocument(out);
+            long rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (withTitle) {
+                    OrderSummaryReport.writeTitle(document);
+                }
+                rows = OrderSummaryReport.writeOrders(document, rs, progress, -1);
+                // Count the rows after the last flush too
+                progress.rowsDone(rows, -1);
+            } finally {
+                document.close();
+            }
+            phase.finish(rows);
+            conn.commit();
+            return totals;
+        }
+    }
+    
+    // Summary statistics on a page of their own; also carries the title when there are no orders
+    private static void renderSummary(File fragment, SalesTotals totals, boolean withTitle)
+            throws DocumentException, IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fragment))) {
+            Document document = newDocument(out);
+            try {
+                if (withTitle) {
+                    OrderSummaryReport.writeTitle(document);
+                }
+                OrderSummaryReport.writeSummary(document, totals);
+            } finally {
+                document.close();
+            }
+        }
+    }
+    
+    private static Document newDocument(OutputStream out) throws DocumentException {
+        Document document = new Document(PageSize.LETTER, 50, 50, 50, 50);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        writer.setCloseStream(false);
+        document.open();
+        return document;
+    }
+    
+    // Wait for every render in order and add up their totals; the first failure stops the rest
+    private static long[] awaitAll(List<Future<long[]>> renders, AtomicBoolean failed)
+            throws SQLException, DocumentException, IOException {
+        long[] sums = new long[5];
+        for (Future<long[]> render : renders) {
+            try {
+                long[] totals = render.get();
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] += totals[i];
+                }
+            } catch (InterruptedException e) {
+                failed.set(true);
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Report interrupted");
+            } catch (ExecutionException e) {
+                failed.set(true);
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) throw (SQLException) cause;
+                if (cause instanceof DocumentException) throw (DocumentException) cause;
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+        return sums;
+    }
+    
+    // Concatenate the fragments, stamping "Page n of m" at the foot of every page
+    // One fragment is held in memory at a time and released once copied
+    private static void merge(List<File> fragments, OutputStream out) throws DocumentException, IOException {
+        int totalPages = 0;
+        for (File fragment : fragments) {
+            PdfReader reader = openReader(fragment);
+            totalPages += reader.getNumberOfPages();
+            reader.close();
+        }
+        
+        Document document = new Document();
+        PdfCopy copy = new PdfCopy(document, out);
+        copy.setCloseStream(false);
+        document.open();
+        int pageNo = 0;
+        for (File fragment : fragments) {
+            PdfReader reader = openReader(fragment);
+            for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+                pageNo++;
+                PdfImportedPage page = copy.getImportedPage(reader, i);
+                PdfCopy.PageStamp stamp = copy.createPageStamp(page);
+                Rectangle size = reader.getPageSize(i);
+                ColumnText.showTextAligned(stamp.getOverContent(), Element.ALIGN_CENTER,
+                    new Phrase("Page " + pageNo + " of " + totalPages, OrderSummaryReport.SMALL_FONT),
+                    (size.getLeft() + size.getRight()) / 2, size.getBottom() + 25, 0);
+                stamp.alterContents();
+                copy.addPage(page);
+            }
+            copy.freeReader(reader);
+            reader.close();
+        }
+        document.close();
+    }
+    
+    private static PdfReader openReader(File fragment) throws IOException {
+        return new PdfReader(fragment.getPath());
+    }
+    
+    // Folds one fragment's row count into the report total
+    // Cancels the fragment when the report is cancelled or another fragment failed
+    private class ChunkProgress implements ReportProgress {
+        private final AtomicLong rowsDone;
+        private final long estimated;
+        private final AtomicBoolean failed;
+        private long reported;
+        
+        ChunkProgress(AtomicLong rowsDone, long estimated, AtomicBoolean failed) {
+            this.rowsDone = rowsDone;
+            this.estimated = estimated;
+            this.failed = failed;
+        }
+        
+        public void rowsDone(long done, long total) {
+            long all = rowsDone.addAndGet(done - reported);
+            reported = done;
+            progress.rowsDone(all, estimated);
+        }
+        
+        public boolean isCancelled() {
+            return failed.get() || progress.isCancelled();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * OrderSummaryReport.java
+ * 
+ * Order summary PDF: one row per order followed by summary statistics.
+ * Rows are streamed from a database cursor and the orders table is flushed to
+ * the document every few hundred rows, so memory use does not grow with the
+ * number of orders.
+ * 
+ * An optional ReportProgress is told how many rows have been written at every
+ * flush and can cancel the report between flushes.
+ * 
+ * Summary statistics come from the pre-aggregated sales tables rather than
+ * being accumulated row by row.
+ */
+package aim.legacy.report;
+
+import aim.legacy.db.SalesSummary;
+import aim.legacy.db.SalesTotals;
+import aim.legacy.jfr.ReportPhaseEvent;
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+
+public class OrderSummaryReport {
+    
+    // Rows added to the orders table between flushes to the document
+    // Flushed rows are laid out on pages and released
+    static final int FLUSH_ROWS = Integer.getInteger("aim.report.flushRows", 500);
+    
+    // Rows the JDBC driver reads ahead from the cursor
+    static final int FETCH_SIZE = 1000;
+    
+    private static final String ORDERS_SQL =
+        "SELECT order_id, cust_name, order_date, subtotal, discount, tax, total FROM orders ORDER BY order_id";
+    
+    // Does nothing and is never cancelled
+    static final ReportProgress NO_PROGRESS = new ReportProgress() {
+        public void rowsDone(long done, long total) {
+        }
+        
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+    
+    // Fonts and colours are shared by every cell in the report
+    static final Font TITLE_FONT = new Font(Font.FontFamily.HELVETICA, 18, Font.BOLD);
+    static final Font HEADER_FONT = new Font(Font.FontFamily.HELVETICA, 12, Font.BOLD);
+    static final Font NORMAL_FONT = new Font(Font.FontFamily.HELVETICA, 10, Font.NORMAL);
+    static final Font SMALL_FONT = new Font(Font.FontFamily.HELVETICA, 8, Font.NORMAL);
+    static final BaseColor HEADER_COLOR = new BaseColor(200, 200, 200);
+    static final BaseColor ALTERNATE_COLOR = new BaseColor(240, 240, 240);
+    static final BaseColor SUMMARY_COLOR = new BaseColor(230, 230, 230);
+    
+    private static final String[] HEADERS = {"Order ID", "Customer", "Date", "Subtotal", "Discount", "Tax", "Total"};
+    private static final float[] WIDTHS = {1.0f, 2.5f, 2.0f, 1.5f, 1.5f, 1.5f, 1.5f};
+    
+    private static final OperationMetrics WRITE = Metrics.operation("report.orderSummary.write");
+    
+    // Report name on its ReportPhaseEvents
+    static final String REPORT = "orderSummary";
+    
+    private ReportProgress progress = NO_PROGRESS;
+    
+    public void setProgress(ReportProgress progress) {
+        this.progress = progress == null ? NO_PROGRESS : progress;
+    }
+    
+    // Write the report to a stream reading from the given connection; the stream is not closed
+    // Totals and rows are read in one transaction, so the summary matches the rows;
+    // a connection already in a transaction is left to its caller
+    // Throws CancellationException when the progress sink cancels the report
+    public SalesTotals write(Connection conn, OutputStream out) throws SQLException, DocumentException {
+        long started = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            SalesTotals totals = render(conn, out);
+            WRITE.recordSince(started);
+            return totals;
+        } catch (SQLException | DocumentException | RuntimeException e) {
+            if (!(e instanceof CancellationException)) {
+                WRITE.failedSince(started);
+            }
+            throw e;
+        } finally {
+            if (autoCommit) {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    private SalesTotals render(Connection conn, OutputStream out) throws SQLException, DocumentException {
+        // Read up front: gives the summary section and the progress estimate without a scan
+        ReportPhaseEvent phase = ReportPhaseEvent.start(REPORT, "totals");
+        SalesTotals totals = SalesSummary.totals(conn);
+        phase.finish();
+        long estimated = totals.getOrders();
+        progress.rowsDone(0, estimated);
+        
+        Document document = new Document(PageSize.LETTER, 50, 50, 50, 50);
+        PdfWriter writer = PdfWriter.getInstance(document, out);
+        writer.setCloseStream(false);
+        document.open();
+        
+        writeTitle(document);
+        
+        long rows;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(FETCH_SIZE);
+            phase = ReportPhaseEvent.start(REPORT, "rows");
+            try (ResultSet rs = stmt.executeQuery(ORDERS_SQL)) {
+                rows = writeOrders(document, rs, progress, estimated);
+            }
+            phase.finish(rows);
+            phase = ReportPhaseEvent.start(REPORT, "summary");
+            writeSummary(document, totals);
+            phase.finish();
+        } finally {
+            // Closing also ends the PDF on cancel or failure; the caller discards it
+            phase = ReportPhaseEvent.start(REPORT, "close");
+            document.close();
+            phase.finish();
+        }
+        progress.rowsDone(rows, estimated);
+        return totals;
+    }
+    
+    // Company name, report title and generation time
+    static void writeTitle(Document document) throws DocumentException {
+        Paragraph company = new Paragraph("AIM Order Entry System", HEADER_FONT);
+        company.setAlignment(Element.ALIGN_CENTER);
+        document.add(company);
+        document.add(new Paragraph(" "));
+        
+        Paragraph title = new Paragraph("Order Summary Report", TITLE_FONT);
+        title.setAlignment(Element.ALIGN_CENTER);
+        document.add(title);
+        
+        SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
+        Paragraph timestamp = new Paragraph("Generated: " + sdf.format(new Date()), SMALL_FONT);
+        timestamp.setAlignment(Element.ALIGN_CENTER);
+        document.add(timestamp);
+        
+        document.add(new Paragraph(" "));
+        document.add(new Paragraph(" "));
+    }
+    
+    // Stream every row of the cursor into the orders table
+    // The table is marked incomplete so each flush lays out and drops the rows added so far
+    // Returns the number of order rows written
+    static long writeOrders(Document document, ResultSet rs, ReportProgress progress, long estimated)
+            throws SQLException, DocumentException {
+        PdfPTable table = newOrdersTable();
+        table.setComplete(false);
+        
+        PdfPCell cell = table.getDefaultCell();
+        cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+        cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
+        cell.setBackgroundColor(HEADER_COLOR);
+        for (String header : HEADERS) {
+            table.addCell(new Phrase(header, HEADER_FONT));
+        }
+        cell.setVerticalAlignment(Element.ALIGN_TOP);
+        
+        boolean alternate = false;
+        long rows = 0;
+        int pending = 0;
+        while (rs.next()) {
+            rows++;
+            cell.setBackgroundColor(alternate ? ALTERNATE_COLOR : BaseColor.WHITE);
+            
+            cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            table.addCell(new Phrase(String.valueOf(rs.getLong("order_id")), NORMAL_FONT));
+            
+            cell.setHorizontalAlignment(Element.ALIGN_LEFT);
+            table.addCell(new Phrase(rs.getString("cust_name"), NORMAL_FONT));
+            table.addCell(new Phrase(formatDate(rs.getString("order_date")), NORMAL_FONT));
+            
+            cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+            table.addCell(new Phrase(formatMoney(rs.getDouble("subtotal")), NORMAL_FONT));
+            table.addCell(new Phrase(formatMoney(rs.getDouble("discount")), NORMAL_FONT));
+            table.addCell(new Phrase(formatMoney(rs.getDouble("tax")), NORMAL_FONT));
+            table.addCell(new Phrase(formatMoney(rs.getDouble("total")), NORMAL_FONT));
+            
+            alternate = !alternate;
+            if (++pending >= FLUSH_ROWS) {
+                document.add(table);
+                pending = 0;
+                if (progress.isCancelled()) {
+                    throw new CancellationException("Report cancelled");
+                }
+                progress.rowsDone(rows, estimated);
+            }
+        }
+        
+        table.setComplete(true);
+        document.add(table);
+        return rows;
+    }
+    
+    static PdfPTable newOrdersTable() throws DocumentException {
+        PdfPTable table = new PdfPTable(HEADERS.length);
+        table.setWidthPercentage(100);
+        table.setWidths(WIDTHS);
+        table.getDefaultCell().setPadding(5);
+        return table;
+    }
+    
+    // Summary statistics below the orders table
+    static void writeSummary(Document document, SalesTotals totals) throws DocumentException {
+        document.add(new Paragraph(" "));
+        document.add(new Paragraph(" "));
+        
+        Paragraph summaryTitle = new Paragraph("Summary Statistics", HEADER_FONT);
+        document.add(summaryTitle);
+        document.add(new Paragraph(" "));
+        
+        PdfPTable summaryTable = new PdfPTable(2);
+        summaryTable.setWidthPercentage(50);
+        summaryTable.setHorizontalAlignment(Element.ALIGN_LEFT);
+        summaryTable.setWidths(new float[]{3.0f, 2.0f});
+        
+        PdfPCell cell = summaryTable.getDefaultCell();
+        cell.setBackgroundColor(SUMMARY_COLOR);
+        cell.setPadding(5);
+        cell.setBorder(Rectangle.NO_BORDER);
+        
+        addSummaryRow(summaryTable, "Total Orders:", String.valueOf(totals.getOrders()));
+        addSummaryRow(summaryTable, "Total Revenue:", "$" + totals.getTotal().toPlainString());
+        addSummaryRow(summaryTable, "Total Discounts:", "$" + totals.getDiscount().toPlainString());
+        addSummaryRow(summaryTable, "Total Tax Collected:", "$" + totals.getTax().toPlainString());
+        
+        document.add(summaryTable);
+    }
+    
+    private static void addSummaryRow(PdfPTable table, String label, String value) {
+        PdfPCell cell = table.getDefaultCell();
+        cell.setHorizontalAlignment(Element.ALIGN_LEFT);
+        table.addCell(new Phrase(label, NORMAL_FONT));
+        cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        table.addCell(new Phrase(value, HEADER_FONT));
+    }
+    
+    // "$0.00" without going through String.format for every cell
+    static String formatMoney(double amount) {
+        return "$" + BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).toPlainString();
+    }
+    
+    // "yyyy-MM-dd HH:mm:ss" to "MM/dd/yyyy HH:mm"; anything else is shown as stored
+    static String formatDate(String orderDate) {
+        if (orderDate == null || orderDate.length() < 16 || orderDate.charAt(4) != '-'
+                || orderDate.charAt(7) != '-' || orderDate.charAt(10) != ' ') {
+            return orderDate;
+        }
+        return orderDate.substring(5, 7) + "/" + orderDate.substring(8, 10) + "/"
+            + orderDate.substring(0, 4) + " " + orderDate.substring(11, 16);
+    }
+}
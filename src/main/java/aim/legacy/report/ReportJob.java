@@ -0,0 +1,118 @@
+/**
+ * ReportJob.java
+ * 
+ * One report submitted to the ReportJobQueue.
+ * Tracks state, rows written against the estimated total, and the finished file.
+ * Fields are written by the worker thread and read by the UI.
+ */
+package aim.legacy.report;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.concurrent.Future;
+
+public class ReportJob implements ReportProgress {
+    
+    public enum State { QUEUED, RUNNING, DONE, FAILED, CANCELLED }
+    
+    private final long id;
+    private final String name;
+    private final File output;
+    private final LocalDateTime submitted = LocalDateTime.now();
+    private final ReportJobQueue queue;
+    
+    private volatile State state = State.QUEUED;
+    private volatile long rowsDone;
+    private volatile long estimatedRows = -1;
+    private volatile boolean cancelRequested;
+    private volatile String error;
+    private volatile Future<?> future;
+    
+    ReportJob(long id, String name, File output, ReportJobQueue queue) {
+        this.id = id;
+        this.name = name;
+        this.output = output;
+        this.queue = queue;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    // Final report file, or output directory for batch jobs; complete once the job is DONE
+    public File getOutput() {
+        return output;
+    }
+    
+    public LocalDateTime getSubmitted() {
+        return submitted;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public long getRowsDone() {
+        return rowsDone;
+    }
+    
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public boolean isFinished() {
+        State s = state;
+        return s == State.DONE || s == State.FAILED || s == State.CANCELLED;
+    }
+    
+    // Percentage complete, or -1 while the total is unknown
+    public int getPercent() {
+        long total = estimatedRows;
+        if (state == State.DONE) return 100;
+        if (total <= 0) return -1;
+        return (int) Math.min(100, rowsDone * 100 / total);
+    }
+    
+    // Ask the job to stop; a queued job never starts, a running one stops at its next flush
+    public void cancel() {
+        if (isFinished()) return;
+        cancelRequested = true;
+        Future<?> f = future;
+        if (state == State.QUEUED && f != null && f.cancel(false)) {
+            finish(State.CANCELLED, null);
+        }
+    }
+    
+    public void rowsDone(long done, long total) {
+        rowsDone = done;
+        estimatedRows = total;
+        queue.fireChanged(this);
+    }
+    
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+    
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+    
+    void start() {
+        state = State.RUNNING;
+        queue.fireChanged(this);
+    }
+    
+    void finish(State finalState, String message) {
+        state = finalState;
+        error = message;
+        queue.fireChanged(this);
+    }
+}
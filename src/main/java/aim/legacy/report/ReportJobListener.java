@@ -0,0 +1,12 @@
+/**
+ * ReportJobListener.java
+ * 
+ * Notified when a report job is submitted, makes progress or finishes.
+ * Called on the worker thread; UI listeners hop to the EDT themselves.
+ */
+package aim.legacy.report;
+
+public interface ReportJobListener {
+    
+    void jobChanged(ReportJob job);
+}
@@ -0,0 +1,182 @@
+/**
+ * ReportJobQueue.java
+ * 
+ * Runs reports in the background so the UI stays responsive.
+ * Jobs wait in a queue for a small pool of worker threads (aim.reportJobs.workers,
+ * default 2). Each job reads through its own read-only connection and writes to
+ * a temporary file that is renamed into place only when the report completes.
+ * The order summary itself is rendered in parallel by ChunkedOrderSummaryReport.
+ */
+package aim.legacy.report;
+
+import aim.legacy.db.DB;
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReportJobQueue {
+    
+    private static final ReportJobQueue instance = new ReportJobQueue();
+    
+    private static final String REPORT_DIR = "reports";
+    private static final DateTimeFormatter FILE_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private static final OperationMetrics ORDER_SUMMARY = Metrics.operation("report.orderSummary.job");
+    private static final OperationMetrics STATEMENT_BATCH = Metrics.operation("report.statementBatch");
+    
+    private final ExecutorService workers;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final List<ReportJob> jobs = new CopyOnWriteArrayList<>();
+    private final List<ReportJobListener> listeners = new CopyOnWriteArrayList<>();
+    
+    public static ReportJobQueue getInstance() {
+        return instance;
+    }
+    
+    private ReportJobQueue() {
+        int size = Math.max(1, Integer.getInteger("aim.reportJobs.workers", 2));
+        AtomicInteger threadNo = new AtomicInteger();
+        workers = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "report-worker-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+    
+    // Queue an order summary report written to reports/OrderSummary-<time>-<id>.pdf
+    public ReportJob submitOrderSummary() {
+        long id = nextId.getAndIncrement();
+        File output = new File(REPORT_DIR, "OrderSummary-" + FILE_STAMP.format(LocalDateTime.now()) + "-" + id + ".pdf");
+        ReportJob job = new ReportJob(id, "Order Summary", output, this);
+        jobs.add(job);
+        fireChanged(job);
+        job.setFuture(workers.submit(() -> runOrderSummary(job)));
+        return job;
+    }
+    
+    // Queue statements for every customer for the month, written to reports/statements-<yyyy-MM>/
+    // Resubmitting a month resumes from that directory's manifest
+    public ReportJob submitStatements(YearMonth period) {
+        long id = nextId.getAndIncrement();
+        File output = new File(REPORT_DIR, "statements-" + period);
+        ReportJob job = new ReportJob(id, "Statements " + period, output, this);
+        jobs.add(job);
+        fireChanged(job);
+        job.setFuture(workers.submit(() -> runStatements(job, period)));
+        return job;
+    }
+    
+    // All jobs submitted this session, oldest first
+    public List<ReportJob> getJobs() {
+        return new ArrayList<>(jobs);
+    }
+    
+    // Forget finished jobs; their files stay on disk
+    public void clearFinished() {
+        jobs.removeIf(ReportJob::isFinished);
+    }
+    
+    public void addListener(ReportJobListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(ReportJobListener listener) {
+        listeners.remove(listener);
+    }
+    
+    void fireChanged(ReportJob job) {
+        for (ReportJobListener listener : listeners) {
+            try {
+                listener.jobChanged(job);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private void runOrderSummary(ReportJob job) {
+        if (!begin(job)) return;
+        
+        File output = job.getOutput();
+        File dir = output.getAbsoluteFile().getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File partial = new File(dir, output.getName() + ".part");
+        
+        long started = System.nanoTime();
+        try (Connection conn = DB.openReadConn()) {
+            // Range boundaries are read in one transaction
+            conn.setAutoCommit(false);
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial))) {
+                ChunkedOrderSummaryReport report = new ChunkedOrderSummaryReport();
+                report.setProgress(job);
+                report.write(conn, out, dir);
+            }
+            Files.move(partial.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            ORDER_SUMMARY.recordSince(started);
+            job.finish(ReportJob.State.DONE, null);
+        } catch (Exception e) {
+            partial.delete();
+            fail(job, e, ORDER_SUMMARY, started);
+        }
+    }
+    
+    private void runStatements(ReportJob job, YearMonth period) {
+        if (!begin(job)) return;
+        
+        long started = System.nanoTime();
+        try {
+            StatementBatch batch = new StatementBatch(period, job.getOutput());
+            batch.setProgress(job);
+            batch.run();
+            STATEMENT_BATCH.recordSince(started);
+            job.finish(ReportJob.State.DONE, null);
+        } catch (Exception e) {
+            fail(job, e, STATEMENT_BATCH, started);
+        }
+    }
+    
+    // Mark the job running, unless it was cancelled while queued
+    private boolean begin(ReportJob job) {
+        if (job.isCancelled()) {
+            job.finish(ReportJob.State.CANCELLED, null);
+            return false;
+        }
+        job.start();
+        return true;
+    }
+    
+    // Closing a half-written document can fail too; a cancel still counts as a cancel
+    // Only real failures are counted as errors in the job's metrics
+    private void fail(ReportJob job, Exception e, OperationMetrics metrics, long started) {
+        if (e instanceof CancellationException || job.isCancelled()) {
+            job.finish(ReportJob.State.CANCELLED, null);
+        } else {
+            metrics.failedSince(started);
+            e.printStackTrace();
+            job.finish(ReportJob.State.FAILED, e.getMessage());
+        }
+    }
+}
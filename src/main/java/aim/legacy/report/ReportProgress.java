@@ -0,0 +1,15 @@
+/**
+ * ReportProgress.java
+ * 
+ * Progress sink for a running report.
+ * Reports call it as rows are written and stop early once it says cancelled.
+ */
+package aim.legacy.report;
+
+public interface ReportProgress {
+    
+    // Rows written so far out of the estimated total (-1 when unknown)
+    void rowsDone(long done, long total);
+    
+    boolean isCancelled();
+}
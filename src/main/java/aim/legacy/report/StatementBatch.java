@@ -0,0 +1,473 @@
+/**
+ * StatementBatch.java
+ * 
+ * Monthly customer statements: one PDF per customer listing their orders and
+ * order lines for the period.
+ * Customers are cut into small cust_id ranges that a pool of workers pulls
+ * from a shared queue; each worker reads through its own connection with one
+ * streaming join per range. Finished statements are recorded in manifest.csv
+ * in the output directory, and a rerun skips every customer already listed
+ * there, so an interrupted batch picks up where it stopped.
+ * 
+ * Can also be run headless: StatementBatch <yyyy-MM> [outputDir]
+ */
+package aim.legacy.report;
+
+import aim.legacy.db.DB;
+import aim.legacy.jfr.ReportPhaseEvent;
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.pdf.PdfPCell;
+import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class StatementBatch {
+    
+    public static final String MANIFEST = "manifest.csv";
+    
+    // Customers per work item; small enough to keep all workers busy to the end
+    private static final int RANGE_CUSTOMERS = Integer.getInteger("aim.statements.rangeCustomers", 250);
+    
+    private static final String STATEMENT_SQL =
+        "SELECT c.cust_id, c.cust_name, c.email, c.address, " +
+        "o.order_id, o.order_date, o.subtotal, o.discount, o.tax, o.total, " +
+        "l.prod_name, l.quantity, l.unit_price " +
+        "FROM customer c " +
+        "LEFT JOIN orders o ON o.cust_id = c.cust_id AND o.order_date >= ? AND o.order_date < ? " +
+        "LEFT JOIN order_line l ON l.order_id = o.order_id " +
+        "WHERE c.cust_id BETWEEN ? AND ? " +
+        "ORDER BY c.cust_id, o.order_id, l.line_id";
+    
+    private static final String[] LINE_HEADERS = {"Product", "Quantity", "Unit Price", "Amount"};
+    private static final float[] LINE_WIDTHS = {4.0f, 1.2f, 1.5f, 1.5f};
+    
+    private static final OperationMetrics STATEMENT = Metrics.operation("report.statement");
+    
+    private final YearMonth period;
+    private final File outputDir;
+    private final int workers;
+    private ReportProgress progress = OrderSummaryReport.NO_PROGRESS;
+    
+    // Counts for the finished (or stopped) batch
+    public static class Result {
+        public final long customers;
+        public final long written;
+        public final long skipped;
+        
+        Result(long customers, long written, long skipped) {
+            this.customers = customers;
+            this.written = written;
+            this.skipped = skipped;
+        }
+    }
+    
+    public StatementBatch(YearMonth period, File outputDir) {
+        this.period = period;
+        this.outputDir = outputDir;
+        this.workers = Math.max(1, Integer.getInteger("aim.statements.workers", Runtime.getRuntime().availableProcessors()));
+    }
+    
+    public void setProgress(ReportProgress progress) {
+        this.progress = progress == null ? OrderSummaryReport.NO_PROGRESS : progress;
+    }
+    
+    // Write every missing statement for the period
+    // Throws CancellationException when the progress sink cancels the batch
+    public Result run() throws SQLException, IOException, DocumentException {
+        outputDir.mkdirs();
+        File manifestFile = new File(outputDir, MANIFEST);
+        Set<Long> done = readManifest(manifestFile);
+        
+        List<long[]> ranges = new ArrayList<>();
+        long customers;
+        try (Connection conn = DB.openReadConn()) {
+            customers = splitCustomers(conn, ranges);
+        }
+        long skipped = done.size();
+        progress.rowsDone(skipped, customers);
+        
+        AtomicLong completed = new AtomicLong(skipped);
+        AtomicLong written = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        ConcurrentLinkedQueue<long[]> queue = new ConcurrentLinkedQueue<>(ranges);
+        
+        boolean newManifest = !manifestFile.exists();
+        if (!newManifest) {
+            endWithNewline(manifestFile);
+        }
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "statement-worker-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try (PrintWriter manifest = new PrintWriter(new FileWriter(manifestFile, true))) {
+            if (newManifest) {
+                manifest.println("cust_id,file,orders,total");
+                manifest.flush();
+            }
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                tasks.add(pool.submit(() -> {
+                    work(queue, done, manifest, completed, written, customers, failed);
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException e) {
+                    failed.set(true);
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Statement batch interrupted");
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    Throwable cause = e.getCause();
+                    if (cause instanceof SQLException) throw (SQLException) cause;
+                    if (cause instanceof DocumentException) throw (DocumentException) cause;
+                    if (cause instanceof IOException) throw (IOException) cause;
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return new Result(customers, written.get(), skipped);
+    }
+    
+    // Worker loop: take ranges until the queue is empty, the batch is cancelled or another worker failed
+    private void work(ConcurrentLinkedQueue<long[]> queue, Set<Long> done, PrintWriter manifest,
+            AtomicLong completed, AtomicLong written, long customers, AtomicBoolean failed)
+            throws SQLException, IOException, DocumentException {
+        try (Connection conn = DB.openReadConn();
+             PreparedStatement ps = conn.prepareStatement(STATEMENT_SQL)) {
+            ps.setString(1, period.atDay(1).toString());
+            ps.setString(2, period.plusMonths(1).atDay(1).toString());
+            long[] range;
+            while ((range = queue.poll()) != null) {
+                ps.setLong(3, range[0]);
+                ps.setLong(4, range[1]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    boolean more = rs.next();
+                    while (more) {
+                        if (failed.get() || progress.isCancelled()) {
+                            throw new CancellationException("Statement batch cancelled");
+                        }
+                        long custId = rs.getLong("cust_id");
+                        if (done.contains(custId)) {
+                            more = skipCustomer(rs, custId);
+                            continue;
+                        }
+                        CustomerStatement statement = new CustomerStatement(custId);
+                        more = writeStatement(rs, statement);
+                        synchronized (manifest) {
+                            manifest.println(custId + "," + statement.fileName + "," + statement.orders + "," + statement.total.toPlainString());
+                            manifest.flush();
+                        }
+                        written.incrementAndGet();
+                        progress.rowsDone(completed.incrementAndGet(), customers);
+                    }
+                }
+            }
+        } catch (RuntimeException | SQLException | IOException | DocumentException e) {
+            failed.set(true);
+            throw e;
+        }
+    }
+    
+    // What was written for one customer
+    private static class CustomerStatement {
+        final long custId;
+        final String fileName;
+        int orders;
+        BigDecimal total = BigDecimal.ZERO;
+        
+        CustomerStatement(long custId) {
+            this.custId = custId;
+            this.fileName = "statement-" + custId + ".pdf";
+        }
+    }
+    
+    // Consume the rows of a customer that is already done; returns whether rows remain
+    private static boolean skipCustomer(ResultSet rs, long custId) throws SQLException {
+        boolean more;
+        do {
+            more = rs.next();
+        } while (more && rs.getLong("cust_id") == custId);
+        return more;
+    }
+    
+    // Write one customer's statement from their rows, leaving rs on the next customer
+    // The PDF is written to a .part file and renamed once complete
+    private boolean writeStatement(ResultSet rs, CustomerStatement statement) throws SQLException, IOException, DocumentException {
+        long started = System.nanoTime();
+        try {
+            boolean more = renderStatement(rs, statement);
+            STATEMENT.recordSince(started);
+            return more;
+        } catch (SQLException | IOException | DocumentException | RuntimeException e) {
+            STATEMENT.failedSince(started);
+            throw e;
+        }
+    }
+    
+    private boolean renderStatement(ResultSet rs, CustomerStatement statement) throws SQLException, IOException, DocumentException {
+        File file = new File(outputDir, statement.fileName);
+        File partial = new File(outputDir, statement.fileName + ".part");
+        ReportPhaseEvent phase = ReportPhaseEvent.start("statement", "customer");
+        boolean more;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial))) {
+            Document document = new Document(PageSize.LETTER, 50, 50, 50, 50);
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setCloseStream(false);
+            document.open();
+            try {
+                writeHeading(document, rs);
+                more = writeOrders(document, rs, statement);
+            } finally {
+                document.close();
+            }
+        } catch (IOException | SQLException | DocumentException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        phase.finish(statement.orders);
+        return more;
+    }
+    
+    private void writeHeading(Document document, ResultSet rs) throws SQLException, DocumentException {
+        Paragraph company = new Paragraph("AIM Order Entry System", OrderSummaryReport.HEADER_FONT);
+        company.setAlignment(Element.ALIGN_CENTER);
+        document.add(company);
+        
+        Paragraph title = new Paragraph("Customer Statement - " + period, OrderSummaryReport.TITLE_FONT);
+        title.setAlignment(Element.ALIGN_CENTER);
+        document.add(title);
+        document.add(new Paragraph(" "));
+        
+        document.add(new Paragraph(rs.getString("cust_name"), OrderSummaryReport.HEADER_FONT));
+        String address = rs.getString("address");
+        if (address != null && !address.isEmpty()) {
+            document.add(new Paragraph(address, OrderSummaryReport.NORMAL_FONT));
+        }
+        String email = rs.getString("email");
+        if (email != null && !email.isEmpty()) {
+            document.add(new Paragraph(email, OrderSummaryReport.NORMAL_FONT));
+        }
+        document.add(new Paragraph("Customer #" + rs.getLong("cust_id"), OrderSummaryReport.SMALL_FONT));
+        document.add(new Paragraph(" "));
+    }
+    
+    // One table per order with its lines and totals, then the period total
+    private boolean writeOrders(Document document, ResultSet rs, CustomerStatement statement) throws SQLException, DocumentException {
+        boolean more = true;
+        long orderId = -1;
+        PdfPTable table = null;
+        BigDecimal[] orderTotals = null;
+        while (more && rs.getLong("cust_id") == statement.custId) {
+            long rowOrder = rs.getLong("order_id");
+            if (!rs.wasNull()) {
+                if (rowOrder != orderId) {
+                    if (table != null) {
+                        finishOrder(document, table, orderTotals);
+                    }
+                    orderId = rowOrder;
+                    statement.orders++;
+                    orderTotals = new BigDecimal[]{
+                        money(rs, "subtotal"), money(rs, "discount"), money(rs, "tax"), money(rs, "total")};
+                    statement.total = statement.total.add(orderTotals[3]);
+                    table = startOrder(document, orderId, rs.getString("order_date"));
+                }
+                String product = rs.getString("prod_name");
+                if (product != null) {
+                    int qty = rs.getInt("quantity");
+                    BigDecimal price = money(rs, "unit_price");
+                    PdfPCell cell = table.getDefaultCell();
+                    cell.setHorizontalAlignment(Element.ALIGN_LEFT);
+                    table.addCell(new Phrase(product, OrderSummaryReport.NORMAL_FONT));
+                    cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+                    table.addCell(new Phrase(String.valueOf(qty), OrderSummaryReport.NORMAL_FONT));
+                    table.addCell(new Phrase("$" + price.toPlainString(), OrderSummaryReport.NORMAL_FONT));
+                    table.addCell(new Phrase("$" + price.multiply(BigDecimal.valueOf(qty)).setScale(2, RoundingMode.HALF_UP).toPlainString(),
+                        OrderSummaryReport.NORMAL_FONT));
+                }
+            }
+            more = rs.next();
+        }
+        if (table != null) {
+            finishOrder(document, table, orderTotals);
+        }
+        
+        if (statement.orders == 0) {
+            document.add(new Paragraph("No orders in this period.", OrderSummaryReport.NORMAL_FONT));
+        }
+        document.add(new Paragraph(" "));
+        Paragraph total = new Paragraph(statement.orders + " order(s), total $" + statement.total.toPlainString(),
+            OrderSummaryReport.HEADER_FONT);
+        total.setAlignment(Element.ALIGN_RIGHT);
+        document.add(total);
+        return more;
+    }
+    
+    private static PdfPTable startOrder(Document document, long orderId, String orderDate) throws DocumentException {
+        document.add(new Paragraph("Order #" + orderId + "  " + OrderSummaryReport.formatDate(orderDate),
+            OrderSummaryReport.HEADER_FONT));
+        PdfPTable table = new PdfPTable(LINE_HEADERS.length);
+        table.setWidthPercentage(100);
+        table.setWidths(LINE_WIDTHS);
+        table.setSpacingBefore(4);
+        table.setSpacingAfter(10);
+        PdfPCell cell = table.getDefaultCell();
+        cell.setPadding(4);
+        cell.setHorizontalAlignment(Element.ALIGN_CENTER);
+        cell.setBackgroundColor(OrderSummaryReport.HEADER_COLOR);
+        for (String header : LINE_HEADERS) {
+            table.addCell(new Phrase(header, OrderSummaryReport.NORMAL_FONT));
+        }
+        cell.setBackgroundColor(BaseColor.WHITE);
+        return table;
+    }
+    
+    private static void finishOrder(Document document, PdfPTable table, BigDecimal[] totals) throws DocumentException {
+        String[] labels = {"Subtotal", "Discount", "Tax", "Total"};
+        PdfPCell cell = table.getDefaultCell();
+        cell.setBackgroundColor(OrderSummaryReport.SUMMARY_COLOR);
+        cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
+        for (int i = 0; i < labels.length; i++) {
+            PdfPCell label = new PdfPCell(cell);
+            label.setColspan(3);
+            label.setPhrase(new Phrase(labels[i] + ":", OrderSummaryReport.NORMAL_FONT));
+            table.addCell(label);
+            table.addCell(new Phrase("$" + totals[i].toPlainString(), OrderSummaryReport.NORMAL_FONT));
+        }
+        document.add(table);
+    }
+    
+    private static BigDecimal money(ResultSet rs, String column) throws SQLException {
+        String value = rs.getString(column);
+        return value == null ? BigDecimal.ZERO.setScale(2) : new BigDecimal(value).setScale(2, RoundingMode.HALF_UP);
+    }
+    
+    // Cut the customer list into ranges of RANGE_CUSTOMERS ids; returns the customer count
+    private static long splitCustomers(Connection conn, List<long[]> ranges) throws SQLException {
+        long count = 0;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(OrderSummaryReport.FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery("SELECT cust_id FROM customer ORDER BY cust_id")) {
+                long start = 0;
+                long last = 0;
+                int inRange = 0;
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    count++;
+                    if (inRange == 0) {
+                        start = last;
+                    }
+                    if (++inRange == RANGE_CUSTOMERS) {
+                        ranges.add(new long[]{start, last});
+                        inRange = 0;
+                    }
+                }
+                if (inRange > 0) {
+                    ranges.add(new long[]{start, last});
+                }
+            }
+        }
+        return count;
+    }
+    
+    // Customers already listed in the manifest whose statement file is present
+    // A torn last line from an interrupted run is ignored
+    private Set<Long> readManifest(File manifestFile) throws IOException {
+        if (!manifestFile.exists()) {
+            return Collections.emptySet();
+        }
+        Set<Long> done = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifestFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length < 4) continue;
+                try {
+                    long custId = Long.parseLong(fields[0]);
+                    if (new File(outputDir, fields[1]).exists()) {
+                        done.add(custId);
+                    }
+                } catch (NumberFormatException e) {
+                    // Header or partial line
+                }
+            }
+        }
+        return done;
+    }
+    
+    // An interrupted run can leave a torn last line; start appends on a fresh line
+    private static void endWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length == 0) return;
+            raf.seek(length - 1);
+            if (raf.read() != '\n') {
+                raf.write('\n');
+            }
+        }
+    }
+    
+    // Headless entry point for overnight runs
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: StatementBatch <yyyy-MM> [outputDir]");
+            System.exit(2);
+        }
+        YearMonth period = YearMonth.parse(args[0]);
+        File dir = args.length > 1 ? new File(args[1]) : new File("reports", "statements-" + period);
+        
+        StatementBatch batch = new StatementBatch(period, dir);
+        long started = System.currentTimeMillis();
+        Result result = batch.run();
+        System.out.println("Statements for " + period + ": " + result.written + " written, " + result.skipped +
+            " already done, " + result.customers + " customers, " + (System.currentTimeMillis() - started) + " ms -> " + dir);
+        DB.closeConn();
+    }
+}
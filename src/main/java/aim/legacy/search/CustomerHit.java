@@ -0,0 +1,39 @@
+/**
+ * CustomerHit.java
+ * 
+ * A customer returned by full-text search, with its relevance score
+ * and the text that matched (contact details or an ordered product).
+ */
+package aim.legacy.search;
+
+import aim.legacy.domain.Customer;
+
+public class CustomerHit {
+    private final Customer customer;
+    private final double score;
+    private final String matchedOn;
+
+    public CustomerHit(Customer customer, double score, String matchedOn) {
+        this.customer = customer;
+        this.score = score;
+        this.matchedOn = matchedOn;
+    }
+
+    public Customer getCustomer() {
+        return customer;
+    }
+
+    // Lower is better, as returned by SQLite's bm25()
+    public double getScore() {
+        return score;
+    }
+
+    public String getMatchedOn() {
+        return matchedOn;
+    }
+
+    @Override
+    public String toString() {
+        return customer + " [" + matchedOn + "]";
+    }
+}
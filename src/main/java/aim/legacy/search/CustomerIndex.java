@@ -0,0 +1,543 @@
+/**
+ * CustomerIndex.java
+ * 
+ * In-memory trigram index over customer name, email and phone.
+ * Answers case-insensitive substring queries without touching the database:
+ * the trigrams of the query are intersected to get candidates, which are then
+ * verified and ranked (exact name, name prefix, word prefix, substring, then
+ * email and phone matches). Only the best limit hits are kept while ranking.
+ * Queries shorter than three characters have no trigrams and return nothing;
+ * callers answer those some other way.
+ * 
+ * The index is rebuilt in parallel at startup and kept current by the
+ * customer screens through put() and remove(). Changes made while a rebuild
+ * is loading are replayed onto the new index before it is swapped in, so
+ * they are not lost to the older snapshot. It stops serving queries if
+ * its estimated footprint grows past the configured budget, in which case
+ * callers fall back to SQL.
+ */
+package aim.legacy.search;
+
+import aim.legacy.db.DB;
+import aim.legacy.domain.Customer;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+public class CustomerIndex implements CustomerIndexMXBean {
+    
+    // Default budget of 256 MB, override with -Daim.customerIndex.maxBytes
+    private static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    
+    // Rough per-object costs used for the footprint estimate (64-bit JVM, compressed oops)
+    private static final int DOC_OVERHEAD_BYTES = 160;
+    private static final int GRAM_OVERHEAD_BYTES = 96;
+    
+    private static final int MIN_GRAM = 3;
+    
+    // Shortest query the index answers
+    public static final int MIN_QUERY_LENGTH = MIN_GRAM;
+    private static final int REBUILD_CHUNK = 10000;
+    
+    private static CustomerIndex instance;
+    
+    private final long maxBytes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    private Map<Long, Doc> docs = new HashMap<>();
+    private Map<Long, Postings> grams = new HashMap<>();
+    private long estimatedBytes;
+    // Changes made during a rebuild, by customer id; null value means removed
+    private Map<Long, Customer> changedDuringRebuild;
+    private volatile boolean ready;
+    private volatile long lastRebuildMillis;
+    
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+    
+    // Indexed form of a customer: the original record plus normalized fields
+    private static class Doc {
+        final Customer customer;
+        final String name;
+        final String email;
+        final String phone;
+        final String phoneDigits;
+        
+        Doc(Customer c) {
+            customer = c;
+            name = normalize(c.getName());
+            email = normalize(c.getEmail());
+            phone = normalize(c.getPhone());
+            phoneDigits = digitsOf(phone);
+        }
+        
+        long bytes() {
+            return DOC_OVERHEAD_BYTES + 2L * (name.length() + email.length() + phone.length() + phoneDigits.length())
+                + 2L * (length(customer.getName()) + length(customer.getEmail()) + length(customer.getPhone())
+                    + length(customer.getAddress()));
+        }
+    }
+    
+    // Sorted, growable list of customer ids for one trigram
+    private static class Postings {
+        long[] ids = new long[2];
+        int size;
+        
+        void add(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -pos - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+        
+        boolean remove(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+        
+        boolean contains(long id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+        
+        // Used by the bulk rebuild, which appends unsorted and sorts once
+        void append(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+        
+        void sortAndTrim() {
+            Arrays.sort(ids, 0, size);
+            ids = Arrays.copyOf(ids, size);
+        }
+    }
+    
+    public CustomerIndex(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    // Shared index used by the customer screens
+    // Registered with the platform MBean server on first use
+    public static synchronized CustomerIndex getInstance() {
+        if (instance == null) {
+            instance = new CustomerIndex(Long.getLong("aim.customerIndex.maxBytes", DEFAULT_MAX_BYTES));
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    instance, new ObjectName("aim.legacy:type=CustomerIndex"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return instance;
+    }
+    
+    // Load every customer and build the index from scratch
+    // Chunks are indexed in parallel and merged before being swapped in
+    public synchronized void rebuild() throws SQLException {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            rebuildFromDatabase();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+    
+    private void rebuildFromDatabase() throws SQLException {
+        long start = System.currentTimeMillis();
+        
+        // Own read connection: the shared one may be inside an uncommitted customer edit
+        List<Customer> customers = new ArrayList<>();
+        try (Connection conn = DB.openReadConn();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer")) {
+            while (rs.next()) {
+                customers.add(new Customer(
+                    rs.getLong("cust_id"),
+                    rs.getString("cust_name"),
+                    rs.getString("email"),
+                    rs.getString("phone"),
+                    rs.getString("address"),
+                    rs.getString("customer_type")));
+            }
+        }
+        
+        List<List<Customer>> chunks = new ArrayList<>();
+        for (int i = 0; i < customers.size(); i += REBUILD_CHUNK) {
+            chunks.add(customers.subList(i, Math.min(customers.size(), i + REBUILD_CHUNK)));
+        }
+        
+        List<Map<Long, Postings>> partials = chunks.parallelStream()
+            .map(CustomerIndex::indexChunk)
+            .collect(Collectors.toList());
+        
+        Map<Long, Postings> merged = new HashMap<>();
+        for (Map<Long, Postings> partial : partials) {
+            for (Map.Entry<Long, Postings> e : partial.entrySet()) {
+                Postings target = merged.get(e.getKey());
+                if (target == null) {
+                    merged.put(e.getKey(), e.getValue());
+                } else {
+                    Postings p = e.getValue();
+                    for (int i = 0; i < p.size; i++) {
+                        target.append(p.ids[i]);
+                    }
+                }
+            }
+        }
+        merged.values().parallelStream().forEach(Postings::sortAndTrim);
+        
+        Map<Long, Doc> newDocs = new ConcurrentHashMap<>();
+        customers.parallelStream().forEach(c -> newDocs.put(c.getId(), new Doc(c)));
+        
+        long bytes = 0;
+        for (Doc d : newDocs.values()) {
+            bytes += d.bytes();
+        }
+        for (Postings p : merged.values()) {
+            bytes += GRAM_OVERHEAD_BYTES + 8L * p.ids.length;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            docs = new HashMap<>(newDocs);
+            grams = merged;
+            estimatedBytes = bytes;
+            // The load may predate these; apply them again on top
+            for (Map.Entry<Long, Customer> change : changedDuringRebuild.entrySet()) {
+                if (change.getValue() == null) {
+                    removeInternal(change.getKey());
+                } else {
+                    putInternal(change.getValue());
+                }
+            }
+            bytes = estimatedBytes;
+            ready = bytes <= maxBytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        lastRebuildMillis = System.currentTimeMillis() - start;
+        
+        if (!ready) {
+            System.err.println("Customer index disabled: estimated " + bytes + " bytes exceeds budget of " + maxBytes);
+        }
+    }
+    
+    private static Map<Long, Postings> indexChunk(List<Customer> chunk) {
+        Map<Long, Postings> local = new HashMap<>();
+        for (Customer c : chunk) {
+            for (long gram : gramsOf(new Doc(c))) {
+                Postings p = local.get(gram);
+                if (p == null) {
+                    p = new Postings();
+                    local.put(gram, p);
+                }
+                p.append(c.getId());
+            }
+        }
+        return local;
+    }
+    
+    // Add or replace a customer after it was inserted or updated
+    public void put(Customer customer) {
+        lock.writeLock().lock();
+        try {
+            putInternal(customer);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(customer.getId(), customer);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    // Remove a customer after it was deleted
+    public void remove(long custId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(custId);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(custId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void putInternal(Customer customer) {
+        Doc doc = new Doc(customer);
+        removeInternal(customer.getId());
+        docs.put(customer.getId(), doc);
+        estimatedBytes += doc.bytes();
+        for (long gram : gramsOf(doc)) {
+            Postings p = grams.get(gram);
+            if (p == null) {
+                p = new Postings();
+                grams.put(gram, p);
+                estimatedBytes += GRAM_OVERHEAD_BYTES;
+            }
+            int before = p.ids.length;
+            p.add(customer.getId());
+            estimatedBytes += 8L * (p.ids.length - before);
+        }
+        if (estimatedBytes > maxBytes) {
+            ready = false;
+        }
+    }
+    
+    private void removeInternal(long custId) {
+        Doc old = docs.remove(custId);
+        if (old == null) {
+            return;
+        }
+        estimatedBytes -= old.bytes();
+        for (long gram : gramsOf(old)) {
+            Postings p = grams.get(gram);
+            if (p != null && p.remove(custId) && p.size == 0) {
+                grams.remove(gram);
+                estimatedBytes -= GRAM_OVERHEAD_BYTES + 8L * p.ids.length;
+            }
+        }
+    }
+    
+    // Find customers whose name, email or phone contains the query
+    // Results are ranked best match first and capped at limit
+    // Queries shorter than MIN_QUERY_LENGTH return nothing
+    public List<Customer> search(String query, int limit) {
+        long start = System.nanoTime();
+        String q = normalize(query);
+        List<Customer> result = new ArrayList<>();
+        if (q.length() < MIN_QUERY_LENGTH || limit <= 0) {
+            return result;
+        }
+        String qDigits = digitsOf(q);
+        
+        // Worst kept hit at the head, so each new hit costs log(limit)
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(limit, 1024) + 1, RANKING.reversed());
+        lock.readLock().lock();
+        try {
+            for (long id : candidates(q)) {
+                Doc d = docs.get(id);
+                int score = d == null ? 0 : score(d, q, qDigits);
+                if (score > 0) {
+                    keep(best, new Hit(d, score), limit);
+                }
+            }
+            // Digit-only queries also match phones typed without separators
+            if (!qDigits.isEmpty() && !qDigits.equals(q) && qDigits.length() >= MIN_GRAM) {
+                for (long id : candidates(qDigits)) {
+                    Doc d = docs.get(id);
+                    if (d != null && d.phoneDigits.contains(qDigits) && score(d, q, qDigits) == 0) {
+                        keep(best, new Hit(d, 10), limit);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(RANKING);
+        for (Hit h : hits) {
+            result.add(h.doc.customer);
+        }
+        
+        queryCount.incrementAndGet();
+        queryNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+    
+    // Best score first, then by name, then by id
+    private static final Comparator<Hit> RANKING = (a, b) -> {
+        if (a.score != b.score) return Integer.compare(b.score, a.score);
+        int byName = a.doc.name.compareTo(b.doc.name);
+        if (byName != 0) return byName;
+        return Long.compare(a.doc.customer.getId(), b.doc.customer.getId());
+    };
+    
+    private static void keep(PriorityQueue<Hit> best, Hit hit, int limit) {
+        if (best.size() < limit) {
+            best.add(hit);
+        } else if (RANKING.compare(hit, best.peek()) < 0) {
+            best.poll();
+            best.add(hit);
+        }
+    }
+    
+    private static class Hit {
+        final Doc doc;
+        final int score;
+        
+        Hit(Doc doc, int score) {
+            this.doc = doc;
+            this.score = score;
+        }
+    }
+    
+    // Intersect the postings of every trigram in the query, smallest list first
+    private long[] candidates(String q) {
+        List<Postings> lists = new ArrayList<>();
+        for (long gram : gramsOf(q)) {
+            Postings p = grams.get(gram);
+            if (p == null) {
+                return new long[0];
+            }
+            lists.add(p);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        
+        Postings smallest = lists.get(0);
+        long[] out = new long[smallest.size];
+        int n = 0;
+        for (int i = 0; i < smallest.size; i++) {
+            long id = smallest.ids[i];
+            boolean all = true;
+            for (int j = 1; j < lists.size() && all; j++) {
+                all = lists.get(j).contains(id);
+            }
+            if (all) {
+                out[n++] = id;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+    
+    // Ranking: name matches beat email matches, which beat phone matches
+    private static int score(Doc d, String q, String qDigits) {
+        if (d.name.equals(q)) return 100;
+        if (d.name.startsWith(q)) return 80;
+        if (d.name.contains(" " + q)) return 60;
+        if (d.name.contains(q)) return 40;
+        if (d.email.startsWith(q)) return 30;
+        if (d.email.contains(q)) return 20;
+        if (d.phone.contains(q)) return 15;
+        if (qDigits.equals(q) && d.phoneDigits.contains(q)) return 10;
+        return 0;
+    }
+    
+    private static Set<Long> gramsOf(Doc d) {
+        Set<Long> out = new HashSet<>();
+        addGrams(d.name, out);
+        addGrams(d.email, out);
+        addGrams(d.phone, out);
+        addGrams(d.phoneDigits, out);
+        return out;
+    }
+    
+    private static Set<Long> gramsOf(String text) {
+        Set<Long> out = new HashSet<>();
+        addGrams(text, out);
+        return out;
+    }
+    
+    // Three UTF-16 chars packed into one long: no String per trigram
+    private static void addGrams(String s, Set<Long> out) {
+        for (int i = 0; i + MIN_GRAM <= s.length(); i++) {
+            out.add(((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+        }
+    }
+    
+    private static String normalize(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    private static String digitsOf(String s) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+    
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+    
+    @Override
+    public int getDocumentCount() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public int getGramCount() {
+        lock.readLock().lock();
+        try {
+            return grams.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public long getEstimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return estimatedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    @Override
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    @Override
+    public long getLastRebuildMillis() {
+        return lastRebuildMillis;
+    }
+    
+    @Override
+    public long getQueryCount() {
+        return queryCount.get();
+    }
+    
+    @Override
+    public double getAverageQueryMicros() {
+        long n = queryCount.get();
+        return n == 0 ? 0.0 : queryNanos.get() / 1000.0 / n;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * CustomerIndexMXBean.java
+ * 
+ * JMX view of the in-memory customer search index.
+ * Visible in JConsole/VisualVM under aim.legacy:type=CustomerIndex.
+ */
+package aim.legacy.search;
+
+public interface CustomerIndexMXBean {
+    
+    boolean isReady();
+    
+    int getDocumentCount();
+    
+    int getGramCount();
+    
+    long getEstimatedBytes();
+    
+    long getMaxBytes();
+    
+    long getLastRebuildMillis();
+    
+    long getQueryCount();
+    
+    double getAverageQueryMicros();
+}
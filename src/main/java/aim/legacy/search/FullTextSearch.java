@@ -0,0 +1,144 @@
+/**
+ * FullTextSearch.java
+ * 
+ * Ranked, paginated search over the FTS5 tables created by DB.
+ * customer_fts covers name, email, phone and address; order_line_fts covers
+ * the product names on order lines, so "webcam" finds every customer who
+ * ordered one. Ranking uses bm25 with name weighted above email, phone and
+ * address, and customers matched directly rank ahead of equal order matches.
+ */
+package aim.legacy.search;
+
+import aim.legacy.domain.Customer;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FullTextSearch {
+    
+    // bm25 column weights for customer_fts: name, email, phone, address
+    private static final String CUSTOMER_RANK = "bm25(customer_fts, 10.0, 4.0, 2.0, 1.0)";
+    
+    // Customers matching on contact details or on products they ordered
+    // Each customer appears once, scored by its best match (SQLite takes bare
+    // columns from the row that produced MIN)
+    private static final String CUSTOMER_SQL =
+        "SELECT c.cust_id, c.cust_name, c.email, c.phone, c.address, c.customer_type, " +
+        "MIN(h.score) AS score, h.matched AS matched " +
+        "FROM (" +
+        "  SELECT rowid AS cust_id, " + CUSTOMER_RANK + " AS score, 'contact' AS matched " +
+        "  FROM customer_fts WHERE customer_fts MATCH ? " +
+        "  UNION ALL " +
+        "  SELECT o.cust_id, m.score / 2 AS score, 'ordered ' || l.prod_name AS matched " +
+        "  FROM (SELECT rowid AS line_id, rank AS score FROM order_line_fts WHERE order_line_fts MATCH ?) m " +
+        "  JOIN order_line l ON l.line_id = m.line_id " +
+        "  JOIN orders o ON o.order_id = l.order_id" +
+        ") h JOIN customer c ON c.cust_id = h.cust_id " +
+        "GROUP BY c.cust_id ORDER BY score, c.cust_id LIMIT ? OFFSET ?";
+    
+    private static final String ORDER_SQL =
+        "SELECT o.order_id, o.cust_id, o.cust_name, o.order_date, MIN(m.score) AS score, l.prod_name " +
+        "FROM (SELECT rowid AS line_id, rank AS score FROM order_line_fts WHERE order_line_fts MATCH ?) m " +
+        "JOIN order_line l ON l.line_id = m.line_id " +
+        "JOIN orders o ON o.order_id = l.order_id " +
+        "GROUP BY o.order_id ORDER BY score, o.order_id DESC LIMIT ? OFFSET ?";
+    
+    // Search customers by any contact field or by ordered product
+    // page is zero-based; returns an empty page for blank input
+    // Callers off the EDT pass their own read connection (DB.openReadConn), not DB.getConn
+    public static SearchPage<CustomerHit> searchCustomers(Connection conn, String text, int page, int pageSize) throws SQLException {
+        String match = toMatchExpression(text);
+        List<CustomerHit> hits = new ArrayList<>();
+        if (match == null) {
+            return new SearchPage<>(hits, page, pageSize, false);
+        }
+        
+        PreparedStatement ps = conn.prepareStatement(CUSTOMER_SQL);
+        ps.setString(1, match);
+        ps.setString(2, match);
+        ps.setInt(3, pageSize + 1);
+        ps.setInt(4, page * pageSize);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            Customer c = new Customer(
+                rs.getLong("cust_id"),
+                rs.getString("cust_name"),
+                rs.getString("email"),
+                rs.getString("phone"),
+                rs.getString("address"),
+                rs.getString("customer_type"));
+            hits.add(new CustomerHit(c, rs.getDouble("score"), rs.getString("matched")));
+        }
+        rs.close();
+        ps.close();
+        
+        return trim(hits, page, pageSize);
+    }
+    
+    // Search orders by the products on their lines
+    public static SearchPage<OrderHit> searchOrders(Connection conn, String text, int page, int pageSize) throws SQLException {
+        String match = toMatchExpression(text);
+        List<OrderHit> hits = new ArrayList<>();
+        if (match == null) {
+            return new SearchPage<>(hits, page, pageSize, false);
+        }
+        
+        PreparedStatement ps = conn.prepareStatement(ORDER_SQL);
+        ps.setString(1, match);
+        ps.setInt(2, pageSize + 1);
+        ps.setInt(3, page * pageSize);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            hits.add(new OrderHit(
+                rs.getLong("order_id"),
+                rs.getLong("cust_id"),
+                rs.getString("cust_name"),
+                rs.getString("order_date"),
+                rs.getString("prod_name"),
+                rs.getDouble("score")));
+        }
+        rs.close();
+        ps.close();
+        
+        return trim(hits, page, pageSize);
+    }
+    
+    // One extra row was fetched to learn whether another page exists
+    private static <T> SearchPage<T> trim(List<T> hits, int page, int pageSize) {
+        boolean hasMore = hits.size() > pageSize;
+        if (hasMore) {
+            hits.remove(hits.size() - 1);
+        }
+        return new SearchPage<>(hits, page, pageSize, hasMore);
+    }
+    
+    // Turn free text into a safe FTS5 expression
+    // Every word becomes a quoted prefix phrase and all words must match,
+    // so "gmail.com" or "555-0101" search as phrases and operators in user input are inert
+    static String toMatchExpression(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            if (!hasWordChar(word)) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append('"').append(word.replace("\"", "\"\"")).append("\"*");
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+    
+    private static boolean hasWordChar(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isLetterOrDigit(word.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
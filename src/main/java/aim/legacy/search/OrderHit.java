@@ -0,0 +1,54 @@
+/**
+ * OrderHit.java
+ * 
+ * An order returned by full-text search over its line item products.
+ */
+package aim.legacy.search;
+
+public class OrderHit {
+    private final long orderId;
+    private final long customerId;
+    private final String customerName;
+    private final String orderDate;
+    private final String matchedProduct;
+    private final double score;
+
+    public OrderHit(long orderId, long customerId, String customerName, String orderDate, String matchedProduct, double score) {
+        this.orderId = orderId;
+        this.customerId = customerId;
+        this.customerName = customerName;
+        this.orderDate = orderDate;
+        this.matchedProduct = matchedProduct;
+        this.score = score;
+    }
+
+    public long getOrderId() {
+        return orderId;
+    }
+
+    public long getCustomerId() {
+        return customerId;
+    }
+
+    public String getCustomerName() {
+        return customerName;
+    }
+
+    public String getOrderDate() {
+        return orderDate;
+    }
+
+    public String getMatchedProduct() {
+        return matchedProduct;
+    }
+
+    // Lower is better, as returned by SQLite's bm25()
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "Order #" + orderId + " - " + customerName + " [" + matchedProduct + "]";
+    }
+}
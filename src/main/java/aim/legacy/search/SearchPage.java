@@ -0,0 +1,39 @@
+/**
+ * SearchPage.java
+ * 
+ * One page of ranked search results.
+ * hasMore tells the caller whether a next page exists without counting every match.
+ */
+package aim.legacy.search;
+
+import java.util.List;
+
+public class SearchPage<T> {
+    private final List<T> hits;
+    private final int page;
+    private final int pageSize;
+    private final boolean hasMore;
+
+    public SearchPage(List<T> hits, int page, int pageSize, boolean hasMore) {
+        this.hits = hits;
+        this.page = page;
+        this.pageSize = pageSize;
+        this.hasMore = hasMore;
+    }
+
+    public List<T> getHits() {
+        return hits;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
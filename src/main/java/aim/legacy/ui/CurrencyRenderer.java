@@ -0,0 +1,28 @@
+/**
+ * CurrencyRenderer.java
+ * 
+ * Table cell renderer that formats BigDecimal amounts as "$0.00".
+ * Models keep raw values; formatting happens only for cells being painted.
+ */
+package aim.legacy.ui;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public class CurrencyRenderer extends DefaultTableCellRenderer {
+    
+    public CurrencyRenderer() {
+        setHorizontalAlignment(SwingConstants.RIGHT);
+    }
+    
+    @Override
+    protected void setValue(Object value) {
+        if (value instanceof BigDecimal) {
+            setText("$" + ((BigDecimal) value).setScale(2, RoundingMode.HALF_UP).toPlainString());
+        } else {
+            setText(value == null ? "" : value.toString());
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * CustomerPickerDialog.java
+ * 
+ * Typeahead customer picker used by the orders screen's customer filter.
+ * Each pause in typing looks up the top matches off the EDT, from the
+ * customer index when it can answer and from a LIMITed name query otherwise.
+ * The picked customer is returned by id, so customers sharing a name stay
+ * distinguishable.
+ */
+package aim.legacy.ui;
+
+import aim.legacy.db.DB;
+import aim.legacy.domain.Customer;
+import aim.legacy.search.CustomerIndex;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CustomerPickerDialog extends JDialog {
+    
+    // Matches shown per search
+    private static final int MAX_MATCHES = 50;
+    private static final int SEARCH_DEBOUNCE_MS = 120;
+    
+    private JTextField searchField;
+    private JList<Customer> matchList;
+    private DefaultListModel<Customer> matchModel;
+    private javax.swing.Timer searchDebounce;
+    private SearchWorker currentSearch;
+    
+    private Customer picked;
+    
+    public CustomerPickerDialog(Frame parent) {
+        super(parent, "Choose Customer", true);
+        
+        setupUI();
+        
+        setSize(450, 400);
+        setLocationRelativeTo(parent);
+    }
+    
+    // Show the dialog and return the chosen customer, or null if cancelled
+    public Customer pick() {
+        setVisible(true);
+        return picked;
+    }
+    
+    private void setupUI() {
+        setLayout(new BorderLayout(5, 5));
+        
+        JPanel topPanel = new JPanel(new BorderLayout(5, 5));
+        topPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        topPanel.add(new JLabel("Name, email or phone:"), BorderLayout.WEST);
+        searchField = new JTextField();
+        topPanel.add(searchField, BorderLayout.CENTER);
+        add(topPanel, BorderLayout.NORTH);
+        
+        matchModel = new DefaultListModel<>();
+        matchList = new JList<>(matchModel);
+        matchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matchList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                Customer c = (Customer) value;
+                String text = c == null ? "" : c.getName() + " (#" + c.getId() + ")"
+                    + (c.getEmail() == null || c.getEmail().isEmpty() ? "" : "  " + c.getEmail());
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        // Fixed cell size keeps the list from measuring every entry
+        matchList.setPrototypeCellValue(new Customer(0L, "XXXXXXXXXXXXXXXXXXXXXXXXXXXXXX", null, null, null));
+        add(new JScrollPane(matchList), BorderLayout.CENTER);
+        
+        JPanel bottomPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton okButton = new JButton("OK");
+        okButton.addActionListener(e -> pickSelected());
+        bottomPanel.add(okButton);
+        
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> dispose());
+        bottomPanel.add(cancelButton);
+        add(bottomPanel, BorderLayout.SOUTH);
+        getRootPane().setDefaultButton(okButton);
+        
+        // Each keystroke restarts the debounce timer; the search itself runs off the EDT
+        searchDebounce = new javax.swing.Timer(SEARCH_DEBOUNCE_MS, e -> startSearch());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            public void removeUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        
+        // Up and down move through the matches without leaving the search field
+        searchField.addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                int size = matchModel.getSize();
+                if (size == 0) return;
+                int index = matchList.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                    index = Math.min(index + 1, size - 1);
+                } else if (e.getKeyCode() == KeyEvent.VK_UP) {
+                    index = Math.max(index - 1, 0);
+                } else {
+                    return;
+                }
+                matchList.setSelectedIndex(index);
+                matchList.ensureIndexIsVisible(index);
+                e.consume();
+            }
+        });
+        
+        matchList.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    pickSelected();
+                }
+            }
+        });
+    }
+    
+    // Search for the current text, superseding any search still in flight
+    private void startSearch() {
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+        }
+        String query = searchField.getText().trim();
+        if (query.isEmpty()) {
+            currentSearch = null;
+            matchModel.clear();
+            return;
+        }
+        currentSearch = new SearchWorker(query);
+        currentSearch.execute();
+    }
+    
+    private class SearchWorker extends SwingWorker<List<Customer>, Void> {
+        private final String query;
+        
+        SearchWorker(String query) {
+            this.query = query;
+        }
+        
+        @Override
+        protected List<Customer> doInBackground() throws Exception {
+            CustomerIndex index = CustomerIndex.getInstance();
+            if (index.isReady() && query.length() >= CustomerIndex.MIN_QUERY_LENGTH) {
+                return index.search(query, MAX_MATCHES);
+            }
+            try (Connection conn = DB.openReadConn()) {
+                return searchByName(conn, query);
+            }
+        }
+        
+        @Override
+        protected void done() {
+            if (isCancelled() || currentSearch != this) {
+                return;
+            }
+            currentSearch = null;
+            try {
+                List<Customer> matches = get();
+                matchModel.clear();
+                for (Customer customer : matches) {
+                    matchModel.addElement(customer);
+                }
+                if (!matches.isEmpty()) {
+                    matchList.setSelectedIndex(0);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(CustomerPickerDialog.this, "Error searching customers: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Name LIKE query for input too short for the index, or until it has been built
+    // Ordered by id so SQLite stops after the first MAX_MATCHES hits
+    private static List<Customer> searchByName(Connection conn, String query) throws SQLException {
+        List<Customer> customers = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer " +
+                "WHERE LOWER(cust_name) LIKE ? ORDER BY cust_id LIMIT " + MAX_MATCHES)) {
+            ps.setString(1, "%" + query.toLowerCase() + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    customers.add(new Customer(
+                        rs.getLong("cust_id"),
+                        rs.getString("cust_name"),
+                        rs.getString("email"),
+                        rs.getString("phone"),
+                        rs.getString("address"),
+                        rs.getString("customer_type")));
+                }
+            }
+        }
+        return customers;
+    }
+    
+    private void pickSelected() {
+        Customer customer = matchList.getSelectedValue();
+        if (customer == null) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+        picked = customer;
+        dispose();
+    }
+}
@@ -7,25 +7,69 @@
  */
 package aim.legacy.ui;
 
+import aim.legacy.db.ConcurrentUpdateException;
+import aim.legacy.db.CustomerDao;
 import aim.legacy.db.DB;
+import aim.legacy.domain.Customer;
+import aim.legacy.event.ChangeBus;
+import aim.legacy.event.ChangeEvent;
+import aim.legacy.search.CustomerHit;
+import aim.legacy.search.CustomerIndex;
+import aim.legacy.search.FullTextSearch;
+import aim.legacy.search.SearchPage;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 import java.awt.*;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 public class CustomersScreen extends JPanel {
 
     private final MainApp mainApp;
     
+    // Upper bound on rows shown for a search
+    private static final int SEARCH_LIMIT = 1000;
+    
+    // Rows per page for full-text search results
+    private static final int FULL_TEXT_PAGE_SIZE = 100;
+    
+    // Quiet period after the last keystroke before a search-as-you-type query runs
+    private static final int SEARCH_DEBOUNCE_MS = 120;
+    
+    // Beyond this many queued changes a reload is cheaper than replaying deltas
+    private static final int MAX_PENDING_CHANGES = 500;
+    
+    private static final Class<?>[] COLUMN_TYPES = {
+        Long.class, String.class, String.class, String.class, String.class, String.class
+    };
+    
     private JTable customerTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel<Customer> allCustomersModel;
+    private DefaultTableModel searchModel;
     private JTextField searchField;
+    private JCheckBox fullTextCheck;
+    private JButton prevPageButton;
+    private JButton nextPageButton;
+    private int fullTextPage;
+    private javax.swing.Timer searchDebounce;
+    private SearchWorker currentSearch;
+    
+    // Data version the screen reflects, and customer changes not yet applied
+    private long seenVersion = -1;
+    private final List<ChangeEvent> pendingChanges = new ArrayList<>();
     
     public CustomersScreen(MainApp mainApp) {
         this.mainApp = mainApp;
         setupUI();
         loadCustomers();
+        ChangeBus.addListener(this::onDataChange);
     }
     
     private void setupUI() {
@@ -34,6 +78,22 @@ public class CustomersScreen extends JPanel {
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         topPanel.add(new JLabel("Search:"));
         searchField = new JTextField(20);
+        searchField.addActionListener(e -> searchCustomers());
+        // Search as you type: each keystroke restarts the debounce timer
+        searchDebounce = new javax.swing.Timer(SEARCH_DEBOUNCE_MS, e -> startSearch(0));
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            public void removeUpdate(DocumentEvent e) {
+                searchDebounce.restart();
+            }
+            
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
         topPanel.add(searchField);
         JButton searchButton = new JButton("Search");
         searchButton.addActionListener(e -> searchCustomers());
@@ -41,16 +101,39 @@ public class CustomersScreen extends JPanel {
         JButton clearButton = new JButton("Show All");
         clearButton.addActionListener(e -> loadCustomers());
         topPanel.add(clearButton);
+        fullTextCheck = new JCheckBox("Addresses and ordered products");
+        fullTextCheck.setToolTipText("Full-text search over all contact fields and the products each customer ordered");
+        fullTextCheck.addActionListener(e -> startSearch(0));
+        topPanel.add(fullTextCheck);
+        prevPageButton = new JButton("<");
+        prevPageButton.addActionListener(e -> startSearch(fullTextPage - 1));
+        topPanel.add(prevPageButton);
+        nextPageButton = new JButton(">");
+        nextPageButton.addActionListener(e -> startSearch(fullTextPage + 1));
+        topPanel.add(nextPageButton);
+        setPagingEnabled(false, false);
         
         add(topPanel, BorderLayout.NORTH);
         
         String[] columns = {"ID", "Name", "Email", "Phone", "Address", "Customer Type"};
-        tableModel = new DefaultTableModel(columns, 0) {
+        // "Show All" pages through the table lazily; search results are a small list
+        allCustomersModel = new PagedTableModel<Customer>(columns, COLUMN_TYPES) {
+            @Override
+            protected long idOf(Customer c) {
+                return c.getId();
+            }
+            
+            @Override
+            protected Object valueOf(Customer c, int column) {
+                return toRow(c)[column];
+            }
+        };
+        searchModel = new DefaultTableModel(columns, 0) {
             public boolean isCellEditable(int row, int column) {
                 return false;
             }
         };
-        customerTable = new JTable(tableModel);
+        customerTable = new JTable(allCustomersModel);
         JScrollPane scrollPane = new JScrollPane(customerTable);
         add(scrollPane, BorderLayout.CENTER);
         
@@ -70,74 +153,324 @@ public class CustomersScreen extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
     }
     
-    // Refresh the customer list from database
-    // Called when switching back to this screen
+    // Bring the customer list up to date when switching back to this screen
+    // Does nothing when no customer changed since it was last shown
     public void refresh() {
-        loadCustomers();
+        if (ChangeBus.version(ChangeEvent.Table.CUSTOMER) != seenVersion) {
+            applyPendingChanges();
+        }
+    }
+    
+    // Queue customer changes; apply them right away while the screen is visible
+    private void onDataChange(ChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onDataChange(event));
+            return;
+        }
+        if (event.getTable() != ChangeEvent.Table.CUSTOMER) {
+            return;
+        }
+        pendingChanges.add(event);
+        if (isShowing()) {
+            applyPendingChanges();
+        }
+    }
+    
+    // Replay queued changes as row-level deltas
+    // Search results are re-run and merged into the result list by id
+    private void applyPendingChanges() {
+        if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+            allCustomersModel.reload();
+        } else {
+            for (ChangeEvent event : pendingChanges) {
+                allCustomersModel.applyChange(event.getType(), event.getId());
+            }
+        }
+        pendingChanges.clear();
+        seenVersion = ChangeBus.version(ChangeEvent.Table.CUSTOMER);
+        
+        if (customerTable.getModel() == searchModel && !searchField.getText().trim().isEmpty()) {
+            startSearch(fullTextPage);
+        }
     }
     
     // Load all customers from database into the table
     // Executes direct SQL query and populates table model
     private void loadCustomers() {
-        tableModel.setRowCount(0);
-        try {
-            Connection conn = DB.getConn();
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+            currentSearch = null;
+        }
+        setPagingEnabled(false, false);
+        pendingChanges.clear();
+        seenVersion = ChangeBus.version(ChangeEvent.Table.CUSTOMER);
+        if (customerTable.getModel() != allCustomersModel) {
+            customerTable.setModel(allCustomersModel);
+        }
+        if (allCustomersModel.getSource() == null) {
+            allCustomersModel.setSource(new AllCustomersSource());
+        } else {
+            allCustomersModel.reload();
+        }
+    }
+    
+    // Pages through the customer table by id
+    // Seeks past the previous page's last id when known, otherwise uses OFFSET
+    private static class AllCustomersSource implements RowSource<Customer> {
+        @Override
+        public int count(Connection conn) throws SQLException {
             Statement stmt = conn.createStatement();
-            String sql = "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer ORDER BY cust_id";
-            ResultSet rs = stmt.executeQuery(sql);
-            
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM customer");
+            int count = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            stmt.close();
+            return count;
+        }
+        
+        @Override
+        public RowPage<Customer> fetch(Connection conn, int offset, int limit, Object afterKey) throws SQLException {
+            PreparedStatement ps;
+            if (afterKey != null) {
+                ps = conn.prepareStatement(
+                    "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer " +
+                    "WHERE cust_id > ? ORDER BY cust_id LIMIT ?");
+                ps.setLong(1, (Long) afterKey);
+                ps.setInt(2, limit);
+            } else {
+                ps = conn.prepareStatement(
+                    "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer " +
+                    "ORDER BY cust_id LIMIT ? OFFSET ?");
+                ps.setInt(1, limit);
+                ps.setInt(2, offset);
+            }
+            ResultSet rs = ps.executeQuery();
+            List<Customer> customers = new ArrayList<>();
             while (rs.next()) {
-                tableModel.addRow(new Object[]{
+                customers.add(new Customer(
                     rs.getLong("cust_id"),
                     rs.getString("cust_name"),
                     rs.getString("email"),
                     rs.getString("phone"),
                     rs.getString("address"),
-                    rs.getString("customer_type")
-                });
+                    rs.getString("customer_type")));
             }
-            
             rs.close();
-            stmt.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading customers: " + e.getMessage());
+            ps.close();
+            Object lastKey = customers.isEmpty() ? null : customers.get(customers.size() - 1).getId();
+            return new RowPage<>(customers, lastKey);
+        }
+        
+        @Override
+        public Customer fetchRow(Connection conn, long id) throws SQLException {
+            PreparedStatement ps = conn.prepareStatement(
+                "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer WHERE cust_id = ?");
+            ps.setLong(1, id);
+            ResultSet rs = ps.executeQuery();
+            Customer customer = null;
+            if (rs.next()) {
+                customer = new Customer(
+                    rs.getLong("cust_id"),
+                    rs.getString("cust_name"),
+                    rs.getString("email"),
+                    rs.getString("phone"),
+                    rs.getString("address"),
+                    rs.getString("customer_type"));
+            }
+            rs.close();
+            ps.close();
+            return customer;
+        }
+        
+        @Override
+        public int indexOf(Connection conn, long id) throws SQLException {
+            PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM customer WHERE cust_id < ?");
+            ps.setLong(1, id);
+            ResultSet rs = ps.executeQuery();
+            int index = rs.next() ? rs.getInt(1) : -1;
+            rs.close();
+            ps.close();
+            return index;
         }
     }
     
-    // Search customers by name using LIKE query
-    // Note: Uses string concatenation for SQL (should use prepared statements)
+    // Search immediately with the current text (Search button and Enter)
     private void searchCustomers() {
+        searchDebounce.stop();
+        startSearch(0);
+    }
+    
+    // Run a search off the EDT, superseding any search still in flight
+    // Only the newest search may touch the table; older results are discarded
+    private void startSearch(int page) {
+        if (page < 0) {
+            return;
+        }
         String query = searchField.getText().trim();
         if (query.isEmpty()) {
+            if (currentSearch != null) {
+                currentSearch.cancel(true);
+                currentSearch = null;
+            }
             loadCustomers();
             return;
         }
         
-        tableModel.setRowCount(0);
-        try {
-            Connection conn = DB.getConn();
-            Statement stmt = conn.createStatement();
-            String sql = "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer " +
-                        "WHERE LOWER(cust_name) LIKE '%" + query.toLowerCase() + "%' ORDER BY cust_id";
-            ResultSet rs = stmt.executeQuery(sql);
-            
-            while (rs.next()) {
-                tableModel.addRow(new Object[]{
-                    rs.getLong("cust_id"),
-                    rs.getString("cust_name"),
-                    rs.getString("email"),
-                    rs.getString("phone"),
-                    rs.getString("address"),
-                    rs.getString("customer_type")
-                });
+        boolean fullText = fullTextCheck.isSelected();
+        if (currentSearch != null) {
+            currentSearch.cancel(true);
+        }
+        SearchWorker worker = new SearchWorker(query, fullText, page);
+        currentSearch = worker;
+        worker.execute();
+    }
+    
+    private class SearchWorker extends SwingWorker<List<Customer>, Void> {
+        private final String query;
+        private final boolean fullText;
+        private final int page;
+        private boolean hasMore;
+        
+        SearchWorker(String query, boolean fullText, int page) {
+            this.query = query;
+            this.fullText = fullText;
+            this.page = page;
+        }
+        
+        // Database searches read through their own connection, never the shared one
+        // the EDT writes on, so they cannot see another editor's uncommitted rows
+        @Override
+        protected List<Customer> doInBackground() throws Exception {
+            CustomerIndex index = CustomerIndex.getInstance();
+            if (!fullText && index.isReady() && query.trim().length() >= CustomerIndex.MIN_QUERY_LENGTH) {
+                return index.search(query, SEARCH_LIMIT);
+            }
+            try (Connection conn = DB.openReadConn()) {
+                if (!fullText) {
+                    return searchByName(conn, query);
+                }
+                SearchPage<CustomerHit> result = FullTextSearch.searchCustomers(conn, query, page, FULL_TEXT_PAGE_SIZE);
+                hasMore = result.hasMore();
+                List<Customer> customers = new ArrayList<>();
+                for (CustomerHit hit : result.getHits()) {
+                    customers.add(hit.getCustomer());
+                }
+                return customers;
             }
-            
-            rs.close();
-            stmt.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
+        
+        @Override
+        protected void done() {
+            if (isCancelled() || currentSearch != this) {
+                return;
+            }
+            currentSearch = null;
+            try {
+                List<Customer> customers = get();
+                List<Object[]> rows = new ArrayList<>(customers.size());
+                for (Customer c : customers) {
+                    rows.add(toRow(c));
+                }
+                applyRows(rows);
+                if (customerTable.getModel() != searchModel) {
+                    customerTable.setModel(searchModel);
+                }
+                fullTextPage = page;
+                setPagingEnabled(fullText && page > 0, fullText && hasMore);
+            } catch (Exception e) {
+                e.printStackTrace();
+                JOptionPane.showMessageDialog(CustomersScreen.this, "Error searching customers: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Name-only LIKE query used until the customer index has been built
+    private static List<Customer> searchByName(Connection conn, String query) throws SQLException {
+        List<Customer> customers = new ArrayList<>();
+        PreparedStatement ps = conn.prepareStatement(
+            "SELECT cust_id, cust_name, email, phone, address, customer_type FROM customer " +
+            "WHERE LOWER(cust_name) LIKE ? ORDER BY cust_id LIMIT " + SEARCH_LIMIT);
+        ps.setString(1, "%" + query.toLowerCase() + "%");
+        ResultSet rs = ps.executeQuery();
+        
+        while (rs.next()) {
+            customers.add(new Customer(
+                rs.getLong("cust_id"),
+                rs.getString("cust_name"),
+                rs.getString("email"),
+                rs.getString("phone"),
+                rs.getString("address"),
+                rs.getString("customer_type")));
+        }
+        
+        rs.close();
+        ps.close();
+        return customers;
+    }
+    
+    private static Object[] toRow(Customer c) {
+        return new Object[]{
+            c.getId(),
+            c.getName(),
+            c.getEmail(),
+            c.getPhone(),
+            c.getAddress(),
+            c.getCustomerType()
+        };
+    }
+    
+    // Bring the table in line with the new rows using row-level events
+    // Rows are matched by customer id: stale rows are removed, new ones inserted
+    // in place and changed cells updated, so narrowing a search only touches
+    // the rows that actually disappear
+    private void applyRows(List<Object[]> rows) {
+        Set<Object> wanted = new HashSet<>();
+        for (Object[] row : rows) {
+            wanted.add(row[0]);
+        }
+        
+        int existing = searchModel.getRowCount();
+        Set<Object> present = new HashSet<>();
+        for (int i = existing - 1; i >= 0; i--) {
+            Object id = searchModel.getValueAt(i, 0);
+            if (wanted.contains(id)) {
+                present.add(id);
+            } else {
+                searchModel.removeRow(i);
+            }
+        }
+        
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            if (i < searchModel.getRowCount()) {
+                Object tableId = searchModel.getValueAt(i, 0);
+                if (tableId.equals(row[0])) {
+                    for (int col = 1; col < row.length; col++) {
+                        Object current = searchModel.getValueAt(i, col);
+                        if (current == null ? row[col] != null : !current.equals(row[col])) {
+                            searchModel.setValueAt(row[col], i, col);
+                        }
+                    }
+                    continue;
+                }
+                if (present.contains(row[0])) {
+                    // Ranking moved this row up: drop the row in the way, it is re-inserted at its own turn
+                    searchModel.removeRow(i);
+                    present.remove(tableId);
+                    i--;
+                    continue;
+                }
+            }
+            searchModel.insertRow(i, row);
+        }
+        
+        while (searchModel.getRowCount() > rows.size()) {
+            searchModel.removeRow(searchModel.getRowCount() - 1);
+        }
+    }
+    
+    private void setPagingEnabled(boolean previous, boolean next) {
+        prevPageButton.setEnabled(previous);
+        nextPageButton.setEnabled(next);
     }
     
     // Open dialog to add new customer
@@ -167,7 +500,9 @@ public class CustomersScreen extends JPanel {
                 
                 rs.close();
                 stmt.close();
-                loadCustomers();
+                CustomerIndex.getInstance().put(new Customer(nextId, dialog.getName(), dialog.getEmail(),
+                    dialog.getPhone(), dialog.getAddress(), dialog.getCustomerType()));
+                ChangeBus.publish(ChangeEvent.Table.CUSTOMER, ChangeEvent.Type.INSERT, nextId);
             } catch (SQLException e) {
                 e.printStackTrace();
                 JOptionPane.showMessageDialog(this, "Error adding customer: " + e.getMessage());
@@ -176,7 +511,8 @@ public class CustomersScreen extends JPanel {
     }
     
     // Edit existing customer record
-    // Opens dialog with current values pre-populated
+    // Opens dialog with the customer's current values; the save only applies if
+    // nobody else saved the customer meanwhile, otherwise their changes are merged in
     private void editCustomer() {
         int selectedRow = customerTable.getSelectedRow();
         if (selectedRow < 0) {
@@ -184,66 +520,154 @@ public class CustomersScreen extends JPanel {
             return;
         }
         
-        long id = (Long) tableModel.getValueAt(selectedRow, 0);
-        String name = (String) tableModel.getValueAt(selectedRow, 1);
-        String email = (String) tableModel.getValueAt(selectedRow, 2);
-        String phone = (String) tableModel.getValueAt(selectedRow, 3);
-        String address = (String) tableModel.getValueAt(selectedRow, 4);
-        String customerType = (String) tableModel.getValueAt(selectedRow, 5);
-        
-        CustomerDialog dialog = new CustomerDialog((Frame) SwingUtilities.getWindowAncestor(this), id, name, email, phone, address, customerType);
-        dialog.setVisible(true);
+        TableModel model = customerTable.getModel();
+        if (model.getValueAt(selectedRow, 0) == null) {
+            // Row still loading
+            return;
+        }
+        long id = (Long) model.getValueAt(selectedRow, 0);
         
-        if (dialog.isSaved()) {
-            try {
-                Connection conn = DB.getConn();
-                Statement stmt = conn.createStatement();
-                String sql = "UPDATE customer SET cust_name = '" + dialog.getName().replace("'", "''") + "', " +
-                    "email = '" + dialog.getEmail().replace("'", "''") + "', " +
-                    "phone = '" + dialog.getPhone().replace("'", "''") + "', " +
-                    "address = '" + dialog.getAddress().replace("'", "''") + "', " +
-                    "customer_type = '" + dialog.getCustomerType() + "' " +
-                    "WHERE cust_id = " + id;
-                stmt.execute(sql);
+        try {
+            Customer base = CustomerDao.load(DB.getConn(), id);
+            if (base == null) {
+                JOptionPane.showMessageDialog(this, "This customer was deleted by another user");
+                return;
+            }
+            Customer shown = base;
+            
+            while (true) {
+                CustomerDialog dialog = new CustomerDialog((Frame) SwingUtilities.getWindowAncestor(this), id,
+                    shown.getName(), shown.getEmail(), shown.getPhone(), shown.getAddress(), shown.getCustomerType());
+                dialog.setVisible(true);
+                if (!dialog.isSaved()) {
+                    return;
+                }
                 
-                stmt.close();
-                loadCustomers();
-            } catch (SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error updating customer: " + e.getMessage());
+                Customer mine = new Customer(id, dialog.getName(), dialog.getEmail(),
+                    dialog.getPhone(), dialog.getAddress(), dialog.getCustomerType());
+                mine.setVersion(base.getVersion());
+                try {
+                    CustomerDao.update(DB.getConn(), mine);
+                } catch (ConcurrentUpdateException e) {
+                    Customer theirs = e.isDeleted() ? null : CustomerDao.load(DB.getConn(), id);
+                    if (theirs == null) {
+                        JOptionPane.showMessageDialog(this, "This customer was deleted by another user; your changes were not saved");
+                        return;
+                    }
+                    List<String> conflicts = new ArrayList<>();
+                    shown = mergeCustomer(base, mine, theirs, conflicts);
+                    base = theirs;
+                    StringBuilder message = new StringBuilder(
+                        "This customer was changed by another user while you were editing.\n" +
+                        "Their changes have been merged with yours; review and save again.");
+                    if (!conflicts.isEmpty()) {
+                        message.append("\n\nYou both changed (your value is kept):\n");
+                        for (String conflict : conflicts) {
+                            message.append("- ").append(conflict).append("\n");
+                        }
+                    }
+                    JOptionPane.showMessageDialog(this, message.toString(), "Customer Changed", JOptionPane.WARNING_MESSAGE);
+                    continue;
+                }
+                
+                CustomerIndex.getInstance().put(mine);
+                ChangeBus.publish(ChangeEvent.Table.CUSTOMER, ChangeEvent.Type.UPDATE, id);
+                return;
             }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error updating customer: " + e.getMessage());
+        }
+    }
+    
+    // Field-by-field three-way merge: each field takes whichever side changed it
+    // When both changed a field differently, mine is kept and the clash is listed
+    private static Customer mergeCustomer(Customer base, Customer mine, Customer theirs, List<String> conflicts) {
+        Customer merged = new Customer(theirs.getId(),
+            mergeField("Name", base.getName(), mine.getName(), theirs.getName(), conflicts),
+            mergeField("Email", base.getEmail(), mine.getEmail(), theirs.getEmail(), conflicts),
+            mergeField("Phone", base.getPhone(), mine.getPhone(), theirs.getPhone(), conflicts),
+            mergeField("Address", base.getAddress(), mine.getAddress(), theirs.getAddress(), conflicts),
+            mergeField("Type", base.getCustomerType(), mine.getCustomerType(), theirs.getCustomerType(), conflicts));
+        merged.setVersion(theirs.getVersion());
+        return merged;
+    }
+    
+    private static String mergeField(String label, String base, String mine, String theirs, List<String> conflicts) {
+        String b = base == null ? "" : base;
+        String m = mine == null ? "" : mine;
+        String t = theirs == null ? "" : theirs;
+        if (m.equals(b)) {
+            return theirs;
+        }
+        if (!t.equals(b) && !t.equals(m)) {
+            conflicts.add(label + ": yours \"" + m + "\", theirs \"" + t + "\"");
         }
+        return mine;
     }
     
     // Delete customer from database
-    // Uses CASCADE delete to remove associated orders
+    // The version read before confirming guards the delete, so changes another
+    // user saves meanwhile are never deleted unseen; the row is reloaded instead
     private void deleteCustomer() {
         int selectedRow = customerTable.getSelectedRow();
         if (selectedRow < 0) {
             JOptionPane.showMessageDialog(this, "Please select a customer to delete");
             return;
         }
+        Object selectedId = customerTable.getModel().getValueAt(selectedRow, 0);
+        if (selectedId == null) {
+            return;
+        }
+        long id = (Long) selectedId;
         
-        int confirm = JOptionPane.showConfirmDialog(this, 
-            "Are you sure you want to delete this customer?",
-            "Confirm Delete", 
-            JOptionPane.YES_NO_OPTION);
-        
-        if (confirm == JOptionPane.YES_OPTION) {
-            long id = (Long) tableModel.getValueAt(selectedRow, 0);
+        try {
+            Customer current = CustomerDao.load(DB.getConn(), id);
+            if (current == null) {
+                throw new ConcurrentUpdateException("customer", id, 0, 0);
+            }
             
+            int confirm = JOptionPane.showConfirmDialog(this, 
+                "Are you sure you want to delete this customer?",
+                "Confirm Delete", 
+                JOptionPane.YES_NO_OPTION);
+            if (confirm != JOptionPane.YES_OPTION) {
+                return;
+            }
+            
+            Connection conn = DB.getConn();
+            DB.beginWrite(conn);
             try {
-                Connection conn = DB.getConn();
-                Statement stmt = conn.createStatement();
-                String sql = "DELETE FROM customer WHERE cust_id = " + id;
-                stmt.execute(sql);
-                
-                stmt.close();
-                loadCustomers();
+                CustomerDao.delete(conn, id, current.getVersion());
+                DB.commitWrite(conn);
             } catch (SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error deleting customer: " + e.getMessage());
+                DB.rollbackWrite(conn);
+                throw e;
             }
+            CustomerIndex.getInstance().remove(id);
+            ChangeBus.publish(ChangeEvent.Table.CUSTOMER, ChangeEvent.Type.DELETE, id);
+        } catch (ConcurrentUpdateException e) {
+            // Nothing was deleted; show the customer as it is now
+            try {
+                Customer theirs = e.isDeleted() ? null : CustomerDao.load(DB.getConn(), id);
+                if (theirs == null) {
+                    CustomerIndex.getInstance().remove(id);
+                } else {
+                    CustomerIndex.getInstance().put(theirs);
+                }
+            } catch (SQLException reloadError) {
+                reloadError.printStackTrace();
+            }
+            pendingChanges.add(new ChangeEvent(ChangeEvent.Table.CUSTOMER,
+                e.isDeleted() ? ChangeEvent.Type.DELETE : ChangeEvent.Type.UPDATE, id, 0));
+            applyPendingChanges();
+            JOptionPane.showMessageDialog(this, e.isDeleted()
+                ? "This customer was already deleted by another user"
+                : "This customer was changed by another user and has been reloaded.\nReview it and delete again if it should still go.",
+                "Customer Changed", JOptionPane.WARNING_MESSAGE);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error deleting customer: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,24 @@
+/**
+ * DateTimeRenderer.java
+ * 
+ * Table cell renderer for LocalDateTime values, in the database's
+ * "yyyy-MM-dd HH:mm:ss" layout.
+ */
+package aim.legacy.ui;
+
+import aim.legacy.db.OrderDao;
+
+import javax.swing.table.DefaultTableCellRenderer;
+import java.time.LocalDateTime;
+
+public class DateTimeRenderer extends DefaultTableCellRenderer {
+    
+    @Override
+    protected void setValue(Object value) {
+        if (value instanceof LocalDateTime) {
+            setText(OrderDao.DATE_FORMAT.format((LocalDateTime) value));
+        } else {
+            setText(value == null ? "" : value.toString());
+        }
+    }
+}
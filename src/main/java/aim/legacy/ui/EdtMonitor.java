@@ -0,0 +1,294 @@
+/**
+ * EdtMonitor.java
+ * 
+ * Watchdog for the Swing event dispatch thread.
+ * install() pushes an EventQueue that times every event it dispatches.
+ * A daemon thread checks the event in progress every aim.edt.sampleMillis
+ * (default 50). Once it has run longer than aim.edt.stallMillis (default 250),
+ * the thread samples the EDT's stack until the event finishes.
+ * 
+ * Each stall is logged as [edt] with its duration, the event that caused it
+ * and the application method it was in (e.g. OrdersScreen.generateReport),
+ * along with the code the samples most often found running.
+ * 
+ * Metrics:
+ *   edt.dispatch         every event
+ *   edt.stall            every stall
+ *   edt.stall.<action>   stalls by application method
+ * 
+ * Modal dialogs dispatch events from inside the event that opened them. The
+ * time an outer event spends waiting on such a nested loop is not counted;
+ * only the stretches where it holds the EDT itself are. After a nested event
+ * the outer one is suspended: while the EDT sits waiting for the next event
+ * its clock is held back, and it is sampled again once it runs outside a
+ * nested event. Stalls are named after the code inside the innermost event,
+ * so a slow save in a dialog is reported as the dialog's save, not as the
+ * action that opened the dialog.
+ */
+package aim.legacy.ui;
+
+import aim.legacy.metrics.Metrics;
+import aim.legacy.metrics.OperationMetrics;
+
+import javax.swing.AbstractButton;
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InvocationEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class EdtMonitor extends EventQueue {
+    
+    private static final long STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("aim.edt.stallMillis", 250));
+    private static final long SAMPLE_MILLIS = Math.max(1, Long.getLong("aim.edt.sampleMillis", 50));
+    
+    // Stack frames kept per sample, counted from the innermost
+    private static final int MAX_FRAMES = 40;
+    private static final String APP_PACKAGE = "aim.legacy.";
+    
+    private static final OperationMetrics DISPATCH = Metrics.operation("edt.dispatch");
+    private static final OperationMetrics STALL = Metrics.operation("edt.stall");
+    
+    private static EdtMonitor installed;
+    
+    // One stretch of an event's dispatch during which it held the EDT
+    private static class Dispatch {
+        final AWTEvent event;
+        volatile long start = System.nanoTime();
+        // Set once a nested event has run; cleared when the event runs again itself
+        volatile boolean suspended;
+        final List<StackTraceElement[]> samples = new ArrayList<>();
+        
+        Dispatch(AWTEvent event) {
+            this.event = event;
+        }
+    }
+    
+    private volatile Dispatch current;
+    private volatile Thread edt;
+    
+    // Replace the system event queue; safe to call more than once
+    public static synchronized void install() {
+        if (installed != null) {
+            return;
+        }
+        installed = new EdtMonitor();
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(installed);
+        
+        Thread watchdog = new Thread(installed::watch, "edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+    
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        edt = Thread.currentThread();
+        Dispatch outer = current;
+        if (outer != null) {
+            // A nested loop (modal dialog) is running: the outer event stops holding the EDT here
+            finish(outer);
+        }
+        Dispatch dispatch = new Dispatch(event);
+        current = dispatch;
+        long started = dispatch.start;
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            DISPATCH.recordSince(started);
+            finish(dispatch);
+            current = outer;
+            if (outer != null) {
+                synchronized (outer) {
+                    outer.samples.clear();
+                }
+                outer.start = System.nanoTime();
+                outer.suspended = true;
+            }
+        }
+    }
+    
+    // Sample the EDT while the current event has held it past the threshold
+    private void watch() {
+        while (true) {
+            try {
+                Thread.sleep(SAMPLE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            Dispatch dispatch = current;
+            Thread thread = edt;
+            if (dispatch == null || thread == null) {
+                continue;
+            }
+            if (dispatch.suspended) {
+                // Idle in a modal loop: hold the clock back until the event runs again
+                if (waitingForEvent(thread.getStackTrace())) {
+                    dispatch.start = System.nanoTime();
+                    continue;
+                }
+                dispatch.suspended = false;
+            }
+            if (System.nanoTime() - dispatch.start < STALL_NANOS) {
+                continue;
+            }
+            StackTraceElement[] stack = thread.getStackTrace();
+            synchronized (dispatch) {
+                // The event may have finished while the stack was being taken
+                if (current == dispatch) {
+                    dispatch.samples.add(stack);
+                }
+            }
+        }
+    }
+    
+    // True when the EDT is blocked in a nested event loop waiting for its next event
+    private static boolean waitingForEvent(StackTraceElement[] stack) {
+        for (StackTraceElement frame : stack) {
+            if (isDispatchFrame(frame)) {
+                return false;
+            }
+            if (frame.getClassName().equals("java.awt.EventQueue") && frame.getMethodName().equals("getNextEvent")) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isDispatchFrame(StackTraceElement frame) {
+        return frame.getClassName().equals(EdtMonitor.class.getName()) && frame.getMethodName().equals("dispatchEvent");
+    }
+    
+    // Record the stretch as a stall if it held the EDT too long
+    private void finish(Dispatch dispatch) {
+        long nanos = System.nanoTime() - dispatch.start;
+        if (nanos < STALL_NANOS) {
+            return;
+        }
+        List<StackTraceElement[]> samples;
+        synchronized (dispatch) {
+            samples = new ArrayList<>(dispatch.samples);
+        }
+        String action = actionOf(samples);
+        STALL.record(nanos);
+        Metrics.operation("edt.stall." + (action == null ? "other" : action)).record(nanos);
+        
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("[edt] stall %d ms in %s during %s, %d sample(s)",
+            TimeUnit.NANOSECONDS.toMillis(nanos), action == null ? "(no application code sampled)" : action,
+            describe(dispatch.event), samples.size())).append(System.lineSeparator());
+        for (Map.Entry<String, Integer> hot : hotFrames(samples)) {
+            out.append(String.format("[edt]   %3d%%  %s", hot.getValue() * 100 / samples.size(), hot.getKey()))
+                .append(System.lineSeparator());
+        }
+        if (!samples.isEmpty()) {
+            for (StackTraceElement frame : trim(samples.get(samples.size() - 1))) {
+                out.append("[edt]     at ").append(frame).append(System.lineSeparator());
+            }
+        }
+        System.out.print(out);
+    }
+    
+    // Outermost application method within the innermost event, e.g. "OrdersScreen.generateReport"
+    // Frames of events further out (the action that opened a dialog) are not looked at
+    // Lambdas and the monitor itself are skipped so the named method is the real handler
+    static String actionOf(List<StackTraceElement[]> samples) {
+        Map<String, Integer> votes = new HashMap<>();
+        for (StackTraceElement[] stack : samples) {
+            int innermost = stack.length;
+            for (int i = 0; i < stack.length; i++) {
+                if (isDispatchFrame(stack[i])) {
+                    innermost = i;
+                    break;
+                }
+            }
+            for (int i = innermost - 1; i >= 0; i--) {
+                StackTraceElement frame = stack[i];
+                String method = frame.getMethodName();
+                String className = frame.getClassName();
+                if (className.startsWith(APP_PACKAGE) && !className.equals(EdtMonitor.class.getName())
+                        && !className.contains("$$Lambda") && !method.startsWith("lambda$") && !method.startsWith("access$")) {
+                    votes.merge(shortName(frame), 1, Integer::sum);
+                    break;
+                }
+            }
+        }
+        String action = null;
+        int best = 0;
+        for (Map.Entry<String, Integer> vote : votes.entrySet()) {
+            if (vote.getValue() > best) {
+                action = vote.getKey();
+                best = vote.getValue();
+            }
+        }
+        return action;
+    }
+    
+    // The three frames most often on top of the stack, with their sample counts
+    private static List<Map.Entry<String, Integer>> hotFrames(List<StackTraceElement[]> samples) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (StackTraceElement[] stack : samples) {
+            if (stack.length > 0) {
+                counts.merge(stack[0].toString(), 1, Integer::sum);
+            }
+        }
+        List<Map.Entry<String, Integer>> hot = new ArrayList<>(counts.entrySet());
+        hot.sort((a, b) -> b.getValue() - a.getValue());
+        return hot.subList(0, Math.min(3, hot.size()));
+    }
+    
+    // Innermost frames down to the last application frame, capped at MAX_FRAMES
+    private static List<StackTraceElement> trim(StackTraceElement[] stack) {
+        int last = 0;
+        for (int i = 0; i < stack.length && i < MAX_FRAMES; i++) {
+            if (stack[i].getClassName().startsWith(APP_PACKAGE) && !stack[i].getClassName().equals(EdtMonitor.class.getName())) {
+                last = i;
+            }
+        }
+        List<StackTraceElement> frames = new ArrayList<>();
+        for (int i = 0; i <= last && i < stack.length; i++) {
+            frames.add(stack[i]);
+        }
+        return frames;
+    }
+    
+    private static String shortName(StackTraceElement frame) {
+        String className = frame.getClassName();
+        String simple = className.substring(className.lastIndexOf('.') + 1);
+        int inner = simple.indexOf('$');
+        return (inner > 0 ? simple.substring(0, inner) : simple) + "." + frame.getMethodName();
+    }
+    
+    // What the user did: the button or menu item, the key, or the task posted to the EDT
+    static String describe(AWTEvent event) {
+        if (event instanceof ActionEvent) {
+            ActionEvent action = (ActionEvent) event;
+            return "action '" + action.getActionCommand() + "' on " + action.getSource().getClass().getSimpleName();
+        }
+        if (event instanceof MouseEvent || event instanceof KeyEvent) {
+            // Buttons fire their ActionEvent inside the mouse or key event, so name the button
+            Object source = event.getSource();
+            String name = source instanceof Component ? source.getClass().getSimpleName() : "?";
+            if (source instanceof AbstractButton && ((AbstractButton) source).getText() != null) {
+                name += " '" + ((AbstractButton) source).getText() + "'";
+            }
+            return event.paramString().split(",")[0] + " on " + name;
+        }
+        if (event instanceof InvocationEvent) {
+            // paramString() is "INVOCATION_DEFAULT,runnable=<task>,notifier=..."
+            String params = event.paramString();
+            int from = params.indexOf("runnable=");
+            int to = params.indexOf(",notifier");
+            String task = from < 0 || to < from ? "task" : params.substring(from + "runnable=".length(), to);
+            return "invokeLater " + task.replaceAll("\\$\\$Lambda.*", " lambda");
+        }
+        return event.getClass().getSimpleName();
+    }
+}
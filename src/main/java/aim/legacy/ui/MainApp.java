@@ -4,28 +4,35 @@
  * Main application window and entry point.
  * Provides navigation between customer and order management screens.
  * Uses CardLayout for switching between different views.
+ * 
+ * The window is shown before the database is touched. Opening and migrating
+ * the database, the product catalog and the customer search index are warmed
+ * up on background threads, and each screen is built the first time it is shown.
  */
 package aim.legacy.ui;
 
+import aim.legacy.cache.ProductCatalog;
 import aim.legacy.db.DB;
+import aim.legacy.search.CustomerIndex;
 
 import javax.swing.*;
 import java.awt.*;
 import java.sql.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainApp extends JFrame {
     
     private CardLayout cardLayout;
     private JPanel mainPanel;
+    private JMenuItem customersItem;
+    private JMenuItem ordersItem;
     
+    // Built lazily on first navigation
     private CustomersScreen customersScreen;
     private OrdersScreen ordersScreen;
-    
-    // Initialize database connection on startup
-    // This ensures the database is ready before any screens load
-    static {
-        DB.getConn();
-    }
+    private ReportJobsDialog reportJobsDialog;
     
     public MainApp() {
         super("Order Entry System");
@@ -37,23 +44,22 @@ public class MainApp extends JFrame {
         setLocationRelativeTo(null);
     }
     
-    // Set up the main window with menu bar and content panels
-    // Creates all screens and adds them to the card layout manager
+    // Set up the main window with menu bar and a startup placeholder
+    // Screens are added to the card layout when first shown
     private void setupUI() {
         setJMenuBar(createMenuBar());
         
         cardLayout = new CardLayout();
         mainPanel = new JPanel(cardLayout);
         
-        customersScreen = new CustomersScreen(this);
-        ordersScreen = new OrdersScreen(this);
-        
-        mainPanel.add(customersScreen, "customers");
-        mainPanel.add(ordersScreen, "orders");
+        JLabel loading = new JLabel("Opening database...", SwingConstants.CENTER);
+        mainPanel.add(loading, "loading");
         
         add(mainPanel);
         
-        showCustomersScreen();
+        // Navigation needs the database; enabled once it is open
+        customersItem.setEnabled(false);
+        ordersItem.setEnabled(false);
     }
     
     // Creates the application menu bar with navigation options
@@ -63,14 +69,18 @@ public class MainApp extends JFrame {
         
         JMenu menu = new JMenu("Navigation");
         
-        JMenuItem customersItem = new JMenuItem("Customers");
+        customersItem = new JMenuItem("Customers");
         customersItem.addActionListener(e -> showCustomersScreen());
         menu.add(customersItem);
         
-        JMenuItem ordersItem = new JMenuItem("Orders");
+        ordersItem = new JMenuItem("Orders");
         ordersItem.addActionListener(e -> showOrdersScreen());
         menu.add(ordersItem);
         
+        JMenuItem reportsItem = new JMenuItem("Report Jobs");
+        reportsItem.addActionListener(e -> showReportJobs());
+        menu.add(reportsItem);
+        
         menu.addSeparator();
         
         JMenuItem exitItem = new JMenuItem("Exit");
@@ -85,9 +95,23 @@ public class MainApp extends JFrame {
         return menuBar;
     }
     
+    // Called on the EDT once the database is open and migrated
+    private void onDatabaseReady() {
+        customersItem.setEnabled(true);
+        ordersItem.setEnabled(true);
+        showCustomersScreen();
+        StartupTimeline.getInstance().mark("first-interaction");
+    }
+    
     // Switch to customers screen and refresh the data
     // Uses card layout to swap views without creating new instances
     public void showCustomersScreen() {
+        if (customersScreen == null) {
+            StartupTimeline.getInstance().time("build-customers", () -> {
+                customersScreen = new CustomersScreen(this);
+                mainPanel.add(customersScreen, "customers");
+            });
+        }
         customersScreen.refresh();
         cardLayout.show(mainPanel, "customers");
     }
@@ -95,21 +119,82 @@ public class MainApp extends JFrame {
     // Switch to orders screen and refresh the data
     // Orders screen shows all customer orders with totals
     public void showOrdersScreen() {
+        if (ordersScreen == null) {
+            StartupTimeline.getInstance().time("build-orders", () -> {
+                ordersScreen = new OrdersScreen(this);
+                mainPanel.add(ordersScreen, "orders");
+            });
+        }
         ordersScreen.refresh();
         cardLayout.show(mainPanel, "orders");
     }
     
+    // Show the report jobs window, creating it on first use
+    // It is not modal, so order entry continues while reports run
+    public void showReportJobs() {
+        if (reportJobsDialog == null) {
+            reportJobsDialog = new ReportJobsDialog(this);
+        }
+        reportJobsDialog.setVisible(true);
+        reportJobsDialog.toFront();
+    }
+    
+    // Open the database and warm caches in the background
+    // Catalog and customer index load in parallel once the database is ready
+    private static void startWarmUp(MainApp app) {
+        StartupTimeline timeline = StartupTimeline.getInstance();
+        ExecutorService pool = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "startup-warmup");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        CompletableFuture<Void> db = CompletableFuture.runAsync(
+            () -> timeline.time("db-open-migrate", DB::getConn), pool);
+        db.thenRun(() -> SwingUtilities.invokeLater(app::onDatabaseReady));
+        
+        CompletableFuture<Void> catalog = db.thenRunAsync(() -> timeline.time("catalog-warmup", () -> {
+            try {
+                ProductCatalog.getInstance().load();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }), pool);
+        CompletableFuture<Void> index = db.thenRunAsync(() -> timeline.time("customer-index", () -> {
+            try {
+                CustomerIndex.getInstance().rebuild();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }), pool);
+        
+        CompletableFuture.allOf(catalog, index).whenComplete((v, e) -> {
+            pool.shutdown();
+            timeline.summary();
+        });
+    }
+    
     // Application entry point
     // Sets look and feel to match OS and launches the main window
     public static void main(String[] args) {
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-        }
+        StartupTimeline timeline = StartupTimeline.getInstance();
+        timeline.mark("main");
+        
+        // Times every event from here on and reports anything that freezes the UI
+        EdtMonitor.install();
+        
+        timeline.time("look-and-feel", () -> {
+            try {
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception e) {
+            }
+        });
         
         SwingUtilities.invokeLater(() -> {
             MainApp app = new MainApp();
             app.setVisible(true);
+            timeline.mark("frame-visible");
+            startWarmUp(app);
         });
     }
 }
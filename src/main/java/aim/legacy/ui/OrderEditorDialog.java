@@ -8,18 +8,31 @@
  */
 package aim.legacy.ui;
 
+import aim.legacy.cache.OrderCache;
+import aim.legacy.db.ConcurrentUpdateException;
 import aim.legacy.db.DB;
+import aim.legacy.db.IdempotencyKeys;
+import aim.legacy.db.OrderDao;
+import aim.legacy.domain.Order;
+import aim.legacy.domain.OrderLine;
+import aim.legacy.domain.OrderMerge;
+import aim.legacy.event.ChangeBus;
+import aim.legacy.event.ChangeEvent;
+import aim.legacy.pricing.OrderPricing;
+import aim.legacy.pricing.PriceBreakdown;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 
 public class OrderEditorDialog extends JDialog {
-
+    
     private long orderId;
     private boolean saved = false;
     
@@ -27,7 +40,7 @@ public class OrderEditorDialog extends JDialog {
     private Map<String, Long> customerMap = new HashMap<>();
     private Map<String, String> customerTypeMap = new HashMap<>();
     private JTable linesTable;
-    private DefaultTableModel linesTableModel;
+    private LinesTableModel linesTableModel;
     
     private JLabel subtotalLabel;
     private JLabel discountLabel;
@@ -35,10 +48,6 @@ public class OrderEditorDialog extends JDialog {
     private JLabel totalLabel;
     private JTextArea statusArea;
     
-    // Default tax rate is 14.975% for STANDARD customers
-    // Tax rates vary by customer type: STANDARD=14.975%, PREMIUM=12%, VIP=10%
-    private static final BigDecimal TAX_RATE = new BigDecimal("0.14975");
-    
     // Temp-table pattern: holds line items in memory before committing to database
     // This is similar to Progress ABL temp-tables for transaction buffering
     private class TempLine {
@@ -59,6 +68,133 @@ public class OrderEditorDialog extends JDialog {
     
     private ArrayList<TempLine> tempLines = new ArrayList<>();
     
+    // Table model that reads straight from tempLines
+    // Amounts stay BigDecimal and are formatted only when a cell is painted
+    private class LinesTableModel extends AbstractTableModel {
+        private final String[] columns = {"Product", "Quantity", "Unit Price", "Line Total"};
+        // Running sum of qty * price, kept in step with every change
+        private BigDecimal subtotal = BigDecimal.ZERO;
+        
+        public int getRowCount() {
+            return tempLines.size();
+        }
+        
+        public int getColumnCount() {
+            return columns.length;
+        }
+        
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+        
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 1: return Integer.class;
+                case 2:
+                case 3: return BigDecimal.class;
+                default: return String.class;
+            }
+        }
+        
+        public boolean isCellEditable(int row, int column) {
+            return column == 1 || column == 2;
+        }
+        
+        public Object getValueAt(int row, int column) {
+            TempLine line = tempLines.get(row);
+            switch (column) {
+                case 0: return line.prodName;
+                case 1: return line.qty;
+                case 2: return line.price;
+                default: return lineTotal(line);
+            }
+        }
+        
+        // Quantity must be positive and price zero or greater
+        // Rejected values leave the line unchanged and are reported in the status area
+        public void setValueAt(Object value, int row, int column) {
+            TempLine line = tempLines.get(row);
+            if (column == 1) {
+                int qty = ((Number) value).intValue();
+                if (qty <= 0) {
+                    rejectEdit("Line " + (row + 1) + ": Quantity must be positive");
+                    return;
+                }
+                if (qty == line.qty) return;
+                subtotal = subtotal.subtract(lineTotal(line));
+                line.qty = qty;
+            } else if (column == 2) {
+                BigDecimal price = new BigDecimal(value.toString()).setScale(2, RoundingMode.HALF_UP);
+                if (price.compareTo(BigDecimal.ZERO) < 0) {
+                    rejectEdit("Line " + (row + 1) + ": Unit price must be zero or greater");
+                    return;
+                }
+                if (price.compareTo(line.price) == 0) return;
+                subtotal = subtotal.subtract(lineTotal(line));
+                line.price = price;
+            } else {
+                return;
+            }
+            subtotal = subtotal.add(lineTotal(line));
+            fireTableRowsUpdated(row, row);
+            calculateTotals();
+        }
+        
+        void addLine(TempLine line) {
+            tempLines.add(line);
+            subtotal = subtotal.add(lineTotal(line));
+            int row = tempLines.size() - 1;
+            fireTableRowsInserted(row, row);
+        }
+        
+        void addLines(Collection<TempLine> lines) {
+            if (lines.isEmpty()) return;
+            int first = tempLines.size();
+            for (TempLine line : lines) {
+                tempLines.add(line);
+                subtotal = subtotal.add(lineTotal(line));
+            }
+            fireTableRowsInserted(first, tempLines.size() - 1);
+        }
+        
+        // Replace every line, e.g. after reloading or merging the order
+        void setLines(Collection<TempLine> lines) {
+            tempLines.clear();
+            subtotal = BigDecimal.ZERO;
+            for (TempLine line : lines) {
+                tempLines.add(line);
+                subtotal = subtotal.add(lineTotal(line));
+            }
+            fireTableDataChanged();
+        }
+        
+        void removeLine(int row) {
+            TempLine line = tempLines.remove(row);
+            subtotal = subtotal.subtract(lineTotal(line));
+            fireTableRowsDeleted(row, row);
+        }
+        
+        BigDecimal getSubtotal() {
+            return subtotal;
+        }
+        
+        private BigDecimal lineTotal(TempLine line) {
+            return line.price.multiply(BigDecimal.valueOf(line.qty));
+        }
+    }
+    
+    // Order date of the order being edited, kept for the cache write-through
+    private LocalDateTime loadedOrderDate;
+    
+    // The order as last read from the database: its version guards the save,
+    // and it is the common base when merging with someone else's changes
+    private Order baseOrder;
+    
+    // Idempotency key for saving a new order: a second save of the same new order,
+    // e.g. a retry after an error reported once the commit had already happened,
+    // resolves to the order the first save created instead of adding another
+    private String submissionKey = UUID.randomUUID().toString();
+    
     public OrderEditorDialog(Frame parent, long id) {
         super(parent, id == 0 ? "New Order" : "Edit Order", true);
         this.orderId = id;
@@ -88,13 +224,11 @@ public class OrderEditorDialog extends JDialog {
         
         JPanel centerPanel = new JPanel(new BorderLayout());
         
-        String[] columns = {"Product", "Quantity", "Unit Price", "Line Total"};
-        linesTableModel = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        linesTableModel = new LinesTableModel();
         linesTable = new JTable(linesTableModel);
+        linesTable.setDefaultRenderer(BigDecimal.class, new CurrencyRenderer());
+        // Commit an edit in progress when focus moves to Save or another control
+        linesTable.putClientProperty("terminateEditOnFocusLost", Boolean.TRUE);
         JScrollPane scrollPane = new JScrollPane(linesTable);
         centerPanel.add(scrollPane, BorderLayout.CENTER);
         
@@ -182,114 +316,54 @@ public class OrderEditorDialog extends JDialog {
         }
     }
     
+    // Load the order header and lines through the order cache
+    // Recently opened orders are served from memory without touching the database
     private void loadOrder() {
         try {
-            Connection conn = DB.getConn();
-            Statement stmt = conn.createStatement();
-            String sql = "SELECT cust_name FROM orders WHERE order_id = " + orderId;
-            ResultSet rs = stmt.executeQuery(sql);
-            
-            if (rs.next()) {
-                String custName = rs.getString("cust_name");
-                customerCombo.setSelectedItem(custName);
-            }
-            
-            rs.close();
-            
-            sql = "SELECT line_id, prod_id, prod_name, quantity, unit_price FROM order_line WHERE order_id = " + orderId;
-            rs = stmt.executeQuery(sql);
-            
-            while (rs.next()) {
-                TempLine line = new TempLine(
-                    rs.getLong("line_id"),
-                    rs.getLong("prod_id"),
-                    rs.getString("prod_name"),
-                    rs.getInt("quantity"),
-                    new BigDecimal(rs.getString("unit_price"))
-                );
-                tempLines.add(line);
+            Order order = OrderCache.getInstance().get(orderId);
+            if (order == null) {
+                return;
             }
-            
-            rs.close();
-            stmt.close();
-            
-            refreshLines();
+            baseOrder = order;
+            showOrder(order);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
     
-    private void refreshLines() {
-        linesTableModel.setRowCount(0);
-        for (TempLine line : tempLines) {
-            BigDecimal lineTotal = line.price.multiply(BigDecimal.valueOf(line.qty));
-            linesTableModel.addRow(new Object[]{
-                line.prodName,
-                line.qty,
-                "$" + line.price,
-                "$" + lineTotal.setScale(2, RoundingMode.HALF_UP)
-            });
+    // Put an order's customer and lines into the editor
+    private void showOrder(Order order) {
+        loadedOrderDate = order.getOrderDate();
+        customerCombo.setSelectedItem(order.getCustomerName());
+        
+        ArrayList<TempLine> lines = new ArrayList<>(order.getLines().size());
+        for (OrderLine orderLine : order.getLines()) {
+            TempLine line = new TempLine(
+                orderLine.getId() == null ? 0 : orderLine.getId(),
+                orderLine.getProductId(),
+                orderLine.getProductName(),
+                orderLine.getQuantity(),
+                orderLine.getUnitPrice()
+            );
+            lines.add(line);
         }
+        
+        // One event for the whole order instead of a row at a time
+        linesTableModel.setLines(lines);
+        calculateTotals();
     }
     
     // Calculate order totals including discounts and tax
-    // Discount and tax rules vary by customer type:
-    // STANDARD: Tiered discounts (5% @ $500, 10% @ $1000, 15% @ $2000), 14.975% tax
-    // PREMIUM: Tiered discounts (7% @ $400, 12% @ $800, 18% @ $1500), 12% tax
-    // VIP: Flat 20% discount, 10% tax
-    // Tax is applied to subtotal after discount
+    // Discount and tax rules by customer type are in OrderPricing
     private void calculateTotals() {
-        BigDecimal subtotal = BigDecimal.ZERO;
-        for (TempLine line : tempLines) {
-            BigDecimal lineTotal = line.price.multiply(BigDecimal.valueOf(line.qty));
-            subtotal = subtotal.add(lineTotal);
-        }
-        subtotal = subtotal.setScale(2, RoundingMode.HALF_UP);
-        
-        // Get customer type for calculation rules
+        // The lines model keeps the subtotal current, so this does not rescan every line
         String customerName = (String) customerCombo.getSelectedItem();
-        String customerType = customerTypeMap.get(customerName);
-        if (customerType == null) customerType = "STANDARD";
-        
-        BigDecimal discount = BigDecimal.ZERO;
-        BigDecimal taxRate = TAX_RATE;
-        
-        // Calculate discount based on customer type
-        // Note: This hardcoded approach is intentional legacy pattern
-        // Candidates should refactor to use Strategy pattern
-        if ("VIP".equals(customerType)) {
-            // VIP: Flat 20% discount
-            discount = subtotal.multiply(new BigDecimal("0.20"));
-            taxRate = new BigDecimal("0.10"); // 10% tax for VIP
-        } else if ("PREMIUM".equals(customerType)) {
-            // PREMIUM: Enhanced tiered discounts
-            if (subtotal.compareTo(new BigDecimal("1500")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.18"));
-            } else if (subtotal.compareTo(new BigDecimal("800")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.12"));
-            } else if (subtotal.compareTo(new BigDecimal("400")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.07"));
-            }
-            taxRate = new BigDecimal("0.12"); // 12% tax for PREMIUM
-        } else {
-            // STANDARD: Original tiered discounts
-            if (subtotal.compareTo(new BigDecimal("2000")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.15"));
-            } else if (subtotal.compareTo(new BigDecimal("1000")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.10"));
-            } else if (subtotal.compareTo(new BigDecimal("500")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.05"));
-            }
-            // taxRate remains TAX_RATE (14.975%) for STANDARD
-        }
-        discount = discount.setScale(2, RoundingMode.HALF_UP);
-        
-        BigDecimal taxableAmount = subtotal.subtract(discount);
-        BigDecimal tax = taxableAmount.multiply(taxRate);
-        tax = tax.setScale(2, RoundingMode.HALF_UP);
-        
-        BigDecimal total = subtotal.subtract(discount).add(tax);
-        total = total.setScale(2, RoundingMode.HALF_UP);
+        PriceBreakdown price = OrderPricing.price(customerTypeMap.get(customerName), linesTableModel.getSubtotal(),
+            linesTableModel.getRowCount());
+        BigDecimal subtotal = price.getSubtotal();
+        BigDecimal discount = price.getDiscount();
+        BigDecimal tax = price.getTax();
+        BigDecimal total = price.getTotal();
         
         subtotalLabel.setText("$" + subtotal);
         discountLabel.setText("$" + discount);
@@ -297,71 +371,16 @@ public class OrderEditorDialog extends JDialog {
         totalLabel.setText("$" + total);
     }
     
+    // Open the typeahead picker; each product added there becomes a new line
+    // The catalog is warmed up at startup and searched in memory
     private void addLine() {
-        try {
-            Connection conn = DB.getConn();
-            Statement stmt = conn.createStatement();
-            String sql = "SELECT prod_id, prod_name, unit_price FROM product ORDER BY prod_name";
-            ResultSet rs = stmt.executeQuery(sql);
-            
-            ArrayList<String> productList = new ArrayList<>();
-            Map<String, Long> prodIdMap = new HashMap<>();
-            Map<String, BigDecimal> priceMap = new HashMap<>();
-            
-            while (rs.next()) {
-                long id = rs.getLong("prod_id");
-                String name = rs.getString("prod_name");
-                BigDecimal price = new BigDecimal(rs.getString("unit_price"));
-                String item = name + " - $" + price;
-                productList.add(item);
-                prodIdMap.put(item, id);
-                priceMap.put(item, price);
-            }
-            
-            rs.close();
-            stmt.close();
-            
-            if (productList.isEmpty()) {
-                JOptionPane.showMessageDialog(this, "No products available");
-                return;
-            }
-            
-            String selected = (String) JOptionPane.showInputDialog(
-                this,
-                "Select product:",
-                "Add Line",
-                JOptionPane.QUESTION_MESSAGE,
-                null,
-                productList.toArray(),
-                productList.get(0)
-            );
-            
-            if (selected == null) return;
-            
-            String qtyStr = JOptionPane.showInputDialog(this, "Enter quantity:", "1");
-            if (qtyStr == null) return;
-            
-            int quantity = 1;
-            try {
-                quantity = Integer.parseInt(qtyStr);
-            } catch (NumberFormatException e) {
-                JOptionPane.showMessageDialog(this, "Invalid quantity");
-                return;
-            }
-            
-            long prodId = prodIdMap.get(selected);
-            BigDecimal price = priceMap.get(selected);
-            String prodName = selected.substring(0, selected.lastIndexOf(" - $"));
-            
+        ProductPickerDialog picker = new ProductPickerDialog(this, (product, quantity) -> {
             long nextLineId = tempLines.size() + 1;
-            TempLine line = new TempLine(nextLineId, prodId, prodName, quantity, price);
-            tempLines.add(line);
-            
-            refreshLines();
+            TempLine line = new TempLine(nextLineId, product.getId(), product.getName(), quantity, product.getUnitPrice());
+            linesTableModel.addLine(line);
             calculateTotals();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        });
+        picker.setVisible(true);
     }
     
     private void removeLine() {
@@ -371,12 +390,24 @@ public class OrderEditorDialog extends JDialog {
             return;
         }
         
-        tempLines.remove(selectedRow);
-        refreshLines();
+        if (linesTable.isEditing()) {
+            linesTable.getCellEditor().cancelCellEditing();
+        }
+        linesTableModel.removeLine(linesTable.convertRowIndexToModel(selectedRow));
         calculateTotals();
     }
     
+    // Report a rejected in-place edit without a modal dialog
+    private void rejectEdit(String message) {
+        Toolkit.getDefaultToolkit().beep();
+        statusArea.setText(message);
+    }
+    
     private void save() {
+        if (linesTable.isEditing() && !linesTable.getCellEditor().stopCellEditing()) {
+            return;
+        }
+        
         String customerName = (String) customerCombo.getSelectedItem();
         if (customerName == null) {
             JOptionPane.showMessageDialog(this, "Please select a customer");
@@ -405,49 +436,20 @@ public class OrderEditorDialog extends JDialog {
             }
         }
         
-        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal lineSum = BigDecimal.ZERO;
         for (TempLine line : tempLines) {
-            subtotal = subtotal.add(line.price.multiply(BigDecimal.valueOf(line.qty)));
-        }
-        subtotal = subtotal.setScale(2, RoundingMode.HALF_UP);
-        
-        // Get customer type for calculation rules
-        String customerType = customerTypeMap.get(customerName);
-        if (customerType == null) customerType = "STANDARD";
-        
-        BigDecimal discount = BigDecimal.ZERO;
-        BigDecimal maxDiscountRate = new BigDecimal("0.15");
-        
-        // Calculate discount based on customer type
-        if ("VIP".equals(customerType)) {
-            discount = subtotal.multiply(new BigDecimal("0.20"));
-            maxDiscountRate = new BigDecimal("0.20");
-        } else if ("PREMIUM".equals(customerType)) {
-            if (subtotal.compareTo(new BigDecimal("1500")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.18"));
-            } else if (subtotal.compareTo(new BigDecimal("800")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.12"));
-            } else if (subtotal.compareTo(new BigDecimal("400")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.07"));
-            }
-            maxDiscountRate = new BigDecimal("0.18");
-        } else {
-            // STANDARD
-            if (subtotal.compareTo(new BigDecimal("2000")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.15"));
-            } else if (subtotal.compareTo(new BigDecimal("1000")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.10"));
-            } else if (subtotal.compareTo(new BigDecimal("500")) >= 0) {
-                discount = subtotal.multiply(new BigDecimal("0.05"));
+            if (line.price != null) {
+                lineSum = lineSum.add(line.price.multiply(BigDecimal.valueOf(line.qty)));
             }
         }
-        discount = discount.setScale(2, RoundingMode.HALF_UP);
         
-        if (subtotal.compareTo(BigDecimal.ZERO) > 0) {
-            BigDecimal discountRate = discount.divide(subtotal, 4, RoundingMode.HALF_UP);
-            if (discountRate.compareTo(maxDiscountRate) > 0) {
-                errors.add("Discount cannot exceed " + maxDiscountRate.multiply(new BigDecimal("100")).intValue() + "%");
-            }
+        // Discount and tax rules by customer type live in OrderPricing
+        PriceBreakdown price = OrderPricing.price(customerTypeMap.get(customerName), lineSum, tempLines.size());
+        BigDecimal subtotal = price.getSubtotal();
+        BigDecimal discount = price.getDiscount();
+        
+        if (!price.isDiscountWithinLimit()) {
+            errors.add("Discount cannot exceed " + price.getMaxDiscountRate().multiply(new BigDecimal("100")).intValue() + "%");
         }
         
         if (!errors.isEmpty()) {
@@ -460,88 +462,130 @@ public class OrderEditorDialog extends JDialog {
             return;
         }
         
+        boolean isNew = orderId == 0;
+        Order order = new Order(isNew ? null : orderId, custId, customerName);
+        // Same UTC timestamp datetime('now') would produce, but known here for the cache
+        order.setOrderDate(isNew ? LocalDateTime.now(ZoneOffset.UTC).withNano(0) : loadedOrderDate);
+        order.setSubtotal(subtotal);
+        order.setDiscount(discount);
+        order.setTax(price.getTax());
+        order.setTotal(price.getTotal());
+        order.setVersion(baseOrder == null ? 0 : baseOrder.getVersion());
+        if (isNew) {
+            order.setIdempotencyKey(submissionKey);
+        }
+        for (TempLine line : tempLines) {
+            order.addLine(new OrderLine(null, line.prodId, line.prodName, line.qty, line.price));
+        }
+        
         try {
+            // One transaction, so a failure cannot leave the order without its lines
             Connection conn = DB.getConn();
-            Statement stmt = conn.createStatement();
-            
-            // Calculate tax based on customer type (customerType already defined above)
-            BigDecimal taxRate = TAX_RATE;
-            if ("VIP".equals(customerType)) {
-                taxRate = new BigDecimal("0.10");
-            } else if ("PREMIUM".equals(customerType)) {
-                taxRate = new BigDecimal("0.12");
+            boolean written;
+            DB.beginWrite(conn);
+            try {
+                written = OrderDao.save(conn, order);
+                DB.commitWrite(conn);
+            } catch (SQLException e) {
+                DB.rollbackWrite(conn);
+                throw e;
             }
-            
-            BigDecimal taxableAmount = subtotal.subtract(discount);
-            BigDecimal tax = taxableAmount.multiply(taxRate).setScale(2, RoundingMode.HALF_UP);
-            BigDecimal total = subtotal.subtract(discount).add(tax);
-            
-            if (orderId == 0) {
-                String sql = "SELECT MAX(order_id) FROM orders";
-                ResultSet rs = stmt.executeQuery(sql);
-                long nextOrderId = 1;
-                if (rs.next()) {
-                    nextOrderId = rs.getLong(1) + 1;
-                }
-                orderId = nextOrderId;
-                
-                String insertSql = "INSERT INTO orders (order_id, cust_id, cust_name, order_date, subtotal, discount, tax, total) VALUES (" +
-                    orderId + ", " + custId + ", '" + customerName.replace("'", "''") + "', datetime('now'), " +
-                    subtotal + ", " + discount + ", " + tax + ", " + total + ")";
-                stmt.execute(insertSql);
-                
-                // Get max line_id to ensure globally unique line IDs
-                rs = stmt.executeQuery("SELECT MAX(line_id) FROM order_line");
-                long nextLineId = 1;
-                if (rs.next()) {
-                    nextLineId = rs.getLong(1) + 1;
-                }
-                
-                for (int i = 0; i < tempLines.size(); i++) {
-                    TempLine line = tempLines.get(i);
-                    String lineSql = "INSERT INTO order_line (line_id, order_id, prod_id, prod_name, quantity, unit_price) VALUES (" +
-                        (nextLineId + i) + ", " + orderId + ", " + line.prodId + ", '" + line.prodName.replace("'", "''") + "', " +
-                        line.qty + ", " + line.price + ")";
-                    stmt.execute(lineSql);
-                }
-            } else {
-                String updateSql = "UPDATE orders SET cust_id = " + custId + ", cust_name = '" + customerName.replace("'", "''") + "', " +
-                    "subtotal = " + subtotal + ", discount = " + discount + ", tax = " + tax + ", total = " + total +
-                    " WHERE order_id = " + orderId;
-                stmt.execute(updateSql);
-                
-                String deleteSql = "DELETE FROM order_line WHERE order_id = " + orderId;
-                stmt.execute(deleteSql);
-                
-                // Get max line_id to ensure globally unique line IDs
-                ResultSet rs = stmt.executeQuery("SELECT MAX(line_id) FROM order_line");
-                long nextLineId = 1;
-                if (rs.next()) {
-                    nextLineId = rs.getLong(1) + 1;
-                }
-                
-                for (int i = 0; i < tempLines.size(); i++) {
-                    TempLine line = tempLines.get(i);
-                    String lineSql = "INSERT INTO order_line (line_id, order_id, prod_id, prod_name, quantity, unit_price) VALUES (" +
-                        (nextLineId + i) + ", " + orderId + ", " + line.prodId + ", '" + line.prodName.replace("'", "''") + "', " +
-                        line.qty + ", " + line.price + ")";
-                    stmt.execute(lineSql);
-                }
+            orderId = order.getId();
+            if (!written) {
+                // Already saved under this key; nothing new to cache or announce
+                statusArea.setText("Order was already saved as #" + orderId);
+                saved = true;
+                javax.swing.Timer timer = new javax.swing.Timer(500, e -> dispose());
+                timer.setRepeats(false);
+                timer.start();
+                return;
+            }
+            if (isNew) {
+                IdempotencyKeys.getInstance().rememberOrders(Collections.singletonList(order));
             }
+            loadedOrderDate = order.getOrderDate();
+            baseOrder = order;
+            
+            // Write-through so the next open of this order is served from the cache
+            OrderCache.getInstance().put(order);
+            ChangeBus.publish(ChangeEvent.Table.ORDERS, isNew ? ChangeEvent.Type.INSERT : ChangeEvent.Type.UPDATE, orderId);
             
-            stmt.close();
             statusArea.setText("Order saved successfully");
             saved = true;
             
             javax.swing.Timer timer = new javax.swing.Timer(500, e -> dispose());
             timer.setRepeats(false);
             timer.start();
+        } catch (ConcurrentUpdateException e) {
+            // Nothing was written; the cached copy is the stale one
+            OrderCache.getInstance().invalidate(orderId);
+            resolveConflict(order, e);
         } catch (SQLException e) {
             e.printStackTrace();
+            // A partial save leaves the cached copy unreliable
+            OrderCache.getInstance().invalidate(orderId);
             JOptionPane.showMessageDialog(this, "Error saving order: " + e.getMessage());
         }
     }
     
+    // Someone else saved or deleted this order after it was opened
+    // Offer to merge their changes into this edit, take theirs, or keep editing
+    private void resolveConflict(Order mine, ConcurrentUpdateException conflict) {
+        if (conflict.isDeleted()) {
+            int choice = JOptionPane.showConfirmDialog(this,
+                "Order #" + orderId + " was deleted by another user.\nSave your version as a new order?",
+                "Order Deleted", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (choice == JOptionPane.YES_OPTION) {
+                orderId = 0;
+                baseOrder = null;
+                submissionKey = UUID.randomUUID().toString();
+                setTitle("New Order");
+                save();
+            }
+            return;
+        }
+        
+        Order theirs;
+        try {
+            theirs = OrderDao.load(DB.getConn(), orderId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error reloading order: " + e.getMessage());
+            return;
+        }
+        if (theirs == null) {
+            resolveConflict(mine, new ConcurrentUpdateException("orders", orderId, conflict.getExpectedVersion(), 0));
+            return;
+        }
+        
+        OrderMerge.Result merge = OrderMerge.merge(baseOrder, mine, theirs);
+        StringBuilder message = new StringBuilder("Order #" + orderId + " was changed by another user while you were editing it.\n\n");
+        message.append("Merge keeps your changes and takes theirs everywhere you changed nothing.\n");
+        if (merge.hasConflicts()) {
+            message.append("\nYou both changed:\n");
+            for (String line : merge.getConflicts()) {
+                message.append("- ").append(line).append("\n");
+            }
+            message.append("Merge keeps your version of these.\n");
+        }
+        
+        Object[] options = {"Merge", "Reload Theirs", "Keep Editing"};
+        int choice = JOptionPane.showOptionDialog(this, message.toString(), "Order Changed",
+            JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+        if (choice == 0) {
+            baseOrder = theirs;
+            showOrder(merge.getOrder());
+            statusArea.setText("Merged with the other user's changes" +
+                (merge.hasConflicts() ? " (" + merge.getConflicts().size() + " conflicting, yours kept)" : "") +
+                ". Review and save again.");
+        } else if (choice == 1) {
+            baseOrder = theirs;
+            showOrder(theirs);
+            statusArea.setText("Reloaded the other user's version; your changes were discarded.");
+        }
+        // Keep Editing: the next save detects the same conflict again
+    }
+    
     private void cancel() {
         saved = false;
         dispose();
@@ -7,50 +7,155 @@
  */
 package aim.legacy.ui;
 
+import aim.legacy.cache.OrderCache;
+import aim.legacy.db.ConcurrentUpdateException;
 import aim.legacy.db.DB;
+import aim.legacy.db.OrderDao;
+import aim.legacy.db.OrderPage;
+import aim.legacy.db.OrderQuery;
+import aim.legacy.domain.Customer;
+import aim.legacy.domain.Order;
+import aim.legacy.event.ChangeBus;
+import aim.legacy.event.ChangeEvent;
+import aim.legacy.report.ReportJobQueue;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.sql.*;
 
-import com.itextpdf.text.*;
-import com.itextpdf.text.pdf.*;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class OrdersScreen extends JPanel {
 
     private final MainApp mainApp;
     
     private JTable orderTable;
-    private DefaultTableModel tableModel;
+    private PagedTableModel<Order> tableModel;
+    
+    private static final String[] COLUMNS = {"ID", "Customer", "Date", "Subtotal", "Discount", "Tax", "Total"};
+    private static final Class<?>[] COLUMN_TYPES = {
+        Long.class, String.class, LocalDateTime.class, BigDecimal.class, BigDecimal.class, BigDecimal.class, BigDecimal.class
+    };
+    
+    // Customer filter: picked by id through CustomerPickerDialog, null for all customers
+    private JTextField customerFilterField;
+    private Long customerFilterId;
+    private JTextField fromDateField;
+    private JTextField toDateField;
+    private JComboBox<String> typeFilter;
+    private JTextField minTotalField;
+    private JTextField maxTotalField;
+    private JLabel countLabel;
+    
+    // Current filter and sort order
+    private OrderQuery query = new OrderQuery();
+    
+    // Beyond this many queued changes a reload is cheaper than replaying deltas
+    private static final int MAX_PENDING_CHANGES = 500;
+    
+    // Data versions the screen reflects, and order changes not yet applied
+    private long seenOrdersVersion = -1;
+    private long seenCustomersVersion = -1;
+    private final List<ChangeEvent> pendingChanges = new ArrayList<>();
     
     public OrdersScreen(MainApp mainApp) {
         this.mainApp = mainApp;
         setupUI();
+        seenCustomersVersion = ChangeBus.version(ChangeEvent.Table.CUSTOMER);
         loadOrders();
+        ChangeBus.addListener(this::onDataChange);
     }
     
     private void setupUI() {
         setLayout(new BorderLayout());
         
         JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        topPanel.add(new JLabel("Orders"));
+        topPanel.add(new JLabel("Customer:"));
+        customerFilterField = new JTextField("All", 12);
+        customerFilterField.setEditable(false);
+        topPanel.add(customerFilterField);
+        JButton pickCustomerButton = new JButton("...");
+        pickCustomerButton.setToolTipText("Choose customer");
+        pickCustomerButton.addActionListener(e -> pickCustomerFilter());
+        topPanel.add(pickCustomerButton);
+        topPanel.add(new JLabel("From:"));
+        fromDateField = new JTextField(7);
+        fromDateField.setToolTipText("yyyy-MM-dd");
+        topPanel.add(fromDateField);
+        topPanel.add(new JLabel("To:"));
+        toDateField = new JTextField(7);
+        toDateField.setToolTipText("yyyy-MM-dd (inclusive)");
+        topPanel.add(toDateField);
+        topPanel.add(new JLabel("Type:"));
+        typeFilter = new JComboBox<>(new String[]{"All", "STANDARD", "PREMIUM", "VIP"});
+        topPanel.add(typeFilter);
+        topPanel.add(new JLabel("Total:"));
+        minTotalField = new JTextField(5);
+        minTotalField.setToolTipText("Minimum total");
+        topPanel.add(minTotalField);
+        topPanel.add(new JLabel("-"));
+        maxTotalField = new JTextField(5);
+        maxTotalField.setToolTipText("Maximum total");
+        topPanel.add(maxTotalField);
+        JButton applyButton = new JButton("Filter");
+        applyButton.addActionListener(e -> applyFilters());
+        topPanel.add(applyButton);
+        JButton clearButton = new JButton("Clear");
+        clearButton.addActionListener(e -> clearFilters());
+        topPanel.add(clearButton);
         add(topPanel, BorderLayout.NORTH);
         
-        String[] columns = {"ID", "Customer", "Date", "Subtotal", "Discount", "Tax", "Total"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            public boolean isCellEditable(int row, int column) {
-                return false;
+        // Only the visible pages of the current query are ever loaded
+        tableModel = new PagedTableModel<Order>(COLUMNS, COLUMN_TYPES) {
+            @Override
+            protected long idOf(Order order) {
+                return order.getId();
+            }
+            
+            @Override
+            protected Object valueOf(Order order, int column) {
+                switch (column) {
+                    case 0: return order.getId();
+                    case 1: return order.getCustomerName();
+                    case 2: return order.getOrderDate();
+                    case 3: return order.getSubtotal();
+                    case 4: return order.getDiscount();
+                    case 5: return order.getTax();
+                    default: return order.getTotal();
+                }
             }
         };
+        tableModel.addTableModelListener(e -> updateCountLabel());
         orderTable = new JTable(tableModel);
+        orderTable.setDefaultRenderer(BigDecimal.class, new CurrencyRenderer());
+        orderTable.setDefaultRenderer(LocalDateTime.class, new DateTimeRenderer());
+        // Clicking a header sorts by that column in SQL; clicking again reverses
+        orderTable.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int col = orderTable.columnAtPoint(e.getPoint());
+                if (col >= 0) {
+                    sortBy(OrderQuery.SortColumn.values()[orderTable.convertColumnIndexToModel(col)]);
+                }
+            }
+        });
         JScrollPane scrollPane = new JScrollPane(orderTable);
         add(scrollPane, BorderLayout.CENTER);
         
+        JPanel southPanel = new JPanel(new BorderLayout());
+        JPanel countPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        countLabel = new JLabel();
+        countPanel.add(countLabel);
+        southPanel.add(countPanel, BorderLayout.EAST);
+        
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         JButton newButton = new JButton("New Order");
         newButton.addActionListener(e -> createOrder());
@@ -68,54 +173,185 @@ public class OrdersScreen extends JPanel {
         reportButton.addActionListener(e -> generateReport());
         buttonPanel.add(reportButton);
         
-        add(buttonPanel, BorderLayout.SOUTH);
+        JButton statementsButton = new JButton("Statements...");
+        statementsButton.addActionListener(e -> generateStatements());
+        buttonPanel.add(statementsButton);
+        
+        southPanel.add(buttonPanel, BorderLayout.WEST);
+        add(southPanel, BorderLayout.SOUTH);
     }
     
-    // Refresh order list when returning to this screen
-    // Ensures latest data is always displayed
+    // Bring the screen up to date when returning to it
+    // Does nothing when no order or customer changed since it was last shown
     public void refresh() {
+        if (ChangeBus.version(ChangeEvent.Table.CUSTOMER) != seenCustomersVersion) {
+            seenCustomersVersion = ChangeBus.version(ChangeEvent.Table.CUSTOMER);
+            if (query.getCustomerType() != null) {
+                // A customer's type change moves their orders in or out of the view
+                loadOrders();
+                return;
+            }
+        }
+        if (ChangeBus.version(ChangeEvent.Table.ORDERS) != seenOrdersVersion) {
+            applyPendingChanges();
+        }
+    }
+    
+    // Queue order changes; apply them right away while the screen is visible
+    private void onDataChange(ChangeEvent event) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> onDataChange(event));
+            return;
+        }
+        if (event.getTable() != ChangeEvent.Table.ORDERS) {
+            return;
+        }
+        pendingChanges.add(event);
+        if (isShowing()) {
+            applyPendingChanges();
+        }
+    }
+    
+    // Replay queued changes as row-level deltas on the table model
+    private void applyPendingChanges() {
+        if (pendingChanges.size() > MAX_PENDING_CHANGES) {
+            tableModel.reload();
+        } else {
+            for (ChangeEvent event : pendingChanges) {
+                tableModel.applyChange(event.getType(), event.getId());
+            }
+        }
+        pendingChanges.clear();
+        seenOrdersVersion = ChangeBus.version(ChangeEvent.Table.ORDERS);
+    }
+    
+    // Choose the customer to filter by; the choice is kept by id, so namesakes stay distinct
+    // Matches are looked up off the EDT as the user types, never the whole customer table
+    private void pickCustomerFilter() {
+        Customer customer = new CustomerPickerDialog((Frame) SwingUtilities.getWindowAncestor(this)).pick();
+        if (customer != null) {
+            customerFilterId = customer.getId();
+            customerFilterField.setText(customer.getName() + " (#" + customer.getId() + ")");
+            customerFilterField.setCaretPosition(0);
+        }
+    }
+    
+    // Read the filter fields into a new query and show its first page
+    // The current sort order is kept
+    private void applyFilters() {
+        OrderQuery q = new OrderQuery();
+        q.setSortColumn(query.getSortColumn());
+        q.setDescending(query.isDescending());
+        
+        q.setCustomerId(customerFilterId);
+        String type = (String) typeFilter.getSelectedItem();
+        if (type != null && !"All".equals(type)) {
+            q.setCustomerType(type);
+        }
+        try {
+            q.setFromDate(parseDate(fromDateField.getText()));
+            q.setToDate(parseDate(toDateField.getText()));
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Invalid date, please use yyyy-MM-dd");
+            return;
+        }
+        try {
+            q.setMinTotal(parseAmount(minTotalField.getText()));
+            q.setMaxTotal(parseAmount(maxTotalField.getText()));
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Invalid total amount");
+            return;
+        }
+        
+        query = q;
         loadOrders();
     }
     
-    // Load all orders from database with pre-calculated totals
-    // Formats currency values for display in table
+    private void clearFilters() {
+        customerFilterId = null;
+        customerFilterField.setText("All");
+        typeFilter.setSelectedItem("All");
+        fromDateField.setText("");
+        toDateField.setText("");
+        minTotalField.setText("");
+        maxTotalField.setText("");
+        applyFilters();
+    }
+    
+    private static LocalDate parseDate(String text) {
+        text = text.trim();
+        return text.isEmpty() ? null : LocalDate.parse(text);
+    }
+    
+    private static BigDecimal parseAmount(String text) {
+        text = text.trim().replace("$", "");
+        return text.isEmpty() ? null : new BigDecimal(text);
+    }
+    
+    // Sort by the given column, toggling direction when it is already the sort column
+    private void sortBy(OrderQuery.SortColumn column) {
+        if (query.getSortColumn() == column) {
+            query.setDescending(!query.isDescending());
+        } else {
+            query.setSortColumn(column);
+            query.setDescending(false);
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            String header = COLUMNS[i];
+            if (i == column.ordinal()) {
+                header += query.isDescending() ? " \u25BC" : " \u25B2";
+            }
+            orderTable.getColumnModel().getColumn(orderTable.convertColumnIndexToView(i)).setHeaderValue(header);
+        }
+        orderTable.getTableHeader().repaint();
+        loadOrders();
+    }
+    
+    private void updateCountLabel() {
+        int count = tableModel.getRowCount();
+        countLabel.setText(count == 1 ? "1 order" : count + " orders");
+    }
+    
+    
+    // Point the table at the orders matching the current filters
+    // Filtering and sorting run in SQL; pages are read as they scroll into view
     private void loadOrders() {
-        tableModel.setRowCount(0);
-        try {
-            Connection conn = DB.getConn();
-            Statement stmt = conn.createStatement();
-            String sql = "SELECT order_id, cust_name, order_date, subtotal, discount, tax, total FROM orders ORDER BY order_id";
-            ResultSet rs = stmt.executeQuery(sql);
+        pendingChanges.clear();
+        seenOrdersVersion = ChangeBus.version(ChangeEvent.Table.ORDERS);
+        final OrderQuery q = query.copy();
+        tableModel.setSource(new RowSource<Order>() {
+            @Override
+            public int count(Connection conn) throws SQLException {
+                return q.count(conn);
+            }
             
-            while (rs.next()) {
-                tableModel.addRow(new Object[]{
-                    rs.getLong("order_id"),
-                    rs.getString("cust_name"),
-                    rs.getString("order_date"),
-                    "$" + String.format("%.2f", rs.getDouble("subtotal")),
-                    "$" + String.format("%.2f", rs.getDouble("discount")),
-                    "$" + String.format("%.2f", rs.getDouble("tax")),
-                    "$" + String.format("%.2f", rs.getDouble("total"))
-                });
+            @Override
+            public RowPage<Order> fetch(Connection conn, int offset, int limit, Object afterKey) throws SQLException {
+                OrderPage page = afterKey != null
+                    ? q.fetchAfter(conn, (Object[]) afterKey, limit)
+                    : q.fetchAt(conn, offset, limit);
+                return new RowPage<>(page.getOrders(), page.getLastKey());
             }
             
-            rs.close();
-            stmt.close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading orders: " + e.getMessage());
-        }
+            @Override
+            public Order fetchRow(Connection conn, long id) throws SQLException {
+                List<Order> orders = q.fetchById(conn, id).getOrders();
+                return orders.isEmpty() ? null : orders.get(0);
+            }
+            
+            @Override
+            public int indexOf(Connection conn, long id) throws SQLException {
+                return q.positionOf(conn, id);
+            }
+        });
     }
     
     // Open new order dialog
     // Dialog handles all order creation logic including line items
     private void createOrder() {
         OrderEditorDialog dialog = new OrderEditorDialog((Frame) SwingUtilities.getWindowAncestor(this), 0);
+        // Saving publishes the change; the table picks it up from the change bus
         dialog.setVisible(true);
-        
-        if (dialog.isSaved()) {
-            loadOrders();
-        }
     }
     
     private void editOrder() {
@@ -125,302 +361,98 @@ public class OrdersScreen extends JPanel {
             return;
         }
         
-        long id = (Long) tableModel.getValueAt(selectedRow, 0);
+        Order selected = tableModel.getRow(selectedRow);
+        if (selected == null) {
+            return;
+        }
+        long id = selected.getId();
         
         OrderEditorDialog dialog = new OrderEditorDialog((Frame) SwingUtilities.getWindowAncestor(this), id);
+        // Saving publishes the change; the table picks it up from the change bus
         dialog.setVisible(true);
-        
-        if (dialog.isSaved()) {
-            loadOrders();
-        }
     }
     
+    // Delete the selected order and its lines in one write transaction
+    // The version read before confirming guards the delete, so changes another
+    // user saves meanwhile are never deleted unseen; the row is reloaded instead
     private void deleteOrder() {
         int selectedRow = orderTable.getSelectedRow();
         if (selectedRow < 0) {
             JOptionPane.showMessageDialog(this, "Please select an order to delete");
             return;
         }
+        Order selected = tableModel.getRow(selectedRow);
+        if (selected == null) {
+            return;
+        }
+        long id = selected.getId();
         
-        int confirm = JOptionPane.showConfirmDialog(this, 
-            "Are you sure you want to delete this order?",
-            "Confirm Delete", 
-            JOptionPane.YES_NO_OPTION);
-        
-        if (confirm == JOptionPane.YES_OPTION) {
-            long id = (Long) tableModel.getValueAt(selectedRow, 0);
+        try {
+            Order current = OrderDao.load(DB.getConn(), id);
+            if (current == null) {
+                throw new ConcurrentUpdateException("orders", id, 0, 0);
+            }
+            
+            int confirm = JOptionPane.showConfirmDialog(this, 
+                "Are you sure you want to delete this order?",
+                "Confirm Delete", 
+                JOptionPane.YES_NO_OPTION);
+            if (confirm != JOptionPane.YES_OPTION) {
+                return;
+            }
             
+            Connection conn = DB.getConn();
+            DB.beginWrite(conn);
             try {
-                Connection conn = DB.getConn();
-                Statement stmt = conn.createStatement();
-                String sql = "DELETE FROM order_line WHERE order_id = " + id;
-                stmt.execute(sql);
-                sql = "DELETE FROM orders WHERE order_id = " + id;
-                stmt.execute(sql);
-                
-                stmt.close();
-                loadOrders();
+                OrderDao.delete(conn, id, current.getVersion());
+                DB.commitWrite(conn);
             } catch (SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Error deleting order: " + e.getMessage());
+                DB.rollbackWrite(conn);
+                throw e;
             }
+            OrderCache.getInstance().invalidate(id);
+            ChangeBus.publish(ChangeEvent.Table.ORDERS, ChangeEvent.Type.DELETE, id);
+        } catch (ConcurrentUpdateException e) {
+            // Nothing was deleted; show the order as it is now
+            OrderCache.getInstance().invalidate(id);
+            tableModel.applyChange(e.isDeleted() ? ChangeEvent.Type.DELETE : ChangeEvent.Type.UPDATE, id);
+            JOptionPane.showMessageDialog(this, e.isDeleted()
+                ? "This order was already deleted by another user"
+                : "This order was changed by another user and has been reloaded.\nReview it and delete again if it should still go.",
+                "Order Changed", JOptionPane.WARNING_MESSAGE);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error deleting order: " + e.getMessage());
         }
     }
     
-    // Generate order summary report
-    // Creates PDF report in reports directory
+    // Queue the order summary PDF as a background job and show the jobs window
+    // The report reads its own connection, so order entry is not blocked
     private void generateReport() {
+        ReportJobQueue.getInstance().submitOrderSummary();
+        mainApp.showReportJobs();
+    }
+    
+    // Ask for a month and queue customer statements for it as a background job
+    // Defaults to last month; a month already started resumes where it stopped
+    private void generateStatements() {
+        String input = (String) JOptionPane.showInputDialog(this,
+            "Statement month (yyyy-MM):",
+            "Customer Statements",
+            JOptionPane.QUESTION_MESSAGE,
+            null,
+            null,
+            YearMonth.now().minusMonths(1).toString());
+        if (input == null) return;
+        
+        YearMonth period;
         try {
-            String reportDir = "reports";
-            String reportFilename = "OrderSummary.pdf";
-            
-            File dir = new File(reportDir);
-            if (!dir.exists()) {
-                dir.mkdirs();
-            }
-            
-            String filePath = reportDir + File.separator + reportFilename;
-            
-            // Create PDF document
-            Document document = new Document(PageSize.LETTER, 50, 50, 50, 50);
-            PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(filePath));
-            document.open();
-            
-            // PDF formatting constants defined inline
-            com.itextpdf.text.Font titleFont = new com.itextpdf.text.Font(com.itextpdf.text.Font.FontFamily.HELVETICA, 18, com.itextpdf.text.Font.BOLD);
-            com.itextpdf.text.Font headerFont = new com.itextpdf.text.Font(com.itextpdf.text.Font.FontFamily.HELVETICA, 12, com.itextpdf.text.Font.BOLD);
-            com.itextpdf.text.Font normalFont = new com.itextpdf.text.Font(com.itextpdf.text.Font.FontFamily.HELVETICA, 10, com.itextpdf.text.Font.NORMAL);
-            com.itextpdf.text.Font smallFont = new com.itextpdf.text.Font(com.itextpdf.text.Font.FontFamily.HELVETICA, 8, com.itextpdf.text.Font.NORMAL);
-            
-            // Add header section
-            Paragraph company = new Paragraph("AIM Order Entry System", headerFont);
-            company.setAlignment(Element.ALIGN_CENTER);
-            document.add(company);
-            document.add(new Paragraph(" "));
-            
-            Paragraph title = new Paragraph("Order Summary Report", titleFont);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-            
-            SimpleDateFormat sdf = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss");
-            Paragraph timestamp = new Paragraph("Generated: " + sdf.format(new Date()), smallFont);
-            timestamp.setAlignment(Element.ALIGN_CENTER);
-            document.add(timestamp);
-            
-            document.add(new Paragraph(" "));
-            document.add(new Paragraph(" "));
-            
-            // Create orders table directly in this method
-            PdfPTable table = new PdfPTable(7);
-            table.setWidthPercentage(100);
-            table.setWidths(new float[]{1.0f, 2.5f, 2.0f, 1.5f, 1.5f, 1.5f, 1.5f});
-            
-            // Add header row
-            BaseColor headerColor = new BaseColor(200, 200, 200);
-            String[] headers = {"Order ID", "Customer", "Date", "Subtotal", "Discount", "Tax", "Total"};
-            for (String header : headers) {
-                PdfPCell cell = new PdfPCell(new Phrase(header, headerFont));
-                cell.setHorizontalAlignment(Element.ALIGN_CENTER);
-                cell.setVerticalAlignment(Element.ALIGN_MIDDLE);
-                cell.setBackgroundColor(headerColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-            }
-            
-            // Query database directly - no repository pattern
-            Connection conn = DB.getConn();
-            Statement stmt = conn.createStatement();
-            String sql = "SELECT order_id, cust_name, order_date, subtotal, discount, tax, total FROM orders ORDER BY order_id";
-            ResultSet rs = stmt.executeQuery(sql);
-            
-            // Summary variables
-            int totalOrders = 0;
-            double totalRevenue = 0.0;
-            double totalDiscounts = 0.0;
-            double totalTax = 0.0;
-            
-            // Add data rows with alternating colors
-            boolean alternate = false;
-            BaseColor lightGray = new BaseColor(240, 240, 240);
-            
-            while (rs.next()) {
-                totalOrders++;
-                
-                long orderId = rs.getLong("order_id");
-                String custName = rs.getString("cust_name");
-                String orderDate = rs.getString("order_date");
-                double subtotal = rs.getDouble("subtotal");
-                double discount = rs.getDouble("discount");
-                double tax = rs.getDouble("tax");
-                double total = rs.getDouble("total");
-                
-                totalRevenue += total;
-                totalDiscounts += discount;
-                totalTax += tax;
-                
-                BaseColor rowColor = alternate ? lightGray : BaseColor.WHITE;
-                
-                // Format and add cells
-                PdfPCell cell;
-                
-                cell = new PdfPCell(new Phrase(String.valueOf(orderId), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                cell = new PdfPCell(new Phrase(custName, normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_LEFT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                // Format date inline
-                String formattedDate = orderDate;
-                try {
-                    if (orderDate != null && orderDate.length() >= 16) {
-                        String[] parts = orderDate.split(" ");
-                        if (parts.length >= 2) {
-                            String[] dateParts = parts[0].split("-");
-                            String time = parts[1].substring(0, 5);
-                            formattedDate = dateParts[1] + "/" + dateParts[2] + "/" + dateParts[0] + " " + time;
-                        }
-                    }
-                } catch (Exception e) {
-                }
-                
-                cell = new PdfPCell(new Phrase(formattedDate, normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_LEFT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                // Currency formatting inline - repeated code
-                cell = new PdfPCell(new Phrase("$" + String.format("%.2f", subtotal), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                cell = new PdfPCell(new Phrase("$" + String.format("%.2f", discount), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                cell = new PdfPCell(new Phrase("$" + String.format("%.2f", tax), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                cell = new PdfPCell(new Phrase("$" + String.format("%.2f", total), normalFont));
-                cell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-                cell.setBackgroundColor(rowColor);
-                cell.setPadding(5);
-                table.addCell(cell);
-                
-                alternate = !alternate;
-            }
-
-            rs.close();
-            stmt.close();
-            
-            document.add(table);
-            
-            // Add summary section
-            document.add(new Paragraph(" "));
-            document.add(new Paragraph(" "));
-            
-            Paragraph summaryTitle = new Paragraph("Summary Statistics", headerFont);
-            document.add(summaryTitle);
-            document.add(new Paragraph(" "));
-            
-            PdfPTable summaryTable = new PdfPTable(2);
-            summaryTable.setWidthPercentage(50);
-            summaryTable.setHorizontalAlignment(Element.ALIGN_LEFT);
-            summaryTable.setWidths(new float[]{3.0f, 2.0f});
-            
-            BaseColor summaryColor = new BaseColor(230, 230, 230);
-            
-            // Add summary rows
-            PdfPCell labelCell = new PdfPCell(new Phrase("Total Orders:", normalFont));
-            labelCell.setBackgroundColor(summaryColor);
-            labelCell.setPadding(5);
-            labelCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(labelCell);
-            
-            PdfPCell valueCell = new PdfPCell(new Phrase(String.valueOf(totalOrders), headerFont));
-            valueCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            valueCell.setBackgroundColor(summaryColor);
-            valueCell.setPadding(5);
-            valueCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(valueCell);
-            
-            labelCell = new PdfPCell(new Phrase("Total Revenue:", normalFont));
-            labelCell.setBackgroundColor(summaryColor);
-            labelCell.setPadding(5);
-            labelCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(labelCell);
-            
-            valueCell = new PdfPCell(new Phrase("$" + String.format("%.2f", totalRevenue), headerFont));
-            valueCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            valueCell.setBackgroundColor(summaryColor);
-            valueCell.setPadding(5);
-            valueCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(valueCell);
-            
-            labelCell = new PdfPCell(new Phrase("Total Discounts:", normalFont));
-            labelCell.setBackgroundColor(summaryColor);
-            labelCell.setPadding(5);
-            labelCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(labelCell);
-            
-            valueCell = new PdfPCell(new Phrase("$" + String.format("%.2f", totalDiscounts), headerFont));
-            valueCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            valueCell.setBackgroundColor(summaryColor);
-            valueCell.setPadding(5);
-            valueCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(valueCell);
-            
-            labelCell = new PdfPCell(new Phrase("Total Tax Collected:", normalFont));
-            labelCell.setBackgroundColor(summaryColor);
-            labelCell.setPadding(5);
-            labelCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(labelCell);
-            
-            valueCell = new PdfPCell(new Phrase("$" + String.format("%.2f", totalTax), headerFont));
-            valueCell.setHorizontalAlignment(Element.ALIGN_RIGHT);
-            valueCell.setBackgroundColor(summaryColor);
-            valueCell.setPadding(5);
-            valueCell.setBorder(com.itextpdf.text.Rectangle.NO_BORDER);
-            summaryTable.addCell(valueCell);
-            
-            document.add(summaryTable);
-            
-            // Close document
-            document.close();
-            
-            JOptionPane.showMessageDialog(this, 
-                "Report generated successfully!\nSaved to: " + filePath,
-                "Report Generated", 
-                JOptionPane.INFORMATION_MESSAGE);
-                
-            // Ask user if they want to open the report
-            int openFile = JOptionPane.showConfirmDialog(this,
-                "Would you like to open the report?",
-                "Open Report",
-                JOptionPane.YES_NO_OPTION);
-                
-            if (openFile == JOptionPane.YES_OPTION) {
-                java.awt.Desktop.getDesktop().open(new java.io.File(filePath));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, 
-                "Error generating report: " + e.getMessage(),
-                "Error", 
-                JOptionPane.ERROR_MESSAGE);
+            period = YearMonth.parse(input.trim());
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Invalid month, use yyyy-MM");
+            return;
         }
+        ReportJobQueue.getInstance().submitStatements(period);
+        mainApp.showReportJobs();
     }
 }
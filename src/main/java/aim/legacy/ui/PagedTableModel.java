@@ -0,0 +1,345 @@
+/**
+ * PagedTableModel.java
+ * 
+ * Read-only table model that only knows its row count up front.
+ * Rows are fetched in fixed-size pages of raw typed values when the table
+ * first asks for them (i.e. when they scroll into view), on a background
+ * loader thread. Pages are held in a bounded LRU cache, so memory stays flat
+ * however many rows the source has. Cells of pages not yet loaded read as
+ * null and are repainted once their page arrives.
+ * 
+ * Row-level changes are applied with applyChange(): the affected row is
+ * re-read by id and the model fires a single insert, update or delete event.
+ * Cached pages after an insert or delete are dropped, since their rows shift.
+ */
+package aim.legacy.ui;
+
+import aim.legacy.db.DB;
+import aim.legacy.event.ChangeEvent;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public abstract class PagedTableModel<T> extends AbstractTableModel {
+    
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGES = 50;
+    
+    // One loader for all grids keeps database reads off the EDT and serialized
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "table-page-loader");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    // Read-only connection used by the loader thread only; opened on first use
+    private static Connection loaderConn;
+    
+    private final String[] columns;
+    private final Class<?>[] columnTypes;
+    private final int pageSize;
+    private final int maxPages;
+    
+    private RowSource<T> source;
+    private int rowCount;
+    private final LinkedHashMap<Integer, RowPage<T>> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    
+    // Bumped on every reload so results for an older source are dropped
+    private int generation;
+    
+    // Bumped whenever cached pages are dropped so in-flight page loads are discarded
+    private int pageEpoch;
+    
+    // True between reload() and the arrival of its row count
+    private boolean countPending;
+    
+    public PagedTableModel(String[] columns, Class<?>[] columnTypes) {
+        this(columns, columnTypes, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+    
+    public PagedTableModel(String[] columns, Class<?>[] columnTypes, int pageSize, int maxPages) {
+        this.columns = columns;
+        this.columnTypes = columnTypes;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap<Integer, RowPage<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, RowPage<T>> eldest) {
+                return size() > PagedTableModel.this.maxPages;
+            }
+        };
+    }
+    
+    // Value of one column for a loaded row
+    protected abstract Object valueOf(T row, int column);
+    
+    // Primary key of a loaded row, used to locate it when it changes
+    protected abstract long idOf(T row);
+    
+    // Switch to a new source (e.g. after a filter or sort change) and reload
+    public void setSource(RowSource<T> source) {
+        this.source = source;
+        reload();
+    }
+    
+    public RowSource<T> getSource() {
+        return source;
+    }
+    
+    // Drop every cached page and re-read the row count
+    // Rows are fetched again as the table repaints them
+    public void reload() {
+        generation++;
+        pageEpoch++;
+        pages.clear();
+        loading.clear();
+        countPending = source != null;
+        if (source == null) {
+            rowCount = 0;
+            fireTableDataChanged();
+            return;
+        }
+        final int gen = generation;
+        final RowSource<T> src = source;
+        LOADER.submit(() -> {
+            try {
+                int count = src.count(loaderConn());
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generation) {
+                        countPending = false;
+                        rowCount = count;
+                        fireTableDataChanged();
+                    }
+                });
+            } catch (SQLException e) {
+                e.printStackTrace();
+                closeLoaderConn();
+                // Show an empty table rather than leave the count pending
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generation) {
+                        countPending = false;
+                        rowCount = 0;
+                        fireTableDataChanged();
+                        JOptionPane.showMessageDialog(null, "Error loading rows: " + e.getMessage());
+                    }
+                });
+            }
+        });
+    }
+    
+    // Row object at the given index, or null while its page is loading
+    public T getRow(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= rowCount) {
+            return null;
+        }
+        int pageIndex = rowIndex / pageSize;
+        RowPage<T> page = pages.get(pageIndex);
+        if (page == null) {
+            requestPage(pageIndex);
+            return null;
+        }
+        int offset = rowIndex % pageSize;
+        return offset < page.getRows().size() ? page.getRows().get(offset) : null;
+    }
+    
+    private void requestPage(int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+        RowPage<T> previous = pages.get(pageIndex - 1);
+        final Object afterKey = previous == null ? null : previous.getLastKey();
+        final int epoch = pageEpoch;
+        final RowSource<T> src = source;
+        LOADER.submit(() -> {
+            RowPage<T> loaded = null;
+            try {
+                loaded = src.fetch(loaderConn(), pageIndex * pageSize, pageSize, afterKey);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                closeLoaderConn();
+            }
+            final RowPage<T> result = loaded;
+            SwingUtilities.invokeLater(() -> {
+                if (epoch != pageEpoch) {
+                    return;
+                }
+                loading.remove(pageIndex);
+                if (result == null) {
+                    return;
+                }
+                pages.put(pageIndex, result);
+                int first = pageIndex * pageSize;
+                int last = Math.min(rowCount, first + pageSize) - 1;
+                if (last >= first) {
+                    fireTableRowsUpdated(first, last);
+                }
+            });
+        });
+    }
+    
+    // Apply one committed change to the row with this id
+    // The row's new state and position are read on the loader thread; events fire on the EDT
+    public void applyChange(ChangeEvent.Type type, long id) {
+        if (source == null) {
+            return;
+        }
+        if (countPending) {
+            // The count in flight may or may not include this row: count again
+            reload();
+            return;
+        }
+        final int gen = generation;
+        final RowSource<T> src = source;
+        LOADER.submit(() -> {
+            T row = null;
+            int index = -1;
+            try {
+                if (type != ChangeEvent.Type.DELETE) {
+                    Connection conn = loaderConn();
+                    row = src.fetchRow(conn, id);
+                    index = row == null ? -1 : src.indexOf(conn, id);
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                closeLoaderConn();
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generation) {
+                        reload();
+                    }
+                });
+                return;
+            }
+            final T newRow = row;
+            final int newIndex = index;
+            SwingUtilities.invokeLater(() -> {
+                if (gen != generation) {
+                    // A reload is already on its way and will include this change
+                    return;
+                }
+                int oldIndex = findCached(id);
+                if (type == ChangeEvent.Type.DELETE) {
+                    if (oldIndex >= 0) {
+                        removeAt(oldIndex);
+                    } else {
+                        // Position of an uncached deleted row is unknown
+                        reload();
+                    }
+                } else if (type == ChangeEvent.Type.INSERT) {
+                    if (newIndex >= 0) {
+                        insertAt(newIndex);
+                    }
+                } else if (oldIndex < 0) {
+                    // Uncached update: it may have moved into, out of or within the view
+                    reload();
+                } else if (newIndex == oldIndex) {
+                    replaceAt(oldIndex, newRow);
+                } else {
+                    removeAt(oldIndex);
+                    if (newIndex >= 0) {
+                        insertAt(newIndex);
+                    }
+                }
+            });
+        });
+    }
+    
+    // Loader thread only
+    private static Connection loaderConn() throws SQLException {
+        if (loaderConn == null) {
+            loaderConn = DB.openReadConn();
+        }
+        return loaderConn;
+    }
+    
+    // Drop the loader's connection after a failure; the next load opens a fresh one
+    private static void closeLoaderConn() {
+        if (loaderConn != null) {
+            try {
+                loaderConn.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            loaderConn = null;
+        }
+    }
+    
+    // Index of a cached row with this id, or -1
+    private int findCached(long id) {
+        for (Map.Entry<Integer, RowPage<T>> e : pages.entrySet()) {
+            List<T> rows = e.getValue().getRows();
+            for (int i = 0; i < rows.size(); i++) {
+                if (idOf(rows.get(i)) == id) {
+                    return e.getKey() * pageSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+    
+    private void replaceAt(int rowIndex, T row) {
+        int pageIndex = rowIndex / pageSize;
+        RowPage<T> page = pages.get(pageIndex);
+        int offset = rowIndex % pageSize;
+        page.getRows().set(offset, row);
+        if (offset == page.getRows().size() - 1) {
+            // The page's continuation key may have changed with its last row
+            dropPagesFrom(pageIndex + 1);
+        }
+        fireTableRowsUpdated(rowIndex, rowIndex);
+    }
+    
+    private void insertAt(int rowIndex) {
+        rowCount++;
+        dropPagesFrom(rowIndex / pageSize);
+        fireTableRowsInserted(rowIndex, rowIndex);
+    }
+    
+    private void removeAt(int rowIndex) {
+        rowCount--;
+        dropPagesFrom(rowIndex / pageSize);
+        fireTableRowsDeleted(rowIndex, rowIndex);
+    }
+    
+    // Forget pages whose rows shifted; in-flight loads are stale as well
+    private void dropPagesFrom(int pageIndex) {
+        pages.keySet().removeIf(p -> p >= pageIndex);
+        pageEpoch++;
+        loading.clear();
+    }
+    
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+    
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+    
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return columnTypes[column];
+    }
+    
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        T row = getRow(rowIndex);
+        return row == null ? null : valueOf(row, columnIndex);
+    }
+}
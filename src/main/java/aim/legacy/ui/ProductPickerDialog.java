@@ -0,0 +1,164 @@
+/**
+ * ProductPickerDialog.java
+ * 
+ * Typeahead product picker used by the order editor to add lines.
+ * Each keystroke looks up the catalog prefix index and shows the top matches.
+ * Several lines can be added before the dialog is closed.
+ */
+package aim.legacy.ui;
+
+import aim.legacy.cache.ProductCatalog;
+import aim.legacy.domain.Product;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+public class ProductPickerDialog extends JDialog {
+    
+    // Matches shown per keystroke
+    private static final int MAX_MATCHES = 50;
+    
+    private JTextField searchField;
+    private JList<Product> matchList;
+    private DefaultListModel<Product> matchModel;
+    private JSpinner qtySpinner;
+    private JLabel statusLabel;
+    
+    // Receives each product and quantity the user adds
+    private final BiConsumer<Product, Integer> onAdd;
+    
+    public ProductPickerDialog(Dialog parent, BiConsumer<Product, Integer> onAdd) {
+        super(parent, "Add Lines", true);
+        this.onAdd = onAdd;
+        
+        setupUI();
+        
+        setSize(450, 400);
+        setLocationRelativeTo(parent);
+    }
+    
+    private void setupUI() {
+        setLayout(new BorderLayout(5, 5));
+        
+        JPanel topPanel = new JPanel(new BorderLayout(5, 5));
+        topPanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 0, 5));
+        topPanel.add(new JLabel("Product name or id:"), BorderLayout.WEST);
+        searchField = new JTextField();
+        topPanel.add(searchField, BorderLayout.CENTER);
+        add(topPanel, BorderLayout.NORTH);
+        
+        matchModel = new DefaultListModel<>();
+        matchList = new JList<>(matchModel);
+        matchList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Fixed cell size keeps the list from measuring every entry
+        matchList.setPrototypeCellValue(new Product(0L, "XXXXXXXXXXXXXXXXXXXXXXXXXXXXXX", null, null));
+        add(new JScrollPane(matchList), BorderLayout.CENTER);
+        
+        JPanel bottomPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        statusLabel = new JLabel(" ");
+        bottomPanel.add(statusLabel);
+        bottomPanel.add(new JLabel("Quantity:"));
+        qtySpinner = new JSpinner(new SpinnerNumberModel(1, 1, Integer.MAX_VALUE, 1));
+        bottomPanel.add(qtySpinner);
+        
+        JButton addButton = new JButton("Add");
+        addButton.addActionListener(e -> addSelected());
+        bottomPanel.add(addButton);
+        
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        bottomPanel.add(closeButton);
+        add(bottomPanel, BorderLayout.SOUTH);
+        getRootPane().setDefaultButton(addButton);
+        
+        // Lookups are an in-memory binary search, so no debounce is needed
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                updateMatches();
+            }
+            
+            public void removeUpdate(DocumentEvent e) {
+                updateMatches();
+            }
+            
+            public void changedUpdate(DocumentEvent e) {
+                updateMatches();
+            }
+        });
+        
+        // Up and down move through the matches without leaving the search field
+        searchField.addKeyListener(new KeyAdapter() {
+            public void keyPressed(KeyEvent e) {
+                int size = matchModel.getSize();
+                if (size == 0) return;
+                int index = matchList.getSelectedIndex();
+                if (e.getKeyCode() == KeyEvent.VK_DOWN) {
+                    index = Math.min(index + 1, size - 1);
+                } else if (e.getKeyCode() == KeyEvent.VK_UP) {
+                    index = Math.max(index - 1, 0);
+                } else {
+                    return;
+                }
+                matchList.setSelectedIndex(index);
+                matchList.ensureIndexIsVisible(index);
+                e.consume();
+            }
+        });
+        
+        matchList.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    addSelected();
+                }
+            }
+        });
+    }
+    
+    // Replace the list contents with the top matches for the current text
+    private void updateMatches() {
+        try {
+            List<Product> matches = ProductCatalog.getInstance().search(searchField.getText(), MAX_MATCHES);
+            matchModel.clear();
+            for (Product product : matches) {
+                matchModel.addElement(product);
+            }
+            if (!matches.isEmpty()) {
+                matchList.setSelectedIndex(0);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this, "Error loading products: " + e.getMessage());
+        }
+    }
+    
+    // Hand the selected product to the editor and get ready for the next one
+    private void addSelected() {
+        Product product = matchList.getSelectedValue();
+        if (product == null) {
+            Toolkit.getDefaultToolkit().beep();
+            return;
+        }
+        try {
+            qtySpinner.commitEdit();
+        } catch (java.text.ParseException e) {
+            JOptionPane.showMessageDialog(this, "Invalid quantity");
+            return;
+        }
+        int quantity = (Integer) qtySpinner.getValue();
+        onAdd.accept(product, quantity);
+        
+        statusLabel.setText("Added " + quantity + " x " + product.getName());
+        searchField.setText("");
+        qtySpinner.setValue(1);
+        searchField.requestFocusInWindow();
+    }
+}
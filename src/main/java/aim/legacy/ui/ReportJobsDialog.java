@@ -0,0 +1,191 @@
+/**
+ * ReportJobsDialog.java
+ * 
+ * Non-modal window listing queued, running and finished report jobs.
+ * Shows progress for running jobs, lets the user cancel them and open
+ * finished reports. Order entry carries on while it is open.
+ */
+package aim.legacy.ui;
+
+import aim.legacy.report.ReportJob;
+import aim.legacy.report.ReportJobQueue;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReportJobsDialog extends JDialog {
+    
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    
+    private JTable jobTable;
+    private JobTableModel jobModel;
+    
+    // Jobs shown in submission order, mirrored from the queue
+    private class JobTableModel extends AbstractTableModel {
+        private final String[] columns = {"#", "Report", "Submitted", "Status", "Progress", "File"};
+        private List<ReportJob> jobs = new ArrayList<>();
+        
+        public int getRowCount() {
+            return jobs.size();
+        }
+        
+        public int getColumnCount() {
+            return columns.length;
+        }
+        
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+        
+        public Class<?> getColumnClass(int column) {
+            return column == 4 ? ReportJob.class : Object.class;
+        }
+        
+        public Object getValueAt(int row, int column) {
+            ReportJob job = jobs.get(row);
+            switch (column) {
+                case 0: return job.getId();
+                case 1: return job.getName();
+                case 2: return TIME_FORMAT.format(job.getSubmitted());
+                case 3: return job.getError() != null ? job.getState() + ": " + job.getError() : job.getState().toString();
+                case 4: return job;
+                default: return job.getState() == ReportJob.State.DONE ? job.getOutput().getPath() : "";
+            }
+        }
+        
+        ReportJob getJob(int row) {
+            return jobs.get(row);
+        }
+        
+        // Repaint just the job's row, or pick up a newly submitted job
+        void jobChanged(ReportJob job) {
+            int row = jobs.indexOf(job);
+            if (row >= 0) {
+                fireTableRowsUpdated(row, row);
+            } else {
+                reload();
+            }
+        }
+        
+        void reload() {
+            jobs = ReportJobQueue.getInstance().getJobs();
+            fireTableDataChanged();
+        }
+    }
+    
+    // Progress bar cell: percentage when the total is known, indeterminate otherwise
+    private static class ProgressRenderer extends JProgressBar implements TableCellRenderer {
+        ProgressRenderer() {
+            super(0, 100);
+            setStringPainted(true);
+        }
+        
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                boolean hasFocus, int row, int column) {
+            ReportJob job = (ReportJob) value;
+            int percent = job.getPercent();
+            if (job.getState() == ReportJob.State.QUEUED) {
+                setValue(0);
+                setString("waiting");
+            } else if (percent < 0) {
+                setValue(0);
+                setString(job.getRowsDone() + " rows");
+            } else {
+                setValue(percent);
+                setString(job.getRowsDone() + " / " + job.getEstimatedRows() + " rows");
+            }
+            return this;
+        }
+    }
+    
+    public ReportJobsDialog(Frame parent) {
+        super(parent, "Report Jobs", false);
+        
+        setupUI();
+        
+        ReportJobQueue.getInstance().addListener(job -> SwingUtilities.invokeLater(() -> jobModel.jobChanged(job)));
+        jobModel.reload();
+        
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+        setSize(700, 300);
+        setLocationRelativeTo(parent);
+    }
+    
+    private void setupUI() {
+        setLayout(new BorderLayout());
+        
+        jobModel = new JobTableModel();
+        jobTable = new JTable(jobModel);
+        jobTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        jobTable.setDefaultRenderer(ReportJob.class, new ProgressRenderer());
+        jobTable.getColumnModel().getColumn(0).setPreferredWidth(30);
+        jobTable.getColumnModel().getColumn(4).setPreferredWidth(160);
+        jobTable.getColumnModel().getColumn(5).setPreferredWidth(220);
+        add(new JScrollPane(jobTable), BorderLayout.CENTER);
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        
+        JButton cancelButton = new JButton("Cancel Job");
+        cancelButton.addActionListener(e -> cancelSelected());
+        buttonPanel.add(cancelButton);
+        
+        JButton openButton = new JButton("Open Report");
+        openButton.addActionListener(e -> openSelected());
+        buttonPanel.add(openButton);
+        
+        JButton clearButton = new JButton("Clear Finished");
+        clearButton.addActionListener(e -> {
+            ReportJobQueue.getInstance().clearFinished();
+            jobModel.reload();
+        });
+        buttonPanel.add(clearButton);
+        
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> setVisible(false));
+        buttonPanel.add(closeButton);
+        
+        add(buttonPanel, BorderLayout.SOUTH);
+    }
+    
+    private ReportJob selectedJob() {
+        int row = jobTable.getSelectedRow();
+        if (row < 0) {
+            JOptionPane.showMessageDialog(this, "Please select a report job");
+            return null;
+        }
+        return jobModel.getJob(jobTable.convertRowIndexToModel(row));
+    }
+    
+    private void cancelSelected() {
+        ReportJob job = selectedJob();
+        if (job == null) return;
+        if (job.isFinished()) {
+            JOptionPane.showMessageDialog(this, "This job has already finished");
+            return;
+        }
+        job.cancel();
+    }
+    
+    private void openSelected() {
+        ReportJob job = selectedJob();
+        if (job == null) return;
+        if (job.getState() != ReportJob.State.DONE) {
+            JOptionPane.showMessageDialog(this, "This report is not finished yet");
+            return;
+        }
+        try {
+            java.awt.Desktop.getDesktop().open(job.getOutput());
+        } catch (Exception e) {
+            e.printStackTrace();
+            JOptionPane.showMessageDialog(this,
+                "Error opening report: " + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * RowPage.java
+ * 
+ * A page of rows loaded by a RowSource, plus the key to continue after its last row.
+ */
+package aim.legacy.ui;
+
+import java.util.List;
+
+public class RowPage<T> {
+    private final List<T> rows;
+    private final Object lastKey;
+
+    public RowPage(List<T> rows, Object lastKey) {
+        this.rows = rows;
+        this.lastKey = lastKey;
+    }
+
+    public List<T> getRows() {
+        return rows;
+    }
+
+    public Object getLastKey() {
+        return lastKey;
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * RowSource.java
+ * 
+ * Supplies rows to a PagedTableModel one page at a time.
+ * Implementations run on the model's loader thread, never on the EDT, and
+ * read through the connection passed in: a read-only connection owned by the
+ * loader, so paging never queues behind writes on the shared connection.
+ */
+package aim.legacy.ui;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public interface RowSource<T> {
+    
+    // Total number of rows; the model sizes the table from this alone
+    int count(Connection conn) throws SQLException;
+    
+    // Fetch up to limit rows starting at offset
+    // afterKey is the lastKey of the preceding page when that page is cached,
+    // letting the source seek with a keyset predicate instead of OFFSET
+    RowPage<T> fetch(Connection conn, int offset, int limit, Object afterKey) throws SQLException;
+    
+    // Current row with this id, or null if it is not (or no longer) part of the result
+    T fetchRow(Connection conn, long id) throws SQLException;
+    
+    // Zero-based position of the row with this id in the result, or -1 if absent
+    int indexOf(Connection conn, long id) throws SQLException;
+}
@@ -0,0 +1,62 @@
+/**
+ * StartupTimeline.java
+ * 
+ * Records how long each startup phase takes, measured from JVM start,
+ * so time-to-first-interaction can be tracked between versions.
+ * Each phase is logged as it completes; summary() prints the whole timeline.
+ */
+package aim.legacy.ui;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StartupTimeline {
+    
+    private static final StartupTimeline instance = new StartupTimeline();
+    
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final List<String> entries = new ArrayList<>();
+    
+    public static StartupTimeline getInstance() {
+        return instance;
+    }
+    
+    // Record a point in time (e.g. "frame-visible")
+    public void mark(String phase) {
+        record(String.format("%-22s at +%5d ms  [%s]", phase, sinceJvmStart(), Thread.currentThread().getName()));
+    }
+    
+    // Run a phase and record its duration and when it finished
+    public void time(String phase, Runnable work) {
+        long start = System.nanoTime();
+        try {
+            work.run();
+        } finally {
+            long took = (System.nanoTime() - start) / 1000000;
+            record(String.format("%-22s %5d ms, done at +%5d ms  [%s]", phase, took, sinceJvmStart(), Thread.currentThread().getName()));
+        }
+    }
+    
+    // Print every recorded phase in completion order
+    public void summary() {
+        StringBuilder sb = new StringBuilder("[startup] timeline:");
+        synchronized (entries) {
+            for (String entry : entries) {
+                sb.append("\n  ").append(entry);
+            }
+        }
+        System.out.println(sb);
+    }
+    
+    private long sinceJvmStart() {
+        return System.currentTimeMillis() - jvmStart;
+    }
+    
+    private void record(String entry) {
+        synchronized (entries) {
+            entries.add(entry);
+        }
+        System.out.println("[startup] " + entry);
+    }
+}